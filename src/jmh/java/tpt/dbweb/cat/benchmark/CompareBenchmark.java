@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tpt.dbweb.cat.Compare;
+
+/**
+ * End-to-end benchmark of {@link Compare#compareXML(List, Path, List)}
+ *
+ * @author Thomas Rebele
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CompareBenchmark {
+
+  @Param({ "200" })
+  public int documents;
+
+  @Param({ "2" })
+  public int annotators;
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  List<Path> files;
+
+  Path out;
+
+  @Setup
+  public void setup() throws IOException {
+    files = Corpora.writeXML(Corpora.options(documents, 500, 2, annotators, 0.2));
+    out = files.get(0).resolveSibling("compare-out.xml");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Corpora.delete(files);
+  }
+
+  @Benchmark
+  public long compareXML() throws IOException {
+    Compare.Options options = new Compare.Options();
+    options.threads = threads;
+    new Compare(options).compareXML(files, out, null);
+    return Files.size(out);
+  }
+}
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.datatypes.iterators.BoundarySweep;
+import tpt.dbweb.cat.datatypes.iterators.CompareIterator;
+import tpt.dbweb.cat.datatypes.iterators.ComparePair;
+import tpt.dbweb.cat.tools.CorpusGenerator;
+import tpt.dbweb.cat.tools.MentionChainAligner;
+
+/**
+ * Benchmarks for traversing a long document with {@link CompareIterator} or {@link BoundarySweep} and aligning its mention chains
+ *
+ * @author Thomas Rebele
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComparisonBenchmark {
+
+  @Param({ "2", "5", "10", "20" })
+  public int annotators;
+
+  @Param({ "1", "4" })
+  public int nesting;
+
+  @Param({ "5000" })
+  public int words;
+
+  @Param({ "0.2" })
+  public double disagreement;
+
+  List<TaggedText> tts;
+
+  List<List<EntityMention>> mentions;
+
+  @Setup
+  public void setup() {
+    CorpusGenerator.Options options = Corpora.options(1, words, nesting, annotators - 1, disagreement);
+    options.mentionDensity = 0.2;
+    tts = new ArrayList<>();
+    mentions = new ArrayList<>();
+    for (List<TaggedText> annotator : new CorpusGenerator(options).generate()) {
+      tts.add(annotator.get(0));
+      mentions.add(annotator.get(0).mentions);
+    }
+  }
+
+  @Benchmark
+  public void compareIterator(Blackhole bh) {
+    CompareIterator it = new CompareIterator(tts.get(0).text, tts.get(0).id, mentions);
+    while (it.hasNext()) {
+      ComparePair pair = it.next();
+      bh.consume(pair);
+    }
+  }
+
+  @Benchmark
+  public void boundarySweep(Blackhole bh) {
+    BoundarySweep sweep = new BoundarySweep(tts.get(0).text, tts.get(0).id, mentions);
+    while (sweep.next()) {
+      for (int i = 0; i < annotators; i++) {
+        bh.consume(sweep.getPrincipalMention(i));
+      }
+    }
+  }
+
+  @Benchmark
+  public Map<String, String> guessEntityMapGreedy() {
+    return new MentionChainAligner().guessEntityMapGreedy(tts.get(0), tts.get(1));
+  }
+
+  @Benchmark
+  public Map<String, String> guessEntityMapOptimal() {
+    return new MentionChainAligner().guessEntityMapOptimal(tts.get(0), tts.get(1));
+  }
+}
@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import tpt.dbweb.cat.tools.CorpusGenerator;
+
+/**
+ * Helper for creating the synthetic input of the benchmarks
+ *
+ * @author Thomas Rebele
+ */
+class Corpora {
+
+  static CorpusGenerator.Options options(int documents, int words, int nesting, int annotators, double disagreement) {
+    CorpusGenerator.Options options = new CorpusGenerator.Options();
+    options.documents = documents;
+    options.words = words;
+    options.nesting = nesting;
+    options.annotators = annotators;
+    options.disagreement = disagreement;
+    return options;
+  }
+
+  /**
+   * Write the corpus as XML files to a temporary directory
+   * @param options
+   * @return paths to the files, the first is the gold standard
+   * @throws IOException
+   */
+  static List<Path> writeXML(CorpusGenerator.Options options) throws IOException {
+    options.skipConll = true;
+    return new CorpusGenerator(options).write(Files.createTempDirectory("casie-benchmark"));
+  }
+
+  static void delete(List<Path> files) throws IOException {
+    if (files != null && files.size() > 0) {
+      FileUtils.deleteDirectory(files.get(0).getParent().toFile());
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.ConllWriter;
+import tpt.dbweb.cat.io.SnapshotReader;
+import tpt.dbweb.cat.io.SnapshotWriter;
+import tpt.dbweb.cat.io.TaggedTextXMLReader;
+import tpt.dbweb.cat.tools.CorpusGenerator;
+
+/**
+ * Benchmarks for reading tagged text XML files and snapshots, and writing CoNLL files
+ *
+ * @author Thomas Rebele
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderWriterBenchmark {
+
+  @Param({ "100", "1000" })
+  public int documents;
+
+  @Param({ "500" })
+  public int words;
+
+  List<TaggedText> goldstandard;
+
+  List<Path> files;
+
+  Path conllFile;
+
+  Path snapshotFile;
+
+  @Setup
+  public void setup() throws IOException {
+    CorpusGenerator.Options options = Corpora.options(documents, words, 2, 0, 0);
+    goldstandard = new CorpusGenerator(options).generate().get(0);
+    files = Corpora.writeXML(options);
+    conllFile = files.get(0).resolveSibling("goldstandard.conll");
+    snapshotFile = files.get(0).resolveSibling("goldstandard" + SnapshotWriter.EXTENSION);
+    SnapshotWriter.write(goldstandard, snapshotFile);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Corpora.delete(files);
+  }
+
+  @Benchmark
+  public void parseXML(Blackhole bh) throws IOException {
+    Iterator<TaggedText> it = new TaggedTextXMLReader().iteratePath(files.get(0));
+    while (it.hasNext()) {
+      bh.consume(it.next());
+    }
+  }
+
+  @Benchmark
+  public void readSnapshot(Blackhole bh) throws IOException {
+    Iterator<TaggedText> it = new SnapshotReader().open(snapshotFile);
+    while (it.hasNext()) {
+      bh.consume(it.next());
+    }
+  }
+
+  @Benchmark
+  public long writeConll() throws IOException {
+    new ConllWriter().writeTTList(goldstandard, conllFile);
+    return Files.size(conllFile);
+  }
+}
@@ -4,13 +4,25 @@
 
 package tpt.dbweb.cat;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -19,29 +31,45 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
-import org.apache.commons.collections4.iterators.ReverseListIterator;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.beust.jcommander.Parameter;
 
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.CompactMentions;
 import tpt.dbweb.cat.datatypes.EntityMention;
 import tpt.dbweb.cat.datatypes.MentionChains;
 import tpt.dbweb.cat.datatypes.MentionChains.Chain;
 import tpt.dbweb.cat.datatypes.TaggedText;
-import tpt.dbweb.cat.datatypes.iterators.CompareIterator;
-import tpt.dbweb.cat.datatypes.iterators.ComparePair;
-import tpt.dbweb.cat.datatypes.iterators.EntityMentionPos;
+import tpt.dbweb.cat.datatypes.iterators.BoundarySweep;
 import tpt.dbweb.cat.datatypes.iterators.EntityMentionPosIterator.PosType;
 import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.EvaluationCache;
 import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+import tpt.dbweb.cat.io.CompareOutput;
+import tpt.dbweb.cat.io.CompareOutputManifest;
+import tpt.dbweb.cat.io.CompareOutputWriter;
+import tpt.dbweb.cat.io.Compression;
+import tpt.dbweb.cat.io.PagedCompareOutputWriter;
+import tpt.dbweb.cat.io.ConllReader;
+import tpt.dbweb.cat.io.SnapshotReader;
+import tpt.dbweb.cat.io.TaggedTextFormats;
+import tpt.dbweb.cat.io.TaggedTextFileReader;
 import tpt.dbweb.cat.io.TaggedTextXMLReader;
 import tpt.dbweb.cat.tools.ExtractInitials;
 import tpt.dbweb.cat.tools.MentionChainAligner;
+import tpt.dbweb.cat.tools.MentionChainAligner.Alignment;
 import tpt.dbweb.cat.tools.Utility;
 
 /**
@@ -55,8 +83,14 @@ public class Compare {
 
   private final static Logger log = LoggerFactory.getLogger(Compare.class);
 
+  /**
+   * Version of the rendering of articles, part of the hash of the incremental output.
+   * Increase it when the rendered markup changes, so that the articles of a previous output are rendered again.
+   */
+  public static final int RENDER_VERSION = 1;
+
   public enum InputFormat {
-    CoNLL, XML
+    CoNLL, XML, Snapshot
   };
 
   /**
@@ -67,12 +101,30 @@ public class Compare {
     @Parameter(description = "Input files, treat first as the gold standard")
     public List<String> input = new ArrayList<>();
 
-    @Parameter(names = "--format", description = "input format")
+    @Parameter(names = "--format", description = "input format of files whose format cannot be detected by extension or content")
     public InputFormat inputFormat = InputFormat.CoNLL;
 
+    @Parameter(names = "--conll-text-column", description = "index of the column of CoNLL input files which contains the words")
+    public int conllTextColumn = 0;
+
     @Parameter(names = "--out")
     public String outputFile = null;
 
+    @Parameter(names = "--threads", description = "number of threads for comparing articles")
+    public int threads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--compact-mentions", description = "store mentions in parallel arrays instead of objects, to reduce memory usage")
+    public boolean compactMentions = false;
+
+    @Parameter(names = "--alignment", description = "how to align the entities of the inputs to those of the gold standard (GREEDY or OPTIMAL)")
+    public Alignment alignment = Alignment.GREEDY;
+
+    @Parameter(names = "--incremental", description = "only compare the articles whose input changed since the last run, copy the others from the previous output (uncompressed output only)")
+    public boolean incremental = false;
+
+    @Parameter(names = "--page-size", description = "write at most this many articles per page file, plus an index page with links to the articles; 0 for a single output file")
+    public int pageSize = 0;
+
     boolean replaceNewlineWithBR = false;
 
     /**
@@ -110,11 +162,32 @@ public class Compare {
     String chainAfter;
   }
 
+  /**
+   * Output of the comparison of one article
+   */
+  private static class RenderedArticle {
+
+    String id;
+
+    String content;
+
+    boolean evaluationNotFound;
+
+    /** hash of the inputs of the article, only for incremental output */
+    String hash;
+
+    /** metrics of the article for every annotator except the gold standard, may be null */
+    List<Map<String, EvaluationStatistics>> metrics;
+
+    /** the article in the previous output, if it can be copied */
+    CompareOutputManifest.Article previous;
+  }
+
   public static void compare(Options options, List<ComparisonResult> evaluations) throws IOException {
     if (options.outputFile != null && options.input != null && options.input.size() > 0) {
-      Compare compare = new Compare(new Options());
+      Compare compare = new Compare(options);
       List<Path> paths = options.input.stream().map(str -> Paths.get(str)).collect(Collectors.toList());
-      compare.compareXML(paths, Paths.get(options.outputFile), evaluations);
+      compare.compareFiles(paths, Paths.get(options.outputFile), evaluations);
     }
   }
 
@@ -125,7 +198,9 @@ public class Compare {
   private void cleanUp(TaggedText tt) {
     // tt.mentions.removeIf(em ->
     // options.filterEntities.contains(em.entity));
-    if (options.filterNMEEntities) {
+    if (options.filterNMEEntities && tt.mentions instanceof CompactMentions) {
+      ((CompactMentions) tt.mentions).removeIfEntity(Utility::isNME);
+    } else if (options.filterNMEEntities) {
       tt.mentions.removeIf(em -> Utility.isNME(em.entity));
     }
     tt.mentions.sort(null);
@@ -175,6 +250,98 @@ public class Compare {
     return true;
   }
 
+  /**
+   * Get the input format of a file, see {@link TaggedTextFormats#detect(Path)}, or the --format option if it is unknown
+   * @param file
+   * @return
+   */
+  public InputFormat getInputFormat(Path file) {
+    try {
+      TaggedTextFormats.Format format = TaggedTextFormats.detect(file);
+      for (InputFormat inputFormat : InputFormat.values()) {
+        if (format != null && inputFormat.name().equalsIgnoreCase(format.name)) {
+          return inputFormat;
+        }
+      }
+    } catch (IOException e) {
+      // reported when the file is read
+    }
+    return options.inputFormat;
+  }
+
+  private TaggedTextFileReader getReader(InputFormat format) {
+    if (format == InputFormat.CoNLL) {
+      return new ConllReader(options.conllTextColumn);
+    } else if (format == InputFormat.Snapshot) {
+      return new SnapshotReader(options.compactMentions);
+    }
+    TaggedTextXMLReader.Options readerOptions = new TaggedTextXMLReader.Options();
+    readerOptions.compactMentions = options.compactMentions;
+    return new TaggedTextXMLReader(readerOptions);
+  }
+
+  /**
+   * Load XML, CoNLL or snapshot files (see {@link #getInputFormat(Path)}), compare them and write the output XML files to out.
+   * The words of CoNLL files don't contain the original whitespace, so their mentions are moved to the text of the gold standard.
+   * Snapshots may have been converted from either format, so they are treated the same way.
+   * @param files
+   * @param out
+   * @param evaluations
+   * @throws IOException
+   */
+  public void compareFiles(List<Path> files, Path out, List<ComparisonResult> evaluations) throws IOException {
+    log.info("comparing {}; writing output to {}", files, out);
+    List<Iterator<TaggedText>> ttIts = new ArrayList<>();
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        ttIts.add(getReader(getInputFormat(files.get(i))).open(files.get(i)));
+      }
+      compareIterators(files, ttIts, out, evaluations);
+    } catch (FileNotFoundException e) {
+      log.error("file not found: {}", e.getMessage());
+      close(ttIts);
+    }
+  }
+
+  /**
+   * Read the files completely, with the same readers as {@link #compareFiles(List, Path, List)}.
+   * This allows to use the articles for the evaluation and the comparison without reading the files twice.
+   * @param files
+   * @return the articles of every file
+   * @throws IOException
+   */
+  public List<List<TaggedText>> readFiles(List<Path> files) throws IOException {
+    List<List<TaggedText>> result = new ArrayList<>();
+    for (Path file : files) {
+      result.add(getReader(getInputFormat(file)).open(file).asList());
+    }
+    return result;
+  }
+
+  /**
+   * Compare the articles of files which have already been read, see {@link #readFiles(List)}.
+   * The mentions of the articles are changed by the comparison, so they should not be used afterwards.
+   * @param files
+   * @param tts articles of every file
+   * @param out
+   * @param evaluations
+   * @throws IOException
+   */
+  public void compareFiles(List<Path> files, List<List<TaggedText>> tts, Path out, List<ComparisonResult> evaluations) throws IOException {
+    log.info("comparing {}; writing output to {}", files, out);
+    compareIterators(files, tts.stream().map(List::iterator).collect(Collectors.toList()), out, evaluations);
+  }
+
+  private void compareIterators(List<Path> files, List<Iterator<TaggedText>> ttIts, Path out, List<ComparisonResult> evaluations) throws IOException {
+    List<String> info = new ArrayList<>();
+    List<Boolean> alignToGold = new ArrayList<>();
+    for (int i = 0; i < files.size(); i++) {
+      info.add(files.get(i).toString());
+      alignToGold.add(i > 0 && (getInputFormat(files.get(i)) != InputFormat.XML || getInputFormat(files.get(0)) != InputFormat.XML));
+    }
+    compare(ttIts, info, alignToGold, out, evaluations);
+  }
+
   /**
    * Load XML files, compare them and write the output XML files to out
    * @param files
@@ -187,100 +354,410 @@ public class Compare {
     List<Iterator<TaggedText>> ttIts = new ArrayList<>();
     List<String> info = new ArrayList<>();
     try {
-      TaggedTextXMLReader ttxr = new TaggedTextXMLReader();
+      TaggedTextFileReader ttxr = getReader(InputFormat.XML);
       for (int i = 0; i < files.size(); i++) {
-        ttIts.add(ttxr.iteratePath(files.get(i)));
+        ttIts.add(ttxr.open(files.get(i)));
         info.add(files.get(i).toString());
       }
       compare(ttIts, info, out, evaluations);
     } catch (FileNotFoundException e) {
       log.error("file not found: {}", e.getMessage());
+      close(ttIts);
     }
   }
 
   public void compare(List<Iterator<TaggedText>> ttIts, List<String> infos, Path out, List<ComparisonResult> evaluations) throws IOException {
-    boolean docEvaluationNotFound = false;
-
-    StringWriter sw = new StringWriter();
-    PrintWriter ps = new PrintWriter(sw);
-    ps.append("<annotators>\n");
-    // load files and print annotator info
-    for (int i = 0; i < ttIts.size(); i++) {
-      ps.append("\t<annotator id='" + i + "' file='");
-      ps.append(StringEscapeUtils.escapeXml11(infos.get(i)));
-      ps.append("'/>\n");
-    }
-    ps.append("</annotators>\n");
-
-    // print evaluation
-    List<Map<String, EvaluationStatistics>> evals = new ArrayList<>();
-    Map<String, EvaluationStatistics> eval;
-    if (evaluations != null) {
-      for (int i = 0; i < evaluations.size(); i++) {
-        ComparisonResult combinedEvaluations = evaluations.get(i).combine();
-        eval = new TreeMap<>();
-        evals.add(eval);
+    compare(ttIts, infos, null, out, evaluations);
+  }
 
-        // type is macro / micro
-        for (String type : combinedEvaluations.docidToMetricToResult.keySet()) {
-          Map<String, EvaluationStatistics> metricToResult = combinedEvaluations.docidToMetricToResult.get(type);
-          for (String metric : metricToResult.keySet()) {
-            eval.put(metric + " (" + type + ")", metricToResult.get(metric));
-          }
+  /**
+   * Close the iterators which hold resources, e.g. files which have not been read to the end
+   * @param ttIts
+   */
+  private static void close(List<Iterator<TaggedText>> ttIts) {
+    for (Iterator<TaggedText> it : ttIts) {
+      if (it instanceof PeekIterator && ((PeekIterator<?>) it).closed) {
+        continue;
+      }
+      if (it instanceof Closeable) {
+        try {
+          ((Closeable) it).close();
+        } catch (IOException | RuntimeException e) {
+          log.warn("cannot close {}", it, e);
         }
       }
-      ps.print(printMetrics(evals));
-      evals.clear();
-    }
-
-    // print comparison of articles
-    while (ttIts.stream().allMatch(it -> it.hasNext())) {
-      List<TaggedText> tts = ttIts.stream().map(it -> it.next()).collect(Collectors.toList());
-      tts.forEach(tt -> cleanUp(tt));
-      if (!checkTaggedTexts(infos, tts)) {
-        break;
+      if (it instanceof PeekIterator) {
+        ((PeekIterator<?>) it).closed = true;
       }
+    }
+  }
 
-      // do comparison and write to output
-      ps.print("  <article id='");
-      ps.print(tts.get(0).id);
-      ps.println("'>");
+  /**
+   * Move the mentions of a tagged text to the text of the gold standard, if the article has the same id but a different text
+   * @param gold
+   * @param tt
+   */
+  private static void alignToGold(TaggedText gold, TaggedText tt) {
+    TaggedText aligned = tt.alignTo(gold);
+    tt.mentions = aligned.mentions;
+    tt.text = aligned.text;
+  }
 
-      ps.print(compare(tts));
-      ps.println();
+  /**
+   * Compare the tagged texts of the iterators article by article and write the output to out.
+   * The output is streamed, so only the current article is kept in memory.
+   * @param ttIts one iterator per annotator, the first is the gold standard
+   * @param infos file names of the annotators
+   * @param alignToGold for every annotator, whether its mentions should be moved to the text of the gold standard if the texts differ; may be null
+   * @param out output file
+   * @param evaluations results of the metrics for every annotator except the first, may be null
+   * @throws IOException
+   */
+  public void compare(List<Iterator<TaggedText>> ttIts, List<String> infos, List<Boolean> alignToGold, Path out, List<ComparisonResult> evaluations)
+      throws IOException {
+    boolean docEvaluationNotFound = false;
 
-      // print evaluation of article
+    // in incremental mode, the new output is written to a temporary file, copying unchanged articles from the previous output
+    boolean incremental = options.incremental && options.pageSize <= 0 && Compression.fromFileName(out.getFileName().toString()) == Compression.NONE;
+    if (options.incremental && !incremental) {
+      log.warn("incremental output is not supported for compressed or paged output, comparing all articles");
+    }
+    CompareOutputManifest previous = incremental ? CompareOutputManifest.read(out) : null;
+    CompareOutputManifest manifest = incremental ? new CompareOutputManifest() : null;
+    Path target = incremental ? out.resolveSibling(out.getFileName() + ".tmp") : out;
+    int[] reused = { 0 };
+
+    ExecutorService workers = options.threads > 1 ? Executors.newFixedThreadPool(options.threads) : null;
+    try (CompareOutput output = options.pageSize > 0 ? new PagedCompareOutputWriter(target, options.pageSize, infos)
+        : new CompareOutputWriter(target);
+        FileChannel previousOutput = previous != null ? FileChannel.open(out, StandardOpenOption.READ) : null) {
+      output.write(printAnnotators(infos));
+
+      // print evaluation
       if (evaluations != null) {
-        docEvaluationNotFound = true;
+        List<Map<String, EvaluationStatistics>> evals = new ArrayList<>();
         for (int i = 0; i < evaluations.size(); i++) {
-          eval = evaluations.get(i).docidToMetricToResult.get(tts.get(0).id);
+          ComparisonResult combinedEvaluations = evaluations.get(i).combine();
+          Map<String, EvaluationStatistics> eval = new TreeMap<>();
           evals.add(eval);
-          if (eval != null) {
-            docEvaluationNotFound = false;
+
+          // type is macro / micro
+          for (String type : combinedEvaluations.docidToMetricToResult.keySet()) {
+            Map<String, EvaluationStatistics> metricToResult = combinedEvaluations.docidToMetricToResult.get(type);
+            for (String metric : metricToResult.keySet()) {
+              eval.put(metric + " (" + type + ")", metricToResult.get(metric));
+            }
           }
         }
-        if (docEvaluationNotFound == false) {
-          ps.print(printMetrics(evals));
+        output.write(printMetrics(evals));
+      }
+
+      // print comparison of articles; the articles are compared by the workers, at most 2 * threads at the same time,
+      // and the results are written in input order
+      Deque<Future<RenderedArticle>> pending = new ArrayDeque<>();
+      int maxPending = 2 * Math.max(1, options.threads);
+      while (ttIts.stream().allMatch(it -> it.hasNext())) {
+        List<TaggedText> tts = ttIts.stream().map(it -> it.next()).collect(Collectors.toList());
+        for (int i = 1; alignToGold != null && i < tts.size(); i++) {
+          if (alignToGold.get(i)) {
+            alignToGold(tts.get(0), tts.get(i));
+          }
+        }
+        if (!checkTaggedTexts(infos, tts)) {
+          break;
+        }
+
+        Callable<RenderedArticle> task = () -> {
+          String hash = incremental ? hashArticle(tts, evaluations) : null;
+          CompareOutputManifest.Article unchanged = previous != null ? previous.getUnchanged(tts.get(0).id, hash) : null;
+          RenderedArticle rendered;
+          if (unchanged != null) {
+            rendered = new RenderedArticle();
+            rendered.id = tts.get(0).id;
+            rendered.previous = unchanged;
+            rendered.evaluationNotFound = isEvaluationNotFound(rendered.id, evaluations);
+          } else {
+            tts.forEach(tt -> cleanUp(tt));
+            rendered = renderArticle(tts, evaluations);
+          }
+          rendered.hash = hash;
+          return rendered;
+        };
+        if (workers == null) {
+          docEvaluationNotFound = writeArticle(output, CompletableFuture.completedFuture(call(task)), previousOutput, manifest, reused);
         } else {
+          pending.add(workers.submit(task));
+          while (pending.size() >= maxPending) {
+            docEvaluationNotFound = writeArticle(output, pending.poll(), previousOutput, manifest, reused);
+          }
         }
-      } else {
-        docEvaluationNotFound = true;
       }
-      if (docEvaluationNotFound) {
-        log.warn("evaluation not found for {}", tts.get(0).id);
+      while (pending.size() > 0) {
+        docEvaluationNotFound = writeArticle(output, pending.poll(), previousOutput, manifest, reused);
       }
-      ps.println("  </article>");
+      output.finish();
+    } catch (IOException | RuntimeException e) {
+      if (incremental) {
+        Files.deleteIfExists(target);
+      }
+      throw e;
+    } finally {
+      if (workers != null) {
+        workers.shutdownNow();
+      }
+      // an annotator might have more articles than the others, or the comparison stopped early
+      close(ttIts);
+    }
+
+    if (incremental) {
+      // replace the previous output; the manifest is written afterwards, so it never describes a different file
+      Files.deleteIfExists(CompareOutputManifest.getPath(out));
+      try {
+        Files.move(target, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(target, out, StandardCopyOption.REPLACE_EXISTING);
+      }
+      manifest.write(out);
+      log.info("copied {} of {} articles from the previous output", reused[0], manifest.articles.size());
     }
 
     if (docEvaluationNotFound && evaluations != null && evaluations.size() > 0) {
       log.warn("available evaluations: {}", evaluations.get(0).docidToMetricToResult.keySet());
     }
+  }
+
+  private static <T> T call(Callable<T> task) throws IOException {
+    try {
+      return task.call();
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Wait for the comparison of an article and write it
+   * @param output
+   * @param article
+   * @param previousOutput previous output file to copy unchanged articles from, may be null
+   * @param manifest records the position of the article, may be null; only for a single output file (see {@link CompareOutputWriter})
+   * @param reused counts the copied articles
+   * @return true if no evaluation was found for the article
+   * @throws IOException
+   */
+  private boolean writeArticle(CompareOutput output, Future<RenderedArticle> article, FileChannel previousOutput, CompareOutputManifest manifest,
+      int[] reused) throws IOException {
+    RenderedArticle rendered;
+    try {
+      rendered = article.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while comparing articles");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+    if (manifest == null) {
+      output.writeArticle(rendered.id, rendered.content, rendered.metrics);
+      return rendered.evaluationNotFound;
+    }
+    CompareOutputWriter file = (CompareOutputWriter) output;
+    long offset = file.getPosition();
+    if (rendered.previous != null) {
+      file.copyArticle(rendered.id, previousOutput, rendered.previous.offset, rendered.previous.length);
+      reused[0]++;
+    } else {
+      file.writeArticle(rendered.id, rendered.content, rendered.metrics);
+    }
+    manifest.add(rendered.id, rendered.hash, offset, file.getPosition() - offset);
+    return rendered.evaluationNotFound;
+  }
+
+  /**
+   * Calculate a hash of everything the rendering of an article depends on: the render version and template, the options, the tagged texts and
+   * the evaluation of the article
+   * @param tts tagged texts before clean up
+   * @param evaluations
+   * @return hexadecimal SHA-256 hash
+   * @throws IOException
+   */
+  private String hashArticle(List<TaggedText> tts, List<ComparisonResult> evaluations) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    data.writeInt(RENDER_VERSION);
+    writeHashString(data, CompareOutputWriter.getTemplateHash());
+    data.writeBoolean(options.minOnly);
+    data.writeBoolean(options.humanReadableMentions);
+    data.writeBoolean(options.filterNMEEntities);
+    data.writeBoolean(options.replaceNewlineWithBR);
+    writeHashString(data, options.alignment.name());
+    data.writeInt(tts.size());
+    for (TaggedText tt : tts) {
+      writeHashString(data, tt.id);
+      writeHashString(data, tt.text);
+      data.writeInt(tt.mentions.size());
+      if (tt.mentions instanceof CompactMentions) {
+        CompactMentions compact = (CompactMentions) tt.mentions;
+        for (int i = 0; i < compact.size(); i++) {
+          writeHashMention(data, compact.getStart(i), compact.getEnd(i), compact.getEntity(i), compact.getMinStart(i), compact.getMinEnd(i),
+              compact.getInfo(i));
+        }
+      } else {
+        for (EntityMention em : tt.mentions) {
+          writeHashMention(data, em.start, em.end, em.entity, em.min == null ? -1 : em.min.start, em.min == null ? -1 : em.min.end, em.info(false));
+        }
+      }
+    }
+    data.writeBoolean(evaluations != null);
+    if (evaluations != null) {
+      for (ComparisonResult evaluation : evaluations) {
+        Map<String, EvaluationStatistics> metricToResult = evaluation.docidToMetricToResult.get(tts.get(0).id);
+        data.writeBoolean(metricToResult != null);
+        if (metricToResult != null) {
+          data.writeInt(metricToResult.size());
+          for (Entry<String, EvaluationStatistics> entry : metricToResult.entrySet()) {
+            writeHashString(data, entry.getKey());
+            data.writeDouble(entry.getValue().getRecall());
+            data.writeDouble(entry.getValue().getPrecision());
+          }
+        }
+      }
+    }
+    data.flush();
+    return EvaluationCache.sha256(bytes.toByteArray());
+  }
+
+  /**
+   * @param minStart start of the min mention, or -1 if there is none
+   */
+  private static void writeHashMention(DataOutputStream data, int start, int end, String entity, int minStart, int minEnd, Map<String, String> info)
+      throws IOException {
+    data.writeInt(start);
+    data.writeInt(end);
+    writeHashString(data, entity);
+    data.writeBoolean(minStart >= 0);
+    if (minStart >= 0) {
+      data.writeInt(minStart);
+      data.writeInt(minEnd);
+    }
+    writeHashInfo(data, info);
+  }
 
-    // load template and replace <article/>
-    String template = Utility.readResourceAsString("compare-template.xml");
-    sw.toString();
-    String output = template.replace("<article/>", sw.toString());
-    FileUtils.writeStringToFile(out.toFile(), output);
+  private static void writeHashString(DataOutputStream data, String str) throws IOException {
+    data.writeBoolean(str != null);
+    if (str != null) {
+      byte[] b = str.getBytes(StandardCharsets.UTF_8);
+      data.writeInt(b.length);
+      data.write(b);
+    }
+  }
+
+  private static void writeHashInfo(DataOutputStream data, Map<String, String> info) throws IOException {
+    data.writeInt(info == null ? -1 : info.size());
+    if (info != null) {
+      for (Entry<String, String> entry : info.entrySet()) {
+        writeHashString(data, entry.getKey());
+        writeHashString(data, entry.getValue());
+      }
+    }
+  }
+
+  private static boolean isEvaluationNotFound(String id, List<ComparisonResult> evaluations) {
+    return evaluations == null || evaluations.stream().allMatch(evaluation -> evaluation.docidToMetricToResult.get(id) == null);
+  }
+
+  /**
+   * Compare the tagged texts of one article and render it like an article of the output file, including the metrics of the article.
+   * The tagged texts are not changed; mentions of texts which differ from the gold standard are moved to the text of the gold standard.
+   * @param infos names of the annotators, for log messages
+   * @param tts one tagged text per annotator, the first is the gold standard
+   * @param evaluations results of the metrics for every annotator except the first, may be null
+   * @return the <code>&lt;article&gt;</code> element, or null if the tagged texts cannot be compared
+   */
+  public String renderArticle(List<String> infos, List<TaggedText> tts, List<ComparisonResult> evaluations) {
+    List<TaggedText> copies = new ArrayList<>();
+    for (TaggedText tt : tts) {
+      TaggedText copy = tt.shallowCopy();
+      if (copies.size() > 0) {
+        alignToGold(copies.get(0), copy);
+      }
+      copies.add(copy);
+    }
+    if (!checkTaggedTexts(infos, copies)) {
+      return null;
+    }
+    copies.forEach(tt -> cleanUp(tt));
+    return renderArticle(copies, evaluations).content;
+  }
+
+  private RenderedArticle renderArticle(List<TaggedText> tts, List<ComparisonResult> evaluations) {
+    RenderedArticle result = new RenderedArticle();
+    StringWriter sw = new StringWriter();
+    result.id = tts.get(0).id;
+    result.evaluationNotFound = printArticle(new PrintWriter(sw), tts, evaluations);
+    result.content = sw.toString();
+    if (evaluations != null) {
+      result.metrics = evaluations.stream().map(evaluation -> evaluation.docidToMetricToResult.get(result.id)).collect(Collectors.toList());
+    }
+    return result;
+  }
+
+  private String printAnnotators(List<String> infos) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<annotators>\n");
+    for (int i = 0; i < infos.size(); i++) {
+      sb.append("\t<annotator id='" + i + "' file='");
+      sb.append(StringEscapeUtils.escapeXml11(infos.get(i)));
+      sb.append("'/>\n");
+    }
+    sb.append("</annotators>\n");
+    return sb.toString();
+  }
+
+  /**
+   * Compare the tagged texts of one article and print it together with its evaluation
+   * @param ps
+   * @param tts
+   * @param evaluations
+   * @return true if no evaluation was found for the article
+   */
+  private boolean printArticle(PrintWriter ps, List<TaggedText> tts, List<ComparisonResult> evaluations) {
+    boolean docEvaluationNotFound;
+
+    // do comparison and write to output
+    ps.print("  <article id='");
+    ps.print(tts.get(0).id);
+    ps.println("'>");
+
+    ps.print(compare(tts));
+    ps.println();
+
+    // print evaluation of article
+    if (evaluations != null) {
+      List<Map<String, EvaluationStatistics>> evals = new ArrayList<>();
+      docEvaluationNotFound = true;
+      for (int i = 0; i < evaluations.size(); i++) {
+        Map<String, EvaluationStatistics> eval = evaluations.get(i).docidToMetricToResult.get(tts.get(0).id);
+        evals.add(eval);
+        if (eval != null) {
+          docEvaluationNotFound = false;
+        }
+      }
+      if (docEvaluationNotFound == false) {
+        ps.print(printMetrics(evals));
+      }
+    } else {
+      docEvaluationNotFound = true;
+    }
+    if (docEvaluationNotFound) {
+      log.warn("evaluation not found for {}", tts.get(0).id);
+    }
+    ps.println("  </article>");
+    ps.flush();
+    return docEvaluationNotFound;
   }
 
   private String printMetrics(List<Map<String, EvaluationStatistics>> evaluations) {
@@ -305,12 +782,18 @@ public class Compare {
     StringBuilder builder = new StringBuilder();
     List<List<EntityMention>> mentions = new ArrayList<>();
 
+    // every get() of a compact list creates a new view, so create them once for all uses below
+    List<TaggedText> compact = tts;
+    tts = compact.stream().map(tt -> tt.mentions instanceof CompactMentions ? tt.shallowCopy() : tt).collect(Collectors.toList());
+
     // track open marks and entity mentions
     List<String> openMarks = new ArrayList<>(); // list is overkill
 
     // replace mentions by their minimum
     for (int i = 0; i < tts.size(); i++) {
-      if (options.minOnly) {
+      if (options.minOnly && compact.get(i).mentions instanceof CompactMentions) {
+        mentions.add(new ArrayList<>(((CompactMentions) compact.get(i).mentions).toMinMentions()));
+      } else if (options.minOnly) {
         mentions.add(new ArrayList<>());
 
         for (EntityMention em : tts.get(i).mentions) {
@@ -326,7 +809,7 @@ public class Compare {
 
     // align chains to chain0
     for (int i = 1; i < chains.size(); i++) {
-      Map<String, String> map = new MentionChainAligner().guessEntityMapGreedy(tts.get(0), tts.get(i));
+      Map<String, String> map = new MentionChainAligner().guessEntityMap(options.alignment, tts.get(0), tts.get(i));
 
       int unmappedIdx = chains.get(0).entityToChain.size() + 1;
       for (String entity : chains.get(i).entityToChain.keySet()) {
@@ -382,12 +865,16 @@ public class Compare {
 
     // iterate over mentions
     builder.append("<content>");
-    CompareIterator cmpIt = new CompareIterator(tts.get(0).text, tts.get(0).id, mentions);
-    ComparePair last = null;
-    for (ComparePair pair : Utility.iterable(cmpIt)) {
-      log.trace("{}, text {}", pair, tts.get(0).text.substring(pair.start, pair.end));
+    // the sweep overwrites its slice when advancing, so the chain starts of the last slice are kept for the next mark
+    BoundarySweep sweep = new BoundarySweep(tts.get(0).text, tts.get(0).id, mentions);
+    String[] lastChainStarts = new String[mentions.size()];
+    List<EntityMention> principalMentions = new ArrayList<>();
+    while (sweep.next()) {
+      if (log.isTraceEnabled()) {
+        log.trace("{}, text {}", sweep.toComparePair(), tts.get(0).text.substring(sweep.getStart(), sweep.getEnd()));
+      }
       // escape span that was compared
-      String escaped = StringEscapeUtils.escapeXml10(tts.get(0).text.substring(pair.start, pair.end));
+      String escaped = StringEscapeUtils.escapeXml10(tts.get(0).text.substring(sweep.getStart(), sweep.getEnd()));
       if (options.replaceNewlineWithBR) {
         escaped = escaped.replace("\n\n\n", "<br/>");
         escaped = escaped.replace("\n\n", "<br/>");
@@ -395,9 +882,9 @@ public class Compare {
       }
 
       boolean hasEntity = false;
-      List<EntityMention> principalMentions = new ArrayList<>();
+      principalMentions.clear();
       for (int i = 0; i < mentions.size(); i++) {
-        EntityMention em = pair.getPrincipalMention(i);
+        EntityMention em = sweep.getPrincipalMention(i);
         // filter AIDA out-of-knowledge-base-entities
         if (em != null && "--OOKBE--".equals(em.entity)) {
           em = null;
@@ -413,11 +900,11 @@ public class Compare {
         builder.append("<mark ");
 
         evals = new ArrayList<>();
-        boolean split = evaluateMark(last, pair, principalMentions, chains, evals);
+        boolean split = evaluateMark(lastChainStarts, sweep, principalMentions, chains, evals);
         builder.append(" split='" + Boolean.toString(split) + "'");
         // add entity and other information
         EntityMention em = principalMentions.get(0);
-        printEntityAttributes(builder, "0", pair, em, entityMentionToOutput.get(0), entryToShortname);
+        printEntityAttributes(builder, "0", sweep, em, entityMentionToOutput.get(0), entryToShortname);
 
         addChainInfo("0", evals.get(0), builder);
         builder.append(">");
@@ -426,7 +913,7 @@ public class Compare {
         for (int i = 1; i < mentions.size(); i++) {
           builder.append("<annotator index='" + i + "'");
           em = principalMentions.get(i);
-          printEntityAttributes(builder, "", pair, em, entityMentionToOutput.get(i), entryToShortname);
+          printEntityAttributes(builder, "", sweep, em, entityMentionToOutput.get(i), entryToShortname);
           if (evals.get(i).eval != null) {
             builder.append(" eval='" + evals.get(i).eval + "'");
             addAnnotatorInfo(i, evals, principalMentions, builder);
@@ -448,20 +935,22 @@ public class Compare {
         builder.append("</mark>\n");
       }
 
-      last = pair;
+      for (int i = 0; i < mentions.size(); i++) {
+        lastChainStarts[i] = chainAnnotationAttr(i, sweep, PosType.START, chains);
+      }
     }
     builder.append("</content>");
 
     return builder.toString().trim();
   }
 
-  private void printEntityAttributes(StringBuilder builder, String attributeSuffix, ComparePair pair, EntityMention em,
+  private void printEntityAttributes(StringBuilder builder, String attributeSuffix, BoundarySweep sweep, EntityMention em,
       Map<String, String> entityMentionToOutput, Map<String, String> entryToShortname) {
     if (em != null) {
       String entity = StringEscapeUtils.escapeXml11(entityMentionToOutput.get(em.entity));
       builder.append(" entity" + attributeSuffix + "='" + entity + "'");
       String shortName = entryToShortname.get(em.entity);
-      int length = pair.end - pair.start;
+      int length = sweep.getEnd() - sweep.getStart();
       if (shortName != null && shortName.length() > length + 5) {
         shortName = shortName.substring(0, length + 5) + "…";
       }
@@ -489,15 +978,16 @@ public class Compare {
 
   /**
    *
+   * @param lastChainStarts chain starts of every annotator at the end of the previous slice
    * @param evals
    * @param principalMentions
    * @return true if mark should be splitted
    */
-  boolean evaluateMark(ComparePair lastPair, ComparePair pair, List<EntityMention> principalMentions, List<MentionChains> chains,
+  boolean evaluateMark(String[] lastChainStarts, BoundarySweep sweep, List<EntityMention> principalMentions, List<MentionChains> chains,
       List<MarkEval> evals) {
     MarkEval me = new MarkEval();
-    me.chainBefore = chainAnnotationAttr(0, lastPair, PosType.START, chains);
-    me.chainAfter = chainAnnotationAttr(0, pair, PosType.END, chains);
+    me.chainBefore = lastChainStarts[0];
+    me.chainAfter = chainAnnotationAttr(0, sweep, PosType.END, chains);
     evals.add(me);
     EntityMention em0 = principalMentions.get(0);
     String principalEvaluation = null;
@@ -525,8 +1015,8 @@ public class Compare {
       }
       me = new MarkEval();
       me.eval = eval;
-      me.chainBefore = chainAnnotationAttr(i, lastPair, PosType.START, chains);
-      me.chainAfter = chainAnnotationAttr(i, pair, PosType.END, chains);
+      me.chainBefore = lastChainStarts[i];
+      me.chainAfter = chainAnnotationAttr(i, sweep, PosType.END, chains);
       evals.add(me);
       if (principalEvaluation == null) {
         principalEvaluation = eval;
@@ -550,60 +1040,32 @@ public class Compare {
   }
 
   /**
-   * Generate "(chainidx" or "chainidx" or "chainidx)" strings
+   * Generate "(" or ")" strings, one for every mention of the current slice which starts or ends at its end
    *
    * @param docIdx
-   * @param pair
+   * @param sweep
+   * @param posType START or END
    * @param chains
-   * @return
+   * @return null if there is no mention or a mention has no chain
    */
-  private String chainAnnotationAttr(int docIdx, ComparePair pair, PosType posType, List<MentionChains> chains) {
-    if (pair == null || pair.getPos(docIdx) == null) {
-      return null;
-    }
-    List<EntityMention> mentions = pair.getMentions(docIdx);
-    if (mentions == null || mentions.size() == 0) {
+  private String chainAnnotationAttr(int docIdx, BoundarySweep sweep, PosType posType, List<MentionChains> chains) {
+    int count = sweep.getMentionCount(docIdx);
+    if (count == 0) {
       return null;
     }
 
-    StringBuilder sb = new StringBuilder();
-    boolean printIntermediates = !pair.emps.get(docIdx).stream().filter(emp -> (emp.posType == PosType.START || emp.posType == PosType.END)).findAny()
-        .isPresent();
-    for (EntityMentionPos emp : Utility.iterable(new ReverseListIterator<>(pair.emps.get(docIdx)))) {
-      if (emp == null) {
-        continue;
-      }
-      if (emp.posType != posType) {
+    int found = 0;
+    for (int j = count - 1; j >= 0; j--) {
+      if (sweep.getPosType(docIdx, j) != posType) {
         continue;
       }
-
-      PosType pt = emp.posType;
-      Chain c0 = chains.get(docIdx).mentionToChain.get(emp.em);
+      Chain c0 = chains.get(docIdx).mentionToChain.get(sweep.getMention(docIdx, j));
       if (c0 == null) {
         return null;
       }
-
-      String chainStr = "" /*+ c0.idx*/;
-      switch (pt) {
-        case START:
-          chainStr = "(" + chainStr;
-          break;
-        case END:
-          chainStr = chainStr + ")";
-          break;
-        case INTERMEDIATE:
-          if (!printIntermediates) {
-            chainStr = null;
-          }
-          break;
-        default:
-          log.warn("chainToStr cannot deal with pos type {} for compare pair", pt, pair);
-      }
-      if (chainStr != null) {
-        sb.append(chainStr);
-      }
+      found++;
     }
-    return sb.toString();
+    return StringUtils.repeat(posType == PosType.START ? "(" : ")", found);
   }
 
   private Map<String, String> getEntityRenameMap(List<EntityMention> mentions0, boolean rename, MentionChains chains) {
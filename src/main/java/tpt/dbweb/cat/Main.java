@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,8 +19,10 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.ParametersDelegate;
 
+import tpt.dbweb.cat.datatypes.TaggedText;
 import tpt.dbweb.cat.evaluation.ComparisonResult;
 import tpt.dbweb.cat.evaluation.ReferenceEvaluator;
+import tpt.dbweb.cat.io.Compression;
 
 /**
  *
@@ -38,9 +41,18 @@ public class Main {
     @Parameter(names = "--tmp-dir")
     public String tmpDirectory = null;
 
-    @Parameter(names = "--run-rcs", description = "run reference-coreference-scorers")
+    @Parameter(names = "--run-rcs", description = "run reference-coreference-scorers, see --rcs-engine")
     public boolean runReferenceCoreferenceScorers = true;
 
+    @Parameter(names = "--read-once", description = "keep the articles of the evaluation in memory for the comparison instead of reading the input files again")
+    public boolean readOnce = false;
+
+    @Parameter(names = "--watch", description = "keep running, and evaluate and compare the input files again when they change")
+    public boolean watch = false;
+
+    @Parameter(names = "--watch-delay", description = "milliseconds without changes of the input files before they are read again")
+    public long watchDelay = 500;
+
     @ParametersDelegate
     Compare.Options compareOptions = new Compare.Options();
 
@@ -110,13 +122,32 @@ public class Main {
       paths.add(Paths.get(inputFile));
     }
 
-    // calculate measures of coreference chains
+    if (options.watch) {
+      new Watch(options, paths).run();
+      return;
+    }
+
+    // calculate measures of coreference chains and compare files
+    if (options.runReferenceCoreferenceScorers && options.readOnce) {
+      // read every file only once, for the evaluation and the comparison; this needs memory for all articles
+      Compare compare = new Compare(options.compareOptions);
+      List<List<TaggedText>> tts = compare.readFiles(paths);
+      List<String> filenames = paths.stream().map(p -> Compression.stripExtension(p.getFileName().toString())).collect(Collectors.toList());
+      ReferenceEvaluator evaluator = new ReferenceEvaluator(options.refEvalOptions);
+      List<ComparisonResult> cmp = evaluator.compare(tts.get(0), filenames.get(0), tts.subList(1, tts.size()), filenames.subList(1, filenames.size()),
+          Paths.get(options.tmpDirectory + "/conll-format/"));
+      if (options.compareOptions.outputFile != null) {
+        compare.compareFiles(paths, tts, Paths.get(options.compareOptions.outputFile), cmp);
+      }
+      return;
+    }
+
+    // by default the comparison reads the files again, so the articles of the evaluation are freed before it starts;
+    // the gold standard is read once and the systems are evaluated in parallel
     List<ComparisonResult> cmp = new ArrayList<>();
     if (options.runReferenceCoreferenceScorers) {
       ReferenceEvaluator evaluator = new ReferenceEvaluator(options.refEvalOptions);
-      for (int i = 1; i < paths.size(); i++) {
-        cmp.add(evaluator.compareXMLFiles(paths.get(0), paths.get(i), Paths.get(options.tmpDirectory + "/conll-format/")));
-      }
+      cmp.addAll(evaluator.compareFiles(paths.get(0), paths.subList(1, paths.size()), Paths.get(options.tmpDirectory + "/conll-format/")));
     }
 
     // compare files
@@ -0,0 +1,298 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.evaluation.EvaluationCache;
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+import tpt.dbweb.cat.evaluation.MetricAggregator;
+import tpt.dbweb.cat.evaluation.ReferenceEvaluator;
+import tpt.dbweb.cat.io.Compression;
+
+/**
+ * Watches the input files and evaluates and compares them again whenever they change.
+ * Only the documents whose gold standard or annotations changed are evaluated again; the metrics of the other documents are kept in memory.
+ * The output file is written with {@link Compare.Options#incremental}, so unchanged articles are copied from the previous output.
+ *
+ * @author Thomas Rebele
+ */
+public class Watch {
+
+  private final static Logger log = LoggerFactory.getLogger(Watch.class);
+
+  /**
+   * Metrics of a document, together with the key of its inputs (see {@link EvaluationCache#key(String, TaggedText, TaggedText)})
+   */
+  private static class Scored {
+
+    final String key;
+
+    final Map<String, EvaluationStatistics> metricToResult;
+
+    Scored(String key, Map<String, EvaluationStatistics> metricToResult) {
+      this.key = key;
+      this.metricToResult = metricToResult;
+    }
+  }
+
+  private final Main.Options options;
+
+  private final List<Path> paths;
+
+  private final List<String> filenames;
+
+  private final Compare compare;
+
+  private final ReferenceEvaluator evaluator;
+
+  /** articles of every file, as read by the last update */
+  private final List<List<TaggedText>> tts = new ArrayList<>();
+
+  /** modification time and size of every file, as read by the last update */
+  private final List<String> versions = new ArrayList<>();
+
+  /** for every system: document id to metrics */
+  private final List<Map<String, Scored>> scored = new ArrayList<>();
+
+  /** for every system: averages of the metrics in scored */
+  private final List<MetricAggregator> aggregators = new ArrayList<>();
+
+  /** read by other threads while {@link #run()} is running */
+  private volatile List<ComparisonResult> evaluations = new ArrayList<>();
+
+  private volatile int evaluatedDocuments = 0;
+
+  public Watch(Main.Options options, List<Path> paths) {
+    this.options = options;
+    this.paths = paths;
+    this.filenames = paths.stream().map(p -> Compression.stripExtension(p.getFileName().toString())).collect(Collectors.toList());
+    if (options.compareOptions.pageSize <= 0) {
+      options.compareOptions.incremental = true;
+    }
+    this.compare = new Compare(options.compareOptions);
+    this.evaluator = new ReferenceEvaluator(options.refEvalOptions);
+    for (int i = 0; i < paths.size(); i++) {
+      tts.add(new ArrayList<>());
+      versions.add(null);
+      if (i > 0) {
+        scored.add(new HashMap<>());
+        aggregators.add(new MetricAggregator());
+      }
+    }
+  }
+
+  /**
+   * Update the evaluation and the output, and then wait for changes of the input files until the thread gets interrupted
+   * @throws IOException
+   */
+  public void run() throws IOException {
+    Set<Path> directories = new LinkedHashSet<>();
+    for (Path path : paths) {
+      directories.add(path.toAbsolutePath().getParent());
+    }
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      for (Path dir : directories) {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+      }
+      update();
+      log.info("watching {} for changes", paths);
+      while (true) {
+        WatchKey key = watcher.take();
+        // wait until the files are not written anymore
+        do {
+          key.pollEvents();
+          key.reset();
+        } while ((key = watcher.poll(options.watchDelay, TimeUnit.MILLISECONDS)) != null);
+        update();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static String getVersion(Path path) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      return attributes.lastModifiedTime() + " " + attributes.size();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Read the files which have changed since the last update, evaluate the changed documents and write the output
+   * @return whether any file has changed
+   */
+  public boolean update() {
+    Set<Integer> changed = new HashSet<>();
+    for (int i = 0; i < paths.size(); i++) {
+      String version = getVersion(paths.get(i));
+      if (version != null && !version.equals(versions.get(i))) {
+        changed.add(i);
+      }
+    }
+    if (changed.isEmpty()) {
+      return false;
+    }
+    try {
+      // read all changed files before updating anything, so that a file which cannot be read doesn't leave an inconsistent state
+      Map<Integer, List<TaggedText>> read = new HashMap<>();
+      for (int i : changed) {
+        read.put(i, compare.readFiles(Arrays.asList(paths.get(i))).get(0));
+      }
+      for (int i : changed) {
+        tts.set(i, read.get(i));
+        versions.set(i, getVersion(paths.get(i)));
+      }
+      log.info("changed: {}", changed.stream().map(i -> paths.get(i)).collect(Collectors.toList()));
+      if (options.runReferenceCoreferenceScorers) {
+        evaluate();
+      }
+      if (options.compareOptions.outputFile != null) {
+        // the comparison changes the mentions, so it gets copies
+        List<List<TaggedText>> copies = tts.stream().map(list -> list.stream().map(TaggedText::shallowCopy).collect(Collectors.toList()))
+            .collect(Collectors.toList());
+        compare.compareFiles(paths, copies, Paths.get(options.compareOptions.outputFile), evaluations);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("cannot update, waiting for the next change: {}", e.toString());
+      // read the files again at the next update
+      changed.forEach(i -> versions.set(i, null));
+    }
+    return true;
+  }
+
+  /**
+   * Evaluate the documents whose inputs have changed for any system, and update the metrics of all systems
+   * @throws IOException
+   */
+  private void evaluate() throws IOException {
+    List<TaggedText> gold = tts.get(0);
+    Set<String> changedIds = new LinkedHashSet<>();
+    List<Map<String, String>> keys = new ArrayList<>();
+    for (int i = 1; i < tts.size(); i++) {
+      Map<String, TaggedText> idToCompare = new HashMap<>();
+      for (TaggedText tt : tts.get(i)) {
+        idToCompare.putIfAbsent(tt.id, tt);
+      }
+      Map<String, String> systemKeys = new HashMap<>();
+      for (TaggedText tt : gold) {
+        String key = EvaluationCache.key("", tt, idToCompare.get(tt.id));
+        systemKeys.put(tt.id, key);
+        Scored old = scored.get(i - 1).get(tt.id);
+        if (old == null || !old.key.equals(key)) {
+          changedIds.add(tt.id);
+        }
+      }
+      keys.add(systemKeys);
+      // documents which are not in the gold standard anymore
+      for (Iterator<Map.Entry<String, Scored>> it = scored.get(i - 1).entrySet().iterator(); it.hasNext();) {
+        Map.Entry<String, Scored> entry = it.next();
+        if (!systemKeys.containsKey(entry.getKey())) {
+          aggregators.get(i - 1).remove(entry.getValue().metricToResult);
+          it.remove();
+        }
+      }
+    }
+
+    evaluatedDocuments = changedIds.size();
+    if (!changedIds.isEmpty()) {
+      List<TaggedText> goldChanged = gold.stream().filter(tt -> changedIds.contains(tt.id)).collect(Collectors.toList());
+      List<List<TaggedText>> compareChanged = new ArrayList<>();
+      for (int i = 1; i < tts.size(); i++) {
+        compareChanged.add(tts.get(i).stream().filter(tt -> changedIds.contains(tt.id)).collect(Collectors.toList()));
+      }
+      Path tmpDirectory = Paths.get(options.tmpDirectory + "/conll-format/");
+      List<ComparisonResult> results = evaluator.compare(goldChanged, filenames.get(0), compareChanged, filenames.subList(1, filenames.size()),
+          tmpDirectory);
+      for (int i = 0; i < results.size(); i++) {
+        for (String id : changedIds) {
+          Map<String, EvaluationStatistics> metricToResult = results.get(i).docidToMetricToResult.get(id);
+          Scored old = metricToResult != null ? scored.get(i).put(id, new Scored(keys.get(i).get(id), metricToResult)) : scored.get(i).remove(id);
+          if (old != null) {
+            aggregators.get(i).remove(old.metricToResult);
+          }
+          if (metricToResult != null) {
+            aggregators.get(i).add(metricToResult);
+          }
+        }
+      }
+    }
+    log.info("evaluated {} of {} documents", changedIds.size(), gold.size());
+
+    evaluations = new ArrayList<>();
+    for (int i = 0; i < scored.size(); i++) {
+      ComparisonResult evaluation = new ComparisonResult();
+      for (Map.Entry<String, Scored> entry : scored.get(i).entrySet()) {
+        evaluation.docidToMetricToResult.put(entry.getKey(), entry.getValue().metricToResult);
+      }
+      evaluations.add(evaluation);
+      logMetrics(paths.get(i + 1), aggregators.get(i));
+    }
+  }
+
+  private static void logMetrics(Path system, MetricAggregator aggregator) {
+    StringBuilder macro = new StringBuilder(), micro = new StringBuilder();
+    for (String metric : CoreferenceScorer.METRICS) {
+      if (aggregator.getDocuments(metric) > 0) {
+        macro.append(String.format(" %s F1 %.2f", metric, 100 * f1(aggregator.getMacroPrecision(metric), aggregator.getMacroRecall(metric))));
+        micro.append(String.format(" %s F1 %.2f", metric, 100 * f1(aggregator.getMicroPrecision(metric), aggregator.getMicroRecall(metric))));
+      }
+    }
+    log.info("{} macro:{}", system, macro);
+    log.info("{} micro:{}", system, micro);
+  }
+
+  private static float f1(float precision, float recall) {
+    return precision == 0 && recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+  }
+
+  /**
+   * @return metrics of every system, as of the last update
+   */
+  public List<ComparisonResult> getEvaluations() {
+    return evaluations;
+  }
+
+  /**
+   * @return macro and micro averages of every system, as of the last update
+   */
+  public List<MetricAggregator> getAggregators() {
+    return aggregators;
+  }
+
+  /**
+   * @return number of documents which were evaluated by the last update
+   */
+  public int getEvaluatedDocuments() {
+    return evaluatedDocuments;
+  }
+}
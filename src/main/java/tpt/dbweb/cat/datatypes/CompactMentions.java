@@ -0,0 +1,349 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.datatypes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Memory efficient list of the entity mentions of one text, stored as parallel arrays (start, end, min start, min end, entity id).
+ * Entities are stored once per list in a dictionary, additional attributes only for mentions that have some.
+ *
+ * The elements returned by {@link #get(int)} are views, i.e. new {@link EntityMention} objects which are not backed by this list.
+ * Changing them has no effect on the list. Every call creates a new view, so code which iterates over the mentions several times
+ * should either copy them once or use the accessors like {@link #getStart(int)}.
+ * Mentions can be appended and removed with {@link #removeIf(Predicate)} and {@link #removeIfEntity(Predicate)}.
+ * {@link #sort(Comparator)} with the natural order of {@link TextSpan} only does some work if the mentions have not been added in this order.
+ *
+ * @author Thomas Rebele
+ */
+public class CompactMentions extends AbstractList<EntityMention> implements RandomAccess {
+
+  private final String text;
+
+  private int size = 0;
+
+  private int[] start, end, minStart, minEnd, entity;
+
+  private String[] entities = new String[4];
+
+  private int entityCount = 0;
+
+  private Map<String, Integer> entityToId = new HashMap<>();
+
+  /** indices of the mentions with additional attributes, ascending */
+  private int[] infoIdx = new int[0];
+
+  private Map<String, String>[] infoMaps = newInfoArray(0);
+
+  private int infoCount = 0;
+
+  private boolean sorted = true;
+
+  public CompactMentions(String text) {
+    this(text, 8);
+  }
+
+  public CompactMentions(String text, int capacity) {
+    this.text = text;
+    capacity = Math.max(capacity, 1);
+    start = new int[capacity];
+    end = new int[capacity];
+    minStart = new int[capacity];
+    minEnd = new int[capacity];
+    entity = new int[capacity];
+  }
+
+  /**
+   * Copy a list of entity mentions
+   * @param text
+   * @param mentions
+   * @return
+   */
+  public static CompactMentions of(String text, List<EntityMention> mentions) {
+    CompactMentions result = new CompactMentions(text, mentions.size());
+    for (EntityMention em : mentions) {
+      result.add(em);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String>[] newInfoArray(int size) {
+    return (Map<String, String>[]) new Map<?, ?>[size];
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  public int getStart(int i) {
+    checkIndex(i);
+    return start[i];
+  }
+
+  public int getEnd(int i) {
+    checkIndex(i);
+    return end[i];
+  }
+
+  /**
+   * @return start of the min mention, -1 if the mention has no min mention
+   */
+  public int getMinStart(int i) {
+    checkIndex(i);
+    return minStart[i];
+  }
+
+  /**
+   * @return end of the min mention, -1 if the mention has no min mention
+   */
+  public int getMinEnd(int i) {
+    checkIndex(i);
+    return minEnd[i];
+  }
+
+  public String getEntity(int i) {
+    checkIndex(i);
+    return entities[entity[i]];
+  }
+
+  /**
+   * @return id of the entity of a mention, the same entity has the same id within this list
+   */
+  public int getEntityId(int i) {
+    checkIndex(i);
+    return entity[i];
+  }
+
+  /**
+   * @return additional attributes of the mention, or null
+   */
+  public Map<String, String> getInfo(int i) {
+    checkIndex(i);
+    int pos = Arrays.binarySearch(infoIdx, 0, infoCount, i);
+    return pos < 0 ? null : infoMaps[pos];
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+    }
+  }
+
+  @Override
+  public EntityMention get(int i) {
+    checkIndex(i);
+    EntityMention em = new EntityMention(text, start[i], end[i], entities[entity[i]]);
+    if (minStart[i] >= 0) {
+      em.min = new TextSpan(text, minStart[i], minEnd[i]);
+    }
+    Map<String, String> info = getInfo(i);
+    if (info != null) {
+      em.infoMap = new HashMap<>(info);
+    }
+    return em;
+  }
+
+  /**
+   * Append a mention
+   * @param start
+   * @param end
+   * @param entity
+   * @param minStart start of the min mention, or -1
+   * @param minEnd end of the min mention, or -1
+   * @param info additional attributes, may be null
+   */
+  public void add(int start, int end, String entity, int minStart, int minEnd, Map<String, String> info) {
+    if (size == this.start.length) {
+      int capacity = size * 2;
+      this.start = Arrays.copyOf(this.start, capacity);
+      this.end = Arrays.copyOf(this.end, capacity);
+      this.minStart = Arrays.copyOf(this.minStart, capacity);
+      this.minEnd = Arrays.copyOf(this.minEnd, capacity);
+      this.entity = Arrays.copyOf(this.entity, capacity);
+    }
+    if (size > 0 && compare(size - 1, start, end) > 0) {
+      sorted = false;
+    }
+    this.start[size] = start;
+    this.end[size] = end;
+    this.minStart[size] = minStart;
+    this.minEnd[size] = minEnd;
+    this.entity[size] = entityId(entity);
+    if (info != null && info.size() > 0) {
+      if (infoCount == infoIdx.length) {
+        infoIdx = Arrays.copyOf(infoIdx, Math.max(4, infoCount * 2));
+        infoMaps = Arrays.copyOf(infoMaps, infoIdx.length);
+      }
+      infoIdx[infoCount] = size;
+      infoMaps[infoCount] = new HashMap<>(info);
+      infoCount++;
+    }
+    size++;
+    modCount++;
+  }
+
+  /**
+   * Append a copy of the entity mention. The text of the mention is not stored.
+   */
+  @Override
+  public void add(int index, EntityMention em) {
+    if (index != size) {
+      throw new UnsupportedOperationException("mentions can only be appended");
+    }
+    add(em.start, em.end, em.entity, em.min == null ? -1 : em.min.start, em.min == null ? -1 : em.min.end, em.info(false));
+  }
+
+  private int entityId(String name) {
+    Integer id = entityToId.get(name);
+    if (id == null) {
+      if (entityCount == entities.length) {
+        entities = Arrays.copyOf(entities, entityCount * 2);
+      }
+      id = entityCount++;
+      entities[id] = name;
+      entityToId.put(name, id);
+    }
+    return id;
+  }
+
+  /**
+   * Same order as {@link TextSpan#compareTo(TextSpan)}
+   */
+  private int compare(int i, int oStart, int oEnd) {
+    int startCmp = Integer.compare(start[i], oStart);
+    return startCmp != 0 ? startCmp : -Integer.compare(end[i], oEnd);
+  }
+
+  /**
+   * Sorts the mentions by their natural order. Other comparators are not supported.
+   */
+  @Override
+  public void sort(Comparator<? super EntityMention> c) {
+    if (c != null) {
+      throw new UnsupportedOperationException("only the natural order is supported");
+    }
+    if (sorted) {
+      return;
+    }
+    // stable, like List.sort
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> compare(a, start[b], end[b]));
+    permute(order, size);
+    sorted = true;
+    modCount++;
+  }
+
+  @Override
+  public boolean removeIf(Predicate<? super EntityMention> filter) {
+    Integer[] keep = new Integer[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (!filter.test(get(i))) {
+        keep[count++] = i;
+      }
+    }
+    if (count == size) {
+      return false;
+    }
+    permute(keep, count);
+    modCount++;
+    return true;
+  }
+
+  /**
+   * Remove the mentions of the entities which match the filter, without creating views. The filter is called once per entity.
+   * @param filter
+   * @return whether a mention has been removed
+   */
+  public boolean removeIfEntity(Predicate<String> filter) {
+    boolean[] remove = new boolean[entityCount];
+    boolean any = false;
+    for (int id = 0; id < entityCount; id++) {
+      remove[id] = filter.test(entities[id]);
+      any |= remove[id];
+    }
+    if (!any) {
+      return false;
+    }
+    Integer[] keep = new Integer[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (!remove[entity[i]]) {
+        keep[count++] = i;
+      }
+    }
+    if (count == size) {
+      return false;
+    }
+    permute(keep, count);
+    modCount++;
+    return true;
+  }
+
+  /**
+   * Rearrange the mentions, such that the i-th mention is the order[i]-th mention before
+   * @param order ascending indices for removing, arbitrary indices for sorting
+   * @param newSize number of mentions to keep
+   */
+  private void permute(Integer[] order, int newSize) {
+    int[] newStart = new int[Math.max(1, newSize)], newEnd = new int[newStart.length], newMinStart = new int[newStart.length],
+        newMinEnd = new int[newStart.length], newEntity = new int[newStart.length];
+    int[] newInfoIdx = new int[infoCount];
+    Map<String, String>[] newInfoMaps = newInfoArray(infoCount);
+    int newInfoCount = 0;
+    for (int i = 0; i < newSize; i++) {
+      int o = order[i];
+      newStart[i] = start[o];
+      newEnd[i] = end[o];
+      newMinStart[i] = minStart[o];
+      newMinEnd[i] = minEnd[o];
+      newEntity[i] = entity[o];
+      int pos = Arrays.binarySearch(infoIdx, 0, infoCount, o);
+      if (pos >= 0) {
+        newInfoIdx[newInfoCount] = i;
+        newInfoMaps[newInfoCount++] = infoMaps[pos];
+      }
+    }
+    start = newStart;
+    end = newEnd;
+    minStart = newMinStart;
+    minEnd = newMinEnd;
+    entity = newEntity;
+    infoIdx = newInfoIdx;
+    infoMaps = newInfoMaps;
+    infoCount = newInfoCount;
+    size = newSize;
+  }
+
+  /**
+   * Create a list where every mention is replaced by its min mention (see {@link EntityMention#getMinMention()}), sorted by natural order
+   * @return
+   */
+  public CompactMentions toMinMentions() {
+    CompactMentions result = new CompactMentions(text, size);
+    for (int i = 0; i < size; i++) {
+      boolean hasMin = minStart[i] >= 0;
+      result.add(hasMin ? minStart[i] : start[i], hasMin ? minEnd[i] : end[i], entities[entity[i]], minStart[i], minEnd[i], getInfo(i));
+    }
+    result.sort(null);
+    return result;
+  }
+}
@@ -18,7 +18,7 @@ public class MentionChains {
 
     public int idx;
 
-    Set<EntityMention> mentions;
+    public Set<EntityMention> mentions;
   }
 
   public MentionChains(List<EntityMention> mentions) {
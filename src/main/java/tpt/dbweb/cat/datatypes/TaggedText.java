@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import tools.aligner.TextSpanAligner;
 import tpt.dbweb.cat.tools.Utility;
 
 /**
@@ -46,6 +47,36 @@ public class TaggedText {
     return infoMap == null ? infoMap = (create ? new HashMap<>(1) : null) : infoMap;
   }
 
+  /**
+   * Copy which shares the text, the mentions and the info map, but has its own list of mentions.
+   * This allows to remove, add or sort the mentions of the copy without changing the original.
+   * @return
+   */
+  public TaggedText shallowCopy() {
+    TaggedText copy = new TaggedText();
+    copy.id = id;
+    copy.text = text;
+    copy.infoMap = infoMap;
+    copy.mentions = new ArrayList<>(mentions);
+    return copy;
+  }
+
+  /**
+   * Move the mentions to the text of the gold standard, if the gold standard has the same id but a different text.
+   * This is necessary for CoNLL files, whose words don't contain the original whitespace.
+   * @param gold
+   * @return a copy with the text of the gold standard, or this tagged text if the mentions don't need to be moved
+   */
+  public TaggedText alignTo(TaggedText gold) {
+    if (gold == null || gold.id == null || !gold.id.equals(id) || gold.text == null || text == null || gold.text.equals(text)) {
+      return this;
+    }
+    TaggedText copy = shallowCopy();
+    copy.mentions = new ArrayList<>(new TextSpanAligner<EntityMention>(text, gold.text).align(mentions));
+    copy.text = gold.text;
+    return copy;
+  }
+
   @Override
   public String toString() {
     return text + " {" + mentions + "}";
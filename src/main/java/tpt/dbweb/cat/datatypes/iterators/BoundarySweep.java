@@ -0,0 +1,337 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.datatypes.iterators;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.iterators.EntityMentionPosIterator.PosType;
+
+/**
+ * Sweep line over the boundaries of the entity mentions of several tagged texts (annotators) at the same time.
+ * It stops at the same positions as {@link CompareIterator}, but the current slice is stored in this object and overwritten by {@link #next()}.
+ * The boundaries of every annotator are precomputed as an array, so advancing to the next slice does not allocate objects.
+ *
+ * Usage:
+ * <pre>
+ * BoundarySweep sweep = new BoundarySweep(text, docid, mentions);
+ * while (sweep.next()) {
+ *   for (int j = 0; j &lt; sweep.getMentionCount(0); j++) {
+ *     EntityMention em = sweep.getMention(0, j);
+ *     ...
+ * </pre>
+ *
+ * @author Thomas Rebele
+ */
+public class BoundarySweep {
+
+  private final static Logger log = LoggerFactory.getLogger(BoundarySweep.class);
+
+  private final String text, docid;
+
+  private final int textLength;
+
+  private final int annotators;
+
+  /** sorted entity mentions of every annotator */
+  private final EntityMention[][] mentions;
+
+  /** boundaries in sweep order, encoded as (mention index &lt;&lt; 1) | (1 if end boundary) */
+  private final int[][] boundaries;
+
+  private final int[][] starts, ends;
+
+  /** current group of boundaries with the same position: boundaries[i][groupFrom[i]] until boundaries[i][groupTo[i]] (exclusive) */
+  private final int[] groupFrom, groupTo;
+
+  /** whether the group of an annotator is at the end of the current slice */
+  private final boolean[] groupApplied;
+
+  /** indices of the open mentions of every annotator, in the order they were opened */
+  private final int[][] open;
+
+  private final int[] openSize;
+
+  private int start = 0, end = -1;
+
+  /**
+   * @param text
+   * @param docid only used for logging
+   * @param ems entity mention lists, they get sorted
+   */
+  public BoundarySweep(String text, String docid, List<List<EntityMention>> ems) {
+    this.text = text;
+    this.docid = docid;
+    this.textLength = text == null ? Integer.MAX_VALUE : text.length();
+    this.annotators = ems.size();
+    mentions = new EntityMention[annotators][];
+    boundaries = new int[annotators][];
+    starts = new int[annotators][];
+    ends = new int[annotators][];
+    groupFrom = new int[annotators];
+    groupTo = new int[annotators];
+    groupApplied = new boolean[annotators];
+    open = new int[annotators][];
+    openSize = new int[annotators];
+    for (int i = 0; i < annotators; i++) {
+      List<EntityMention> list = ems.get(i);
+      list.sort(null);
+      mentions[i] = list.toArray(new EntityMention[list.size()]);
+      initBoundaries(i);
+      open[i] = new int[4];
+    }
+  }
+
+  /**
+   * Calculate the order of the boundaries of an annotator: by position, then by the order of the mentions, start before end.
+   * The end of a mention which ends before it starts directly follows its start.
+   */
+  private void initBoundaries(int i) {
+    EntityMention[] ems = mentions[i];
+    int n = ems.length;
+    int[] s = starts[i] = new int[n];
+    int[] e = ends[i] = new int[n];
+    int validCount = 0;
+    for (int j = 0; j < n; j++) {
+      s[j] = ems[j].start;
+      e[j] = ems[j].end;
+      if (s[j] <= e[j]) {
+        validCount++;
+      }
+    }
+
+    // mentions ordered by end, ties in list order
+    long[] byEnd = new long[validCount];
+    for (int j = 0, k = 0; j < n; j++) {
+      if (s[j] <= e[j]) {
+        byEnd[k++] = ((long) e[j] << 32) | j;
+      }
+    }
+    Arrays.sort(byEnd);
+
+    int[] result = boundaries[i] = new int[2 * n];
+    int count = 0, j = 0, k = 0;
+    while (j < n || k < validCount) {
+      int endIdx = k < validCount ? (int) byEnd[k] : -1;
+      if (j < n && (endIdx < 0 || startBeforeEnd(s, e, j, endIdx))) {
+        result[count++] = j << 1;
+        if (s[j] > e[j]) {
+          result[count++] = (j << 1) | 1;
+        }
+        j++;
+      } else {
+        result[count++] = (endIdx << 1) | 1;
+        k++;
+      }
+    }
+  }
+
+  /**
+   * Compare the start of mention a with the end of mention b, by position and then by mention order
+   */
+  private static boolean startBeforeEnd(int[] s, int[] e, int a, int b) {
+    if (s[a] != e[b]) {
+      return s[a] < e[b];
+    }
+    if (s[a] != s[b]) {
+      return s[a] < s[b];
+    }
+    if (e[a] != e[b]) {
+      return e[a] > e[b];
+    }
+    return a <= b;
+  }
+
+  private int boundaryPos(int i, int boundary) {
+    return (boundary & 1) == 0 ? starts[i][boundary >> 1] : ends[i][boundary >> 1];
+  }
+
+  /**
+   * @return position of the current group, or the text length if all boundaries of the annotator have been visited
+   */
+  private int groupPos(int i) {
+    return groupFrom[i] < groupTo[i] ? boundaryPos(i, boundaries[i][groupFrom[i]]) : textLength;
+  }
+
+  /**
+   * Load the next group of boundaries with the same position. A group at or after the end of the text consists of a single boundary.
+   */
+  private void nextGroup(int i) {
+    int[] b = boundaries[i];
+    int from = groupTo[i];
+    int to = from;
+    if (from < b.length) {
+      int pos = boundaryPos(i, b[from]);
+      to++;
+      if (pos < textLength) {
+        while (to < b.length && boundaryPos(i, b[to]) == pos) {
+          to++;
+        }
+      }
+    }
+    groupFrom[i] = from;
+    groupTo[i] = to;
+  }
+
+  /**
+   * Advance to the next slice
+   * @return false if the end of the text has been reached before
+   */
+  public boolean next() {
+    if (end >= textLength) {
+      return false;
+    }
+
+    // close mentions ending at the previous slice
+    for (int i = 0; i < annotators; i++) {
+      if (groupApplied[i]) {
+        for (int g = groupFrom[i]; g < groupTo[i]; g++) {
+          int boundary = boundaries[i][g];
+          if ((boundary & 1) == 1) {
+            close(i, mentions[i][boundary >> 1]);
+          }
+        }
+        groupApplied[i] = false;
+      }
+    }
+    int lastPos = end < 0 ? 0 : end;
+
+    int newEnd = Integer.MAX_VALUE;
+    for (int i = 0; i < annotators; i++) {
+      if (groupFrom[i] == groupTo[i] || groupPos(i) <= end) {
+        nextGroup(i);
+      }
+      newEnd = Math.min(newEnd, groupPos(i));
+    }
+
+    // should never happen
+    if (newEnd < lastPos) {
+      String str = text == null || newEnd < 0 ? "" : text.substring(newEnd, lastPos);
+      log.warn("Warning: pos was wrong in doc " + docid + ", lastpos " + lastPos + " pos " + newEnd + " text '" + str + "'");
+      newEnd = lastPos;
+    }
+    start = lastPos;
+    end = newEnd;
+
+    // open mentions starting at the current position
+    for (int i = 0; i < annotators; i++) {
+      if (groupFrom[i] < groupTo[i] && groupPos(i) == end) {
+        groupApplied[i] = true;
+        for (int g = groupFrom[i]; g < groupTo[i]; g++) {
+          int boundary = boundaries[i][g];
+          if ((boundary & 1) == 0) {
+            if (openSize[i] == open[i].length) {
+              open[i] = Arrays.copyOf(open[i], 2 * openSize[i]);
+            }
+            open[i][openSize[i]++] = boundary >> 1;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remove the first open mention which is equal to em
+   */
+  private void close(int i, EntityMention em) {
+    int[] o = open[i];
+    for (int j = 0; j < openSize[i]; j++) {
+      EntityMention other = mentions[i][o[j]];
+      if (other == em || other.equals(em)) {
+        System.arraycopy(o, j + 1, o, j, openSize[i] - j - 1);
+        openSize[i]--;
+        return;
+      }
+    }
+  }
+
+  public int getAnnotatorCount() {
+    return annotators;
+  }
+
+  /**
+   * @return start of the current slice
+   */
+  public int getStart() {
+    return start;
+  }
+
+  /**
+   * @return end of the current slice, i.e. the position of the boundaries
+   */
+  public int getEnd() {
+    return end;
+  }
+
+  /**
+   * @param i annotator
+   * @return number of entity mentions which are open at the end of the current slice, including those which start or end there
+   */
+  public int getMentionCount(int i) {
+    return openSize[i];
+  }
+
+  /**
+   * @param i annotator
+   * @param j index of the open mention, outer mentions first
+   * @return
+   */
+  public EntityMention getMention(int i, int j) {
+    if (j < 0 || j >= openSize[i]) {
+      throw new IndexOutOfBoundsException("index " + j + ", size " + openSize[i]);
+    }
+    return mentions[i][open[i][j]];
+  }
+
+  /**
+   * @return type of the end of the current slice with respect to the open mention, see {@link EntityMentionPos}
+   */
+  public PosType getPosType(int i, int j) {
+    EntityMention em = getMention(i, j);
+    if (end == em.start) {
+      return PosType.START;
+    } else if (end == em.end) {
+      return PosType.END;
+    } else if (em.start < end && end < em.end) {
+      return PosType.INTERMEDIATE;
+    }
+    return PosType.INVALID;
+  }
+
+  /**
+   * Get top most / last encountered entity mention, like {@link ComparePair#getPrincipalMention(int)}
+   * @param i annotator
+   * @return
+   */
+  public EntityMention getPrincipalMention(int i) {
+    for (int j = openSize[i] - 1; j >= 0; j--) {
+      EntityMention em = mentions[i][open[i][j]];
+      if (em.start < end) {
+        return em;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Copy the current slice to a new compare pair
+   * @return
+   */
+  public ComparePair toComparePair() {
+    ComparePair pair = new ComparePair(start, end, annotators);
+    for (int i = 0; i < annotators; i++) {
+      List<EntityMentionPos> emps = pair.emps.get(i);
+      for (int j = 0; j < openSize[i]; j++) {
+        emps.add(new EntityMentionPos(end, mentions[i][open[i][j]]));
+      }
+    }
+    return pair;
+  }
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -35,28 +36,27 @@ public class ComparisonResult {
 
   /**
    * Combines the results contained in this object. Result is also a ComparisonResult instance, with virtual documents "macro" and "micro".
-   * Only works if it contains ValueEvaluationStatistics results
+   * Only works if it contains ValueEvaluationStatistics results. To update the combined results when documents change, use a {@link MetricAggregator}.
    * @return
    */
   public ComparisonResult combine() {
-    ComparisonResult result = new ComparisonResult();
-
-    for (String docId : docidToMetricToResult.keySet()) {
-      Map<String, EvaluationStatistics> metricToResult = docidToMetricToResult.get(docId);
-      for (String metric : docidToMetricToResult.get(docId).keySet()) {
-        EvaluationStatistics stat = metricToResult.get(metric);
-
-        // macro
-        EvaluationStatistics macro = result.docidToMetricToResult.computeIfAbsent("macro", k -> new TreeMap<>()).computeIfAbsent(metric,
-            k -> new ValueEvaluationStatistics());
-        macro.addMacro(stat);
-
-        EvaluationStatistics micro = result.docidToMetricToResult.computeIfAbsent("micro", k -> new TreeMap<>()).computeIfAbsent(metric,
-            k -> new ValueEvaluationStatistics());
-        micro.addMicro(stat);
+    MetricAggregator aggregator = new MetricAggregator();
+    Map<String, Map<String, String>> metricToInfo = new TreeMap<>();
+    for (Map<String, EvaluationStatistics> metricToResult : docidToMetricToResult.values()) {
+      aggregator.add(metricToResult);
+      for (Map.Entry<String, EvaluationStatistics> entry : metricToResult.entrySet()) {
+        if (entry.getValue() instanceof ValueEvaluationStatistics && !entry.getValue().info.isEmpty()) {
+          metricToInfo.computeIfAbsent(entry.getKey(), k -> new HashMap<>()).putAll(entry.getValue().info);
+        }
       }
     }
 
+    ComparisonResult result = aggregator.toComparisonResult();
+    for (Map<String, EvaluationStatistics> metricToResult : result.docidToMetricToResult.values()) {
+      for (Map.Entry<String, Map<String, String>> entry : metricToInfo.entrySet()) {
+        metricToResult.get(entry.getKey()).info.putAll(entry.getValue());
+      }
+    }
     return result;
   }
 
@@ -0,0 +1,364 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.Fraction;
+import tpt.dbweb.cat.datatypes.MentionChains;
+import tpt.dbweb.cat.datatypes.MentionChains.Chain;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.ConllWriter;
+import tpt.dbweb.cat.tools.HungarianAlgorithm;
+
+/**
+ * Native implementation of the metrics of lib/reference-coreference-scorers (MUC, B-cubed, CEAF-m, CEAF-e and BLANC).
+ * It works directly on the entity mentions, so no CoNLL files and no perl process are necessary.
+ * Mentions of tagged texts are identified by their first and last word, with the words which {@link ConllWriter} writes for the scorer,
+ * so a mention whose boundary is inside a word covers the whole word. Repeated mentions (same words) are only counted once.
+ *
+ * The results use the same document ids and metric names as {@link ReferenceEvaluator#parseScorerOutput(String)}.
+ *
+ * @author Thomas Rebele
+ */
+public class CoreferenceScorer {
+
+  private final static Logger log = LoggerFactory.getLogger(CoreferenceScorer.class);
+
+  public static final String MUC = "muc", BCUB = "bcub", CEAFM = "ceafm", CEAFE = "ceafe", BLANC = "blanc";
+
+  public static final List<String> METRICS = Collections.unmodifiableList(Arrays.asList(MUC, BCUB, CEAFM, CEAFE, BLANC));
+
+  /** increase this if the results change, so that results in an {@link EvaluationCache} are not used anymore */
+  public static final int VERSION = 2;
+
+  private static final ConllWriter CONLL = new ConllWriter();
+
+  /**
+   * Evaluates all metrics for every document of the gold standard. Documents are matched by their id.
+   * A document which is missing in compare is evaluated against an empty response.
+   * @param goldstandard
+   * @param compare
+   * @return
+   */
+  public ComparisonResult compare(List<TaggedText> goldstandard, List<TaggedText> compare) {
+    Map<String, TaggedText> idToCompare = new HashMap<>();
+    for (TaggedText tt : compare) {
+      idToCompare.putIfAbsent(tt.id, tt);
+    }
+
+    ComparisonResult result = new ComparisonResult();
+    for (TaggedText gold : goldstandard) {
+      TaggedText cmp = idToCompare.get(gold.id);
+      List<EntityMention> response = Collections.emptyList();
+      if (cmp == null) {
+        log.warn("document {} not found in response, using empty response", gold.id);
+      } else {
+        response = toWordSpans(cmp);
+      }
+      result.docidToMetricToResult.put(gold.id, score(toWordSpans(gold), response));
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates all metrics for one document
+   * @param key
+   * @param response
+   * @return map from metric name to result
+   */
+  public Map<String, EvaluationStatistics> score(TaggedText key, TaggedText response) {
+    return score(toWordSpans(key), toWordSpans(response));
+  }
+
+  /**
+   * Replace the character offsets of the mentions by the index of their first word and the index after their last word,
+   * as the mentions are written by {@link ConllWriter}. Mentions which end before they start or which are not within the words
+   * cannot be written to a CoNLL file, so they are removed.
+   * @param tt
+   * @return mentions with word indexes as start and end
+   */
+  static List<EntityMention> toWordSpans(TaggedText tt) {
+    if (tt.text == null || tt.mentions.isEmpty()) {
+      return tt.mentions;
+    }
+    int[] wordEnds = CONLL.getWordSpans(tt).stream().filter(span -> span != null).mapToInt(span -> span.end).toArray();
+    List<EntityMention> result = new ArrayList<>(tt.mentions.size());
+    for (EntityMention em : tt.mentions) {
+      // the first word which ends after the start of the mention, and the first word which ends at or after its end
+      int first = firstWordEndingAfter(wordEnds, em.start), last = firstWordEndingAfter(wordEnds, em.end - 1);
+      if (em.end < em.start || first >= wordEnds.length || last >= wordEnds.length) {
+        log.debug("mention {} is not within the words of {}", em, tt.id);
+        continue;
+      }
+      result.add(new EntityMention(tt.text, first, Math.max(first, last) + 1, em.entity));
+    }
+    return result;
+  }
+
+  /**
+   * @return index of the first word which ends after pos, or the number of words
+   */
+  private static int firstWordEndingAfter(int[] wordEnds, int pos) {
+    int idx = Arrays.binarySearch(wordEnds, pos + 1);
+    if (idx < 0) {
+      return -idx - 1;
+    }
+    // several words may end at the same position
+    while (idx > 0 && wordEnds[idx - 1] == pos + 1) {
+      idx--;
+    }
+    return idx;
+  }
+
+  /**
+   * Evaluates all metrics for the chains of one document
+   * @param key
+   * @param response
+   * @return map from metric name to result
+   */
+  public Map<String, EvaluationStatistics> score(MentionChains key, MentionChains response) {
+    return score(flatten(key), flatten(response));
+  }
+
+  private static List<EntityMention> flatten(MentionChains chains) {
+    List<EntityMention> result = new ArrayList<>();
+    for (Chain c : chains.entityToChain.values()) {
+      if (c.mentions != null) {
+        result.addAll(c.mentions);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Evaluates all metrics for one document
+   * @param key entity mentions of the gold standard
+   * @param response entity mentions to evaluate
+   * @return map from metric name to result
+   */
+  public Map<String, EvaluationStatistics> score(List<EntityMention> key, List<EntityMention> response) {
+    Map<Long, Integer> spanToId = new HashMap<>();
+    Partition k = new Partition(key, spanToId);
+    Partition r = new Partition(response, spanToId);
+    k.resize(spanToId.size());
+    r.resize(spanToId.size());
+
+    int[][] overlap = overlap(k, r);
+    Map<String, EvaluationStatistics> result = new TreeMap<>();
+    result.put(MUC, new ValueEvaluationStatistics(muc(k, r), muc(r, k)));
+    result.put(BCUB, new ValueEvaluationStatistics(bcub(k, r), bcub(r, k)));
+
+    double ceafm = ceaf(k, r, overlap, false), ceafe = ceaf(k, r, overlap, true);
+    result.put(CEAFM, new ValueEvaluationStatistics(new Fraction(ceafm, k.mentionCount), new Fraction(ceafm, r.mentionCount)));
+    result.put(CEAFE, new ValueEvaluationStatistics(new Fraction(ceafe, k.clusters.length), new Fraction(ceafe, r.clusters.length)));
+    result.put(BLANC, blanc(k, r, overlap));
+    return result;
+  }
+
+  /**
+   * Clustering of mention ids by entity
+   */
+  private static class Partition {
+
+    int[][] clusters;
+
+    /** cluster index for every mention id, -1 if the mention is not part of this partition */
+    int[] mentionToCluster = new int[0];
+
+    int mentionCount = 0;
+
+    Partition(List<EntityMention> mentions, Map<Long, Integer> spanToId) {
+      List<EntityMention> sorted = new ArrayList<>(mentions);
+      sorted.sort(null);
+
+      Map<String, List<Integer>> entityToIds = new LinkedHashMap<>();
+      Map<Long, Boolean> seen = new HashMap<>();
+      for (EntityMention em : sorted) {
+        if (em.entity == null) {
+          continue;
+        }
+        long span = ((long) em.start << 32) | (em.end & 0xffffffffL);
+        if (seen.put(span, Boolean.TRUE) != null) {
+          log.debug("repeated mention {}", em);
+          continue;
+        }
+        int id = spanToId.computeIfAbsent(span, k -> spanToId.size());
+        entityToIds.computeIfAbsent(em.entity, k -> new ArrayList<>()).add(id);
+        mentionCount++;
+      }
+
+      clusters = new int[entityToIds.size()][];
+      int i = 0;
+      for (List<Integer> ids : entityToIds.values()) {
+        clusters[i++] = ids.stream().mapToInt(Integer::intValue).toArray();
+      }
+    }
+
+    void resize(int mentionIds) {
+      mentionToCluster = new int[mentionIds];
+      Arrays.fill(mentionToCluster, -1);
+      for (int i = 0; i < clusters.length; i++) {
+        for (int id : clusters[i]) {
+          mentionToCluster[id] = i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Sparse overlap between key and response clusters
+   * @return entries {key cluster, response cluster, number of common mentions}
+   */
+  private static int[][] overlap(Partition k, Partition r) {
+    List<int[]> entries = new ArrayList<>();
+    Map<Integer, Integer> counts = new LinkedHashMap<>();
+    for (int i = 0; i < k.clusters.length; i++) {
+      counts.clear();
+      for (int id : k.clusters[i]) {
+        int j = r.mentionToCluster[id];
+        if (j >= 0) {
+          counts.merge(j, 1, Integer::sum);
+        }
+      }
+      for (Map.Entry<Integer, Integer> e : counts.entrySet()) {
+        entries.add(new int[] { i, e.getKey(), e.getValue() });
+      }
+    }
+    return entries.toArray(new int[entries.size()][]);
+  }
+
+  /**
+   * MUC (link based) recall of a with respect to b; swap arguments for precision
+   */
+  private static Fraction muc(Partition a, Partition b) {
+    double nom = 0, denom = 0;
+    for (int[] cluster : a.clusters) {
+      // mentions missing in b form a partition of their own
+      int partitions = 0;
+      Map<Integer, Boolean> hit = new HashMap<>();
+      for (int id : cluster) {
+        int j = b.mentionToCluster[id];
+        if (j < 0 || hit.put(j, Boolean.TRUE) == null) {
+          partitions++;
+        }
+      }
+      nom += cluster.length - partitions;
+      denom += cluster.length - 1;
+    }
+    return new Fraction(nom, denom);
+  }
+
+  /**
+   * B-cubed (mention based) recall of a with respect to b; swap arguments for precision
+   */
+  private static Fraction bcub(Partition a, Partition b) {
+    double nom = 0;
+    Map<Integer, Integer> counts = new HashMap<>();
+    for (int[] cluster : a.clusters) {
+      counts.clear();
+      for (int id : cluster) {
+        int j = b.mentionToCluster[id];
+        if (j >= 0) {
+          counts.merge(j, 1, Integer::sum);
+        }
+      }
+      for (int common : counts.values()) {
+        nom += (double) common * common / cluster.length;
+      }
+    }
+    return new Fraction(nom, a.mentionCount);
+  }
+
+  /**
+   * CEAF similarity of the optimal one-to-one alignment of key and response clusters.
+   * Only clusters which have mentions in common are passed to the Hungarian algorithm, the others cannot contribute to the sum.
+   * @param entityBased use phi4 (CEAF-e) instead of phi3 (CEAF-m)
+   */
+  private static double ceaf(Partition k, Partition r, int[][] overlap, boolean entityBased) {
+    if (overlap.length == 0) {
+      return 0;
+    }
+    Map<Integer, Integer> rowIdx = new HashMap<>(), colIdx = new HashMap<>();
+    for (int[] e : overlap) {
+      rowIdx.computeIfAbsent(e[0], x -> rowIdx.size());
+      colIdx.computeIfAbsent(e[1], x -> colIdx.size());
+    }
+    double[][] weights = new double[rowIdx.size()][colIdx.size()];
+    for (int[] e : overlap) {
+      double sim = e[2];
+      if (entityBased) {
+        sim = 2. * e[2] / (k.clusters[e[0]].length + r.clusters[e[1]].length);
+      }
+      weights[rowIdx.get(e[0])][colIdx.get(e[1])] = sim;
+    }
+    return HungarianAlgorithm.sum(weights, HungarianAlgorithm.maximize(weights));
+  }
+
+  private static double pairs(double n) {
+    return n * (n - 1) / 2;
+  }
+
+  /**
+   * BLANC, i.e. the average of the coreference link and non-coreference link scores.
+   * If key and response have no coreference links (or no non-coreference links), only the other score is used.
+   */
+  private static ValueEvaluationStatistics blanc(Partition k, Partition r, int[][] overlap) {
+    // coreference links
+    double keyLinks = 0, responseLinks = 0, commonLinks = 0;
+    for (int[] cluster : k.clusters) {
+      keyLinks += pairs(cluster.length);
+    }
+    for (int[] cluster : r.clusters) {
+      responseLinks += pairs(cluster.length);
+    }
+    for (int[] e : overlap) {
+      commonLinks += pairs(e[2]);
+    }
+
+    // non-coreference links; common ones are counted among the mentions of key and response
+    double keyNonLinks = pairs(k.mentionCount) - keyLinks;
+    double responseNonLinks = pairs(r.mentionCount) - responseLinks;
+    int[] keyCommon = new int[k.clusters.length], responseCommon = new int[r.clusters.length];
+    int common = 0;
+    for (int[] e : overlap) {
+      keyCommon[e[0]] += e[2];
+      responseCommon[e[1]] += e[2];
+      common += e[2];
+    }
+    double sameKey = 0, sameResponse = 0;
+    for (int c : keyCommon) {
+      sameKey += pairs(c);
+    }
+    for (int c : responseCommon) {
+      sameResponse += pairs(c);
+    }
+    double commonNonLinks = pairs(common) - sameKey - sameResponse + commonLinks;
+
+    Fraction linkRecall = new Fraction(commonLinks, keyLinks), linkPrecision = new Fraction(commonLinks, responseLinks);
+    Fraction nonLinkRecall = new Fraction(commonNonLinks, keyNonLinks), nonLinkPrecision = new Fraction(commonNonLinks, responseNonLinks);
+    if (keyLinks == 0 && responseLinks == 0) {
+      return new ValueEvaluationStatistics(nonLinkRecall, nonLinkPrecision);
+    }
+    if (keyNonLinks == 0 && responseNonLinks == 0) {
+      return new ValueEvaluationStatistics(linkRecall, linkPrecision);
+    }
+    Fraction recall = new Fraction(linkRecall.value(0) + nonLinkRecall.value(0), 2);
+    Fraction precision = new Fraction(linkPrecision.value(0) + nonLinkPrecision.value(0), 2);
+    return new ValueEvaluationStatistics(recall, precision);
+  }
+
+}
@@ -0,0 +1,230 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Persistent cache for the metrics of a document. The key is a SHA-256 hash of the gold standard document (id, text and mentions),
+ * the mentions of the compared document and the version of the scorer, so a result is only reused if nothing it depends on has changed.
+ * Every entry is stored as a {@link ComparisonResult} JSON file.
+ * The number of entries is bounded; if there are too many, the least recently used ones (by modification time of their files) are removed.
+ *
+ * @author Thomas Rebele
+ */
+public class EvaluationCache {
+
+  private final static Logger log = LoggerFactory.getLogger(EvaluationCache.class);
+
+  private static final String SUFFIX = ".json";
+
+  private final Path dir;
+
+  private final int maxEntries;
+
+  private int entries;
+
+  /**
+   * @param dir directory of the cache, created if necessary
+   * @param maxEntries maximum number of documents in the cache
+   * @throws IOException
+   */
+  public EvaluationCache(Path dir, int maxEntries) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.maxEntries = Math.max(1, maxEntries);
+    this.entries = listEntries().size();
+  }
+
+  /**
+   * Calculate the key for a pair of documents
+   * @param scorerVersion identifies the scorer and the metrics it evaluates
+   * @param gold
+   * @param compare null if the document is missing
+   * @return hexadecimal SHA-256 hash
+   */
+  public static String key(String scorerVersion, TaggedText gold, TaggedText compare) {
+    MessageDigest md = newDigest();
+    update(md, scorerVersion);
+    update(md, gold.id);
+    update(md, gold.text);
+    update(md, gold.mentions);
+    if (compare == null) {
+      update(md, (String) null);
+    } else {
+      update(md, compare.mentions);
+    }
+    return toHex(md.digest());
+  }
+
+  /**
+   * @param data
+   * @return hexadecimal SHA-256 hash of the data
+   */
+  public static String sha256(byte[] data) {
+    return toHex(newDigest().digest(data));
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] digest) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : digest) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  private static void update(MessageDigest md, String str) {
+    if (str == null) {
+      md.update((byte) 0);
+      return;
+    }
+    // length prefix, so that the concatenation of the parts is unambiguous
+    byte[] b = str.getBytes(StandardCharsets.UTF_8);
+    md.update((byte) 1);
+    update(md, b.length);
+    md.update(b);
+  }
+
+  private static void update(MessageDigest md, int value) {
+    md.update(new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value });
+  }
+
+  private static void update(MessageDigest md, List<EntityMention> mentions) {
+    update(md, mentions.size());
+    for (EntityMention em : mentions) {
+      update(md, em.start);
+      update(md, em.end);
+      update(md, em.entity);
+    }
+  }
+
+  private Path getPath(String key) {
+    return dir.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+  }
+
+  /**
+   * @param key
+   * @return metrics of the document, or null if they are not in the cache
+   */
+  public Map<String, EvaluationStatistics> get(String key) {
+    Path path = getPath(key);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    try {
+      ComparisonResult cached = ComparisonResult.read(path);
+      // mark as recently used
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+      return cached.docidToMetricToResult.values().stream().findFirst().orElse(null);
+    } catch (IOException e) {
+      log.warn("cannot read cache entry {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Store the metrics of a document. The statistics are copied, so they can be changed afterwards.
+   * @param key
+   * @param docid
+   * @param metricToResult
+   */
+  public void put(String key, String docid, Map<String, EvaluationStatistics> metricToResult) {
+    Path path = getPath(key);
+    ComparisonResult entry = new ComparisonResult();
+    entry.docidToMetricToResult.put(docid, metricToResult);
+    try {
+      Files.createDirectories(path.getParent());
+      boolean exists = Files.exists(path);
+      // write to a temporary file first, so that concurrent readers never see a partial entry
+      Path tmp = Files.createTempFile(path.getParent(), key, ".tmp");
+      try {
+        entry.write(tmp);
+        try {
+          Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+      if (!exists) {
+        added();
+      }
+    } catch (IOException e) {
+      log.warn("cannot write cache entry {}: {}", path, e.getMessage());
+    }
+  }
+
+  private synchronized void added() throws IOException {
+    entries++;
+    if (entries > maxEntries) {
+      evict();
+    }
+  }
+
+  /**
+   * Remove the least recently used entries, such that the cache is filled by 90%. This avoids listing the directory for every new entry.
+   * @throws IOException
+   */
+  private void evict() throws IOException {
+    List<Path> paths = listEntries();
+    List<Path> byAge = new ArrayList<>(paths);
+    Map<Path, Long> modified = paths.stream().collect(Collectors.toMap(p -> p, p -> {
+      try {
+        return Files.getLastModifiedTime(p).toMillis();
+      } catch (IOException e) {
+        return 0L;
+      }
+    }));
+    byAge.sort(Comparator.comparing(modified::get));
+    int keep = maxEntries - maxEntries / 10;
+    int remove = Math.max(0, byAge.size() - keep);
+    log.debug("evicting {} entries from the cache {}", remove, dir);
+    for (int i = 0; i < remove; i++) {
+      Files.deleteIfExists(byAge.get(i));
+    }
+    entries = byAge.size() - remove;
+  }
+
+  private List<Path> listEntries() throws IOException {
+    try (Stream<Path> stream = Files.walk(dir, 2)) {
+      return stream.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * @return number of documents in the cache
+   */
+  public synchronized int size() {
+    return entries;
+  }
+}
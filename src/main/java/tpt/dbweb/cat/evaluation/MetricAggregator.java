@@ -0,0 +1,158 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import tpt.dbweb.cat.datatypes.Fraction;
+
+/**
+ * Running macro and micro averages of the metrics of documents. Documents can be added and removed in constant time (per metric),
+ * and the averages can be read at any time without allocating objects.
+ * The results are the same as those of {@link ValueEvaluationStatistics#addMacro(EvaluationStatistics)} and
+ * {@link ValueEvaluationStatistics#addMicro(EvaluationStatistics)}, up to rounding. Other kinds of statistics are ignored.
+ * The sums may accumulate rounding errors if many documents are removed, but they are reset exactly when the last document of a metric is removed.
+ *
+ * @author Thomas Rebele
+ */
+public class MetricAggregator {
+
+  public static final String MACRO = "macro", MICRO = "micro";
+
+  /**
+   * Sums of one metric
+   */
+  private static class Sums {
+
+    int documents;
+
+    /** micro: weighted sums of the nominators and denominators */
+    double recallNom, recallDenom, precisionNom, precisionDenom;
+
+    /** number of documents with a non-zero denominator */
+    int recallDenomCount, precisionDenomCount;
+
+    /** macro: sum of the weights and weighted sums of the values */
+    double weight, recall, precision;
+
+    int weightCount, recallCount, precisionCount;
+  }
+
+  private final Map<String, Sums> metricToSums = new TreeMap<>();
+
+  /**
+   * Add the metrics of a document
+   * @param metricToResult
+   */
+  public void add(Map<String, EvaluationStatistics> metricToResult) {
+    update(metricToResult, 1);
+  }
+
+  /**
+   * Remove the metrics of a document which has been added before
+   * @param metricToResult
+   */
+  public void remove(Map<String, EvaluationStatistics> metricToResult) {
+    update(metricToResult, -1);
+  }
+
+  private void update(Map<String, EvaluationStatistics> metricToResult, int sign) {
+    for (Map.Entry<String, EvaluationStatistics> entry : metricToResult.entrySet()) {
+      Sums sums = metricToSums.get(entry.getKey());
+      if (sums == null) {
+        sums = new Sums();
+        metricToSums.put(entry.getKey(), sums);
+      }
+      sums.documents += sign;
+      if (entry.getValue() instanceof ValueEvaluationStatistics) {
+        ValueEvaluationStatistics stat = (ValueEvaluationStatistics) entry.getValue();
+        update(sums, stat.recallFraction(), stat.precisionFraction(), stat.weightFraction(), sign);
+      }
+      if (sums.documents == 0) {
+        metricToSums.remove(entry.getKey());
+      }
+    }
+  }
+
+  private static void update(Sums sums, Fraction recall, Fraction precision, Fraction weight, int sign) {
+    // micro: the fractions are added with the weight as factor
+    double factor = weight.value();
+    double recallDenom = factor * recall.getDenominator(), precisionDenom = factor * precision.getDenominator();
+    sums.recallNom += sign * factor * recall.getNominator();
+    sums.precisionNom += sign * factor * precision.getNominator();
+    if (recallDenom != 0) {
+      sums.recallDenom += sign * recallDenom;
+      sums.recallDenomCount += sign;
+    }
+    if (precisionDenom != 0) {
+      sums.precisionDenom += sign * precisionDenom;
+      sums.precisionDenomCount += sign;
+    }
+
+    // macro: weighted average of the values; a value with zero denominator counts as 0, but its weight counts
+    if (weight.getDenominator() != 0) {
+      sums.weight += sign * weight.value();
+      sums.weightCount += sign;
+    }
+    if (weight.getDenominator() * recall.getDenominator() != 0) {
+      sums.recall += sign * (weight.getNominator() * recall.getNominator()) / (weight.getDenominator() * recall.getDenominator());
+      sums.recallCount += sign;
+    }
+    if (weight.getDenominator() * precision.getDenominator() != 0) {
+      sums.precision += sign * (weight.getNominator() * precision.getNominator()) / (weight.getDenominator() * precision.getDenominator());
+      sums.precisionCount += sign;
+    }
+  }
+
+  /**
+   * @return number of documents which have a result for the metric
+   */
+  public int getDocuments(String metric) {
+    Sums sums = metricToSums.get(metric);
+    return sums == null ? 0 : sums.documents;
+  }
+
+  public float getMicroRecall(String metric) {
+    Sums sums = metricToSums.get(metric);
+    return sums == null || sums.recallDenomCount == 0 ? 0 : (float) (sums.recallNom / sums.recallDenom);
+  }
+
+  public float getMicroPrecision(String metric) {
+    Sums sums = metricToSums.get(metric);
+    return sums == null || sums.precisionDenomCount == 0 ? 0 : (float) (sums.precisionNom / sums.precisionDenom);
+  }
+
+  public float getMacroRecall(String metric) {
+    Sums sums = metricToSums.get(metric);
+    return sums == null || sums.recallCount == 0 ? 0 : (float) (sums.recall / sums.weight);
+  }
+
+  public float getMacroPrecision(String metric) {
+    Sums sums = metricToSums.get(metric);
+    return sums == null || sums.precisionCount == 0 ? 0 : (float) (sums.precision / sums.weight);
+  }
+
+  /**
+   * @return the averages in the format of {@link ComparisonResult#combine()}, i.e. with the virtual documents "macro" and "micro"
+   */
+  public ComparisonResult toComparisonResult() {
+    ComparisonResult result = new ComparisonResult();
+    for (Map.Entry<String, Sums> entry : metricToSums.entrySet()) {
+      Sums sums = entry.getValue();
+      Fraction macroWeight = sums.weightCount == 0 ? Fraction.EMPTY : new Fraction(sums.weight, 1);
+      Fraction macroRecall = sums.recallCount == 0 ? Fraction.EMPTY : new Fraction(sums.recall / sums.weight, 1);
+      Fraction macroPrecision = sums.precisionCount == 0 ? Fraction.EMPTY : new Fraction(sums.precision / sums.weight, 1);
+      result.docidToMetricToResult.computeIfAbsent(MACRO, k -> new TreeMap<>()).put(entry.getKey(),
+          new ValueEvaluationStatistics(macroRecall, macroPrecision, macroWeight));
+
+      Fraction microRecall = new Fraction(sums.recallNom, sums.recallDenomCount == 0 ? 0 : sums.recallDenom);
+      Fraction microPrecision = new Fraction(sums.precisionNom, sums.precisionDenomCount == 0 ? 0 : sums.precisionDenom);
+      result.docidToMetricToResult.computeIfAbsent(MICRO, k -> new TreeMap<>()).put(entry.getKey(),
+          new ValueEvaluationStatistics(microRecall, microPrecision, Fraction.ONE));
+    }
+    return result;
+  }
+}
@@ -5,22 +5,36 @@
 package tpt.dbweb.cat.evaluation;
 
 import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,11 +42,13 @@ import com.beust.jcommander.Parameter;
 
 import tpt.dbweb.cat.datatypes.Fraction;
 import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.Compression;
 import tpt.dbweb.cat.io.ConllWriter;
-import tpt.dbweb.cat.io.TaggedTextXMLReader;
+import tpt.dbweb.cat.io.TaggedTextFormats;
 
 /**
  * Calls lib/reference-coreference-scorers and parses the output.
+ * Alternatively it evaluates the same metrics with {@link CoreferenceScorer}, which doesn't need a perl process and temporary files.
  * @author Thomas Rebele
  *
  */
@@ -40,18 +56,55 @@ public class ReferenceEvaluator {
 
   private static Logger log = LoggerFactory.getLogger(ReferenceEvaluator.class);
 
+  /**
+   * Implementation of the reference-coreference-scorers metrics
+   */
+  public enum Engine {
+    NATIVE, PERL
+  }
+
   public static class Options {
 
+    @Parameter(names = "--rcs-engine", description = "engine for the metrics of reference-coreference-scorers (NATIVE or PERL)")
+    public Engine engine = Engine.PERL;
+
+    @Parameter(names = "--scorer", description = "path of scorer.pl of reference-coreference-scorers")
+    public String scorer = SCORER;
+
     @Parameter(names = "--single-file", description = "put all articles in one file for reference-coreference-scorers")
     public boolean singleFile = true;
 
     @Parameter(names = "--remove-tmp-files", description = "temporarily generated files will get removed after execution")
     public boolean removeTmpFiles = true;
 
+    @Parameter(names = "--scorer-threads", description = "number of scorer processes running in parallel, if not using a single file")
+    public int scorerThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--scorer-batch-size", description = "number of articles evaluated by one scorer process, if not using a single file")
+    public int scorerBatchSize = 50;
+
+    @Parameter(names = "--cache-dir", description = "directory for caching the metrics of documents which have not changed since the last run")
+    public String cacheDirectory = null;
+
+    @Parameter(names = "--cache-size", description = "maximum number of documents in the cache, the least recently used ones are removed")
+    public int cacheSize = 100000;
+
+    @Parameter(names = "--eval-threads", description = "number of systems which are evaluated in parallel against the gold standard")
+    public int evalThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = "--pipe", description = "stream the CoNLL input to reference-coreference-scorers through named pipes instead of temporary files")
+    public boolean pipe = false;
+
   }
 
   private Options options = new Options();
 
+  private static final String SCORER = "lib/reference-coreference-scorers/scorer.pl";
+
+  private EvaluationCache cache = null;
+
+  private String scorerVersion = null;
+
   // create a regex to parse
   private Pattern resultPattern = null;
 
@@ -67,6 +120,7 @@ public class ReferenceEvaluator {
   }
 
   public ReferenceEvaluator(Options refEvalOptions) {
+    this();
     this.options = refEvalOptions;
   }
 
@@ -86,10 +140,92 @@ public class ReferenceEvaluator {
    * @throws IOException
    */
   public ComparisonResult compareXMLFiles(Path goldstandard, Path compare, Path tmpDirectory) throws IOException {
-    TaggedTextXMLReader.Options options = new TaggedTextXMLReader.Options();
-    TaggedTextXMLReader reader = new TaggedTextXMLReader(options);
-    List<TaggedText> goldstd = reader.getTaggedText(goldstandard), cmp = reader.getTaggedText(compare);
-    return compare(goldstd, goldstandard.getFileName().toString(), cmp, compare.getFileName().toString(), tmpDirectory);
+    return compareFiles(goldstandard, compare, tmpDirectory);
+  }
+
+  /**
+   * Evaluates metrics for two files of any format known by {@link TaggedTextFormats}, which may be compressed.
+   * @param goldstandard
+   * @param compare
+   * @param tmpDirectory where to store generated files
+   * @return
+   * @throws IOException
+   */
+  public ComparisonResult compareFiles(Path goldstandard, Path compare, Path tmpDirectory) throws IOException {
+    List<TaggedText> goldstd = TaggedTextFormats.open(goldstandard).asList(), cmp = TaggedTextFormats.open(compare).asList();
+    return compare(goldstd, Compression.stripExtension(goldstandard.getFileName().toString()), cmp,
+        Compression.stripExtension(compare.getFileName().toString()), tmpDirectory);
+  }
+
+  /**
+   * Evaluates several systems against the same gold standard. The gold standard is read only once and shared by the evaluations,
+   * which run in parallel (see --eval-threads). Every system gets its own subdirectory of the temporary directory.
+   * @param goldstandard
+   * @param compare files of the systems
+   * @param tmpDirectory where to store generated files
+   * @return one result per system, in the order of compare
+   * @throws IOException
+   */
+  public List<ComparisonResult> compareFiles(Path goldstandard, List<Path> compare, Path tmpDirectory) throws IOException {
+    List<TaggedText> goldstd = TaggedTextFormats.open(goldstandard).asList();
+    List<Callable<List<TaggedText>>> systems = new ArrayList<>();
+    List<String> filenames = new ArrayList<>();
+    for (Path file : compare) {
+      systems.add(() -> TaggedTextFormats.open(file).asList());
+      filenames.add(Compression.stripExtension(file.getFileName().toString()));
+    }
+    return compareAll(goldstd, Compression.stripExtension(goldstandard.getFileName().toString()), systems, filenames, tmpDirectory);
+  }
+
+  /**
+   * Evaluates several systems against the same gold standard, in parallel (see --eval-threads).
+   * @param goldstandard
+   * @param goldstandardFilename temporary filename for goldstandard .conll file
+   * @param compare articles of the systems
+   * @param compareFilenames temporary filenames for the .conll files of the systems
+   * @param tmpDirectory where to store generated files
+   * @return one result per system, in the order of compare
+   * @throws IOException
+   */
+  public List<ComparisonResult> compare(List<TaggedText> goldstandard, String goldstandardFilename, List<List<TaggedText>> compare,
+      List<String> compareFilenames, Path tmpDirectory) throws IOException {
+    List<Callable<List<TaggedText>>> systems = compare.stream().map(tts -> (Callable<List<TaggedText>>) () -> tts).collect(Collectors.toList());
+    return compareAll(goldstandard, goldstandardFilename, systems, compareFilenames, tmpDirectory);
+  }
+
+  /**
+   * @param systems load the articles of a system, called by the thread which evaluates it
+   */
+  private List<ComparisonResult> compareAll(List<TaggedText> goldstandard, String goldstandardFilename, List<Callable<List<TaggedText>>> systems,
+      List<String> compareFilenames, Path tmpDirectory) throws IOException {
+    List<TaggedText> goldstd = Collections.unmodifiableList(goldstandard);
+    int threads = Math.max(1, Math.min(options.evalThreads, systems.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<ComparisonResult>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < systems.size(); i++) {
+        Callable<List<TaggedText>> system = systems.get(i);
+        String compareFilename = compareFilenames.get(i);
+        Path systemTmpDirectory = tmpDirectory.resolve("system-" + (i + 1));
+        futures.add(executor.submit(() -> compare(goldstd, goldstandardFilename, system.call(), compareFilename, systemTmpDirectory)));
+      }
+
+      List<ComparisonResult> results = new ArrayList<>();
+      for (Future<ComparisonResult> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while evaluating the systems", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("evaluation failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
   }
 
   public ComparisonResult compare(List<TaggedText> goldstandard, List<TaggedText> compare, Path tmpDirectory) throws IOException {
@@ -97,7 +233,9 @@ public class ReferenceEvaluator {
   }
 
   /**
-   * Evaluates metrics for list of tagged texts.
+   * Evaluates metrics for list of tagged texts. If a cache directory is set, only the documents which are not in the cache are evaluated.
+   * Mentions of articles whose text differs from the gold standard article with the same id (e.g. read from CoNLL files) are moved to
+   * the text of the gold standard first, see {@link TaggedText#alignTo(TaggedText)}.
    * @param goldstandard list of tagged texts
    * @param goldstandardFilename temporary filename for goldstandard .conll file
    * @param compare list of tagged texts
@@ -108,54 +246,293 @@ public class ReferenceEvaluator {
    */
   public ComparisonResult compare(List<TaggedText> goldstandard, String goldstandardFilename, List<TaggedText> compare, String compareFilename,
       Path tmpDirectory) throws IOException {
+    compare = alignToGold(goldstandard, compare);
+    EvaluationCache cache = getCache();
+    if (cache == null) {
+      return compareUncached(goldstandard, goldstandardFilename, compare, compareFilename, tmpDirectory);
+    }
+
+    Map<String, TaggedText> idToCompare = new HashMap<>();
+    for (TaggedText tt : compare) {
+      idToCompare.putIfAbsent(tt.id, tt);
+    }
+    String version = getScorerVersion();
+    ComparisonResult result = new ComparisonResult();
+    List<TaggedText> goldstdMissing = new ArrayList<>(), compareMissing = new ArrayList<>();
+    List<String> keys = new ArrayList<>();
+    for (TaggedText gold : goldstandard) {
+      TaggedText cmp = idToCompare.get(gold.id);
+      String key = EvaluationCache.key(version, gold, cmp);
+      Map<String, EvaluationStatistics> cached = cache.get(key);
+      if (cached != null) {
+        result.docidToMetricToResult.put(gold.id, cached);
+      } else {
+        goldstdMissing.add(gold);
+        if (cmp != null) {
+          compareMissing.add(cmp);
+        }
+        keys.add(key);
+      }
+    }
+    log.info("{} of {} documents found in the evaluation cache", goldstandard.size() - goldstdMissing.size(), goldstandard.size());
+    if (goldstdMissing.isEmpty()) {
+      return result;
+    }
+
+    ComparisonResult evaluated = compareUncached(goldstdMissing, goldstandardFilename, compareMissing, compareFilename, tmpDirectory);
+    for (int i = 0; i < goldstdMissing.size(); i++) {
+      Map<String, EvaluationStatistics> metricToResult = evaluated.docidToMetricToResult.get(goldstdMissing.get(i).id);
+      if (metricToResult != null) {
+        cache.put(keys.get(i), goldstdMissing.get(i).id, metricToResult);
+      }
+    }
+    result.merge(evaluated);
+    return result;
+  }
+
+  /**
+   * @return the articles of compare, with the mentions moved to the text of the gold standard article with the same id
+   */
+  private static List<TaggedText> alignToGold(List<TaggedText> goldstandard, List<TaggedText> compare) {
+    Map<String, TaggedText> idToGold = new HashMap<>();
+    for (TaggedText tt : goldstandard) {
+      if (tt != null) {
+        idToGold.putIfAbsent(tt.id, tt);
+      }
+    }
+    List<TaggedText> result = new ArrayList<>(compare.size());
+    for (TaggedText tt : compare) {
+      result.add(tt.alignTo(idToGold.get(tt.id)));
+    }
+    return result;
+  }
+
+  /**
+   * @return the cache, or null if no cache directory is set
+   * @throws IOException
+   */
+  private synchronized EvaluationCache getCache() throws IOException {
+    if (cache == null && options.cacheDirectory != null) {
+      cache = new EvaluationCache(Paths.get(options.cacheDirectory), options.cacheSize);
+    }
+    return cache;
+  }
+
+  /**
+   * Identifies the scorer, so that cached results of another scorer (version) are not used
+   * @return
+   * @throws IOException
+   */
+  private synchronized String getScorerVersion() throws IOException {
+    if (scorerVersion == null) {
+      if (options.engine == Engine.NATIVE) {
+        scorerVersion = "native " + CoreferenceScorer.VERSION + " " + CoreferenceScorer.METRICS;
+      } else {
+        // the perl scorer has no reliable version number, so use the content of its files
+        StringBuilder sb = new StringBuilder("perl");
+        Path scorer = Paths.get(options.scorer);
+        for (Path path : new Path[] { scorer, scorer.resolveSibling("lib/CorScorer.pm") }) {
+          if (Files.exists(path)) {
+            sb.append(" ").append(EvaluationCache.sha256(Files.readAllBytes(path)));
+          }
+        }
+        scorerVersion = sb.toString();
+      }
+    }
+    return scorerVersion;
+  }
+
+  private ComparisonResult compareUncached(List<TaggedText> goldstandard, String goldstandardFilename, List<TaggedText> compare,
+      String compareFilename, Path tmpDirectory) throws IOException {
+    if (this.options.engine == Engine.NATIVE) {
+      return new CoreferenceScorer().compare(goldstandard, compare);
+    }
+
     String scorerOutput = goldstandardFilename + "-" + compareFilename + "-scorer-output";
-    ConllWriter conll = new ConllWriter();
-    ReferenceEvaluator evaluator = new ReferenceEvaluator();
     if (this.options.singleFile) {
       log.info("using only one thread, try to use the split file option to speed things up");
-      Path goldstdConllFile = tmpDirectory.resolve(goldstandardFilename + ".conll");
-      conll.writeTTList(goldstandard, goldstdConllFile);
+      return compareBatch(goldstandard, goldstandardFilename, compare, compareFilename, scorerOutput, tmpDirectory);
+    }
 
-      Path compareConllFile = tmpDirectory.resolve(compareFilename + ".conll");
-      conll.writeTTList(compare, compareConllFile);
+    // split the articles into batches, every batch is evaluated by one scorer process
+    // the batch files are put into a new directory, so that concurrent evaluations don't overwrite each other's files
+    Path batchDirectory = Files.createTempDirectory(Files.createDirectories(tmpDirectory), scorerOutput + "-");
+    int batchSize = Math.max(1, this.options.scorerBatchSize);
+    int threads = Math.max(1, this.options.scorerThreads);
+    // bounded queue: if all scorers are busy, the submitting thread evaluates a batch itself
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    List<Future<ComparisonResult>> futures = new ArrayList<>();
+    // the articles of a batch are paired by id, as the system might miss some articles or have them in another order
+    Map<String, TaggedText> idToCompare = new HashMap<>();
+    for (TaggedText tt : compare) {
+      idToCompare.putIfAbsent(tt.id, tt);
+    }
+    try {
+      for (int from = 0; from < goldstandard.size(); from += batchSize) {
+        int to = Math.min(goldstandard.size(), from + batchSize);
+        String suffix = "-" + (from / batchSize);
+        List<TaggedText> goldstdBatch = goldstandard.subList(from, to), compareBatch = new ArrayList<>();
+        for (TaggedText gold : goldstdBatch) {
+          TaggedText cmp = idToCompare.get(gold.id);
+          if (cmp != null) {
+            compareBatch.add(cmp);
+          }
+        }
+        futures.add(executor.submit(() -> compareBatch(goldstdBatch, goldstandardFilename + suffix, compareBatch, compareFilename + suffix,
+            scorerOutput + suffix, batchDirectory)));
+      }
 
-      Path scorerOutputFile = tmpDirectory.resolve(scorerOutput + ".txt");
-      ComparisonResult result = evaluator.compareConllFiles(goldstdConllFile, compareConllFile, scorerOutputFile);
-      if (this.options.removeTmpFiles) {
-        silentDelete(goldstdConllFile);
-        silentDelete(compareConllFile);
-        silentDelete(scorerOutputFile);
+      ComparisonResult result = new ComparisonResult();
+      for (Future<ComparisonResult> future : futures) {
+        result.merge(future.get());
       }
       return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for the scorer", e);
+    } catch (ExecutionException e) {
+      throw new IOException("scorer failed", e.getCause());
+    } finally {
+      // if a batch failed, wait for the others, so that they don't write to the removed directory
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (this.options.removeTmpFiles) {
+        FileUtils.deleteQuietly(batchDirectory.toFile());
+      }
+    }
+  }
 
-    } else {
-      int cnt = Math.min(goldstandard.size(), compare.size());
-      List<ComparisonResult> lst = IntStream.range(0, cnt).parallel().mapToObj((i) -> {
-        String id = goldstandard.get(i).id;
-        Path goldstdConllFile = tmpDirectory.resolve(goldstandardFilename + "-" + id);
-        conll.writeTT(goldstandard.get(i), goldstdConllFile);
-
-        Path compareConllFile = tmpDirectory.resolve(compareFilename + "-" + id);
-        conll.writeTT(compare.get(i), compareConllFile);
-
-        Path scorerOutputFile = tmpDirectory.resolve(scorerOutput + Thread.currentThread().getName() + ".txt");
-        ComparisonResult singleResult = evaluator.compareConllFiles(goldstdConllFile, compareConllFile, scorerOutputFile);
-        if (this.options.removeTmpFiles) {
-          try {
-            silentDelete(goldstdConllFile);
-            silentDelete(compareConllFile);
-            silentDelete(scorerOutputFile);
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-        }
-
-        return singleResult;
-      }).collect(Collectors.toList());
+  /**
+   * Write the articles to CoNLL files and evaluate them with one scorer process
+   */
+  private ComparisonResult compareBatch(List<TaggedText> goldstandard, String goldstandardFilename, List<TaggedText> compare, String compareFilename,
+      String scorerOutput, Path tmpDirectory) throws IOException {
+    if (this.options.pipe) {
+      ComparisonResult result = compareWithPipes(goldstandard, compare);
+      if (result != null) {
+        return result;
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedIOException("interrupted while creating the named pipes");
+      }
+      log.warn("cannot use named pipes, falling back to temporary files");
+    }
+    ConllWriter conll = new ConllWriter();
+    Path goldstdConllFile = tmpDirectory.resolve(goldstandardFilename + ".conll");
+    conll.writeTTList(goldstandard, goldstdConllFile);
+
+    Path compareConllFile = tmpDirectory.resolve(compareFilename + ".conll");
+    conll.writeTTList(compare, compareConllFile);
+
+    Path scorerOutputFile = tmpDirectory.resolve(scorerOutput + ".txt");
+    ComparisonResult result = compareConllFiles(goldstdConllFile, compareConllFile, scorerOutputFile);
+    if (this.options.removeTmpFiles) {
+      silentDelete(goldstdConllFile);
+      silentDelete(compareConllFile);
+      silentDelete(scorerOutputFile);
+    }
+    return result;
+  }
 
+  /**
+   * Evaluate the articles without writing CoNLL files. The scorer reads from two named pipes (created with mkfifo),
+   * which are fed by two threads while the scorer runs. As the scorer opens its input files once per metric and a pipe can only be
+   * read once, there is one scorer process with fresh pipes for each metric.
+   * @return null if the pipes could not be created
+   * @throws IOException if the articles could not be written to the pipes
+   */
+  private ComparisonResult compareWithPipes(List<TaggedText> goldstandard, List<TaggedText> compare) throws IOException {
+    Path pipeDirectory = null;
+    ExecutorService feeders = Executors.newFixedThreadPool(2);
+    try {
+      pipeDirectory = Files.createTempDirectory("casie-scorer-");
       ComparisonResult result = new ComparisonResult();
-      lst.forEach(cr -> result.merge(cr));
+      for (String metric : CoreferenceScorer.METRICS) {
+        Path goldstdPipe = pipeDirectory.resolve(metric + "-goldstd.conll"), comparePipe = pipeDirectory.resolve(metric + "-compare.conll");
+        if (!mkfifo(goldstdPipe) || !mkfifo(comparePipe)) {
+          return null;
+        }
+        Future<?> goldstdFeeder = feeders.submit(() -> feed(goldstandard, goldstdPipe));
+        Future<?> compareFeeder = feeders.submit(() -> feed(compare, comparePipe));
+        ComparisonResult metricResult = compareConllFiles(metric, goldstdPipe, comparePipe, null);
+        boolean goldstdUnread = unblock(goldstdFeeder, goldstdPipe), compareUnread = unblock(compareFeeder, comparePipe);
+        if (goldstdUnread || compareUnread) {
+          throw new IOException("scorer " + options.scorer + " did not read all articles");
+        }
+        // the scorer got incomplete input if a feeder failed
+        checkFeeder(goldstdFeeder, goldstdPipe);
+        checkFeeder(compareFeeder, comparePipe);
+        if (metricResult != null) {
+          result.merge(metricResult);
+        }
+      }
       return result;
+    } finally {
+      feeders.shutdownNow();
+      if (pipeDirectory != null) {
+        FileUtils.deleteQuietly(pipeDirectory.toFile());
+      }
+    }
+  }
+
+  private static boolean mkfifo(Path path) {
+    try {
+      return new ProcessBuilder("mkfifo", path.toString()).start().waitFor() == 0;
+    } catch (IOException e) {
+      log.debug("mkfifo failed: {}", e.getMessage());
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static Void feed(List<TaggedText> tts, Path pipe) throws IOException {
+    try (OutputStream out = new FileOutputStream(pipe.toFile())) {
+      new ConllWriter().writeTTList(tts, out);
+    } catch (IOException e) {
+      log.warn("cannot write to {}", pipe, e);
+      throw e;
+    }
+    return null;
+  }
+
+  private static void checkFeeder(Future<?> feeder, Path pipe) throws IOException {
+    try {
+      feeder.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while writing to " + pipe, e);
+    } catch (ExecutionException e) {
+      throw new IOException("cannot write to " + pipe, e.getCause());
+    }
+  }
+
+  /**
+   * If the scorer exited without reading a pipe to the end, its feeder waits forever. Open the pipe for reading and writing, so that the
+   * feeder continues and gets an error when writing after the pipe has been closed again.
+   * @return true if the feeder had to be unblocked
+   */
+  private static boolean unblock(Future<?> feeder, Path pipe) throws IOException {
+    boolean unblocked = false;
+    while (true) {
+      try {
+        feeder.get(100, TimeUnit.MILLISECONDS);
+        return unblocked;
+      } catch (TimeoutException e) {
+        new RandomAccessFile(pipe.toFile(), "rw").close();
+        unblocked = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return unblocked;
+      } catch (ExecutionException e) {
+        return unblocked;
+      }
     }
   }
 
@@ -167,8 +544,15 @@ public class ReferenceEvaluator {
    * @return
    */
   public ComparisonResult compareConllFiles(Path goldstandard, Path compare, Path scorerOutput) {
-    log.debug("comparing {} {}", goldstandard, compare);
-    String cmd = "lib/reference-coreference-scorers/scorer.pl all " + goldstandard + " " + compare;
+    return compareConllFiles("all", goldstandard, compare, scorerOutput);
+  }
+
+  /**
+   * Compare two files in Conll format with one metric of the scorer, or "all"
+   */
+  private ComparisonResult compareConllFiles(String metric, Path goldstandard, Path compare, Path scorerOutput) {
+    log.debug("comparing {} {} with {}", goldstandard, compare, metric);
+    String cmd = options.scorer + " " + metric + " " + goldstandard + " " + compare;
     String str = execExternalCommand(cmd);
     log.trace("reference-coreference-scorers output: {}", str);
     if (scorerOutput != null) {
@@ -226,7 +610,7 @@ public class ReferenceEvaluator {
   }
 
   /**
-   * Call external command
+   * Call external command. Its error output is logged.
    * @param cmd
    * @return its std output as a string
    */
@@ -237,29 +621,38 @@ public class ReferenceEvaluator {
       p = Runtime.getRuntime().exec(cmd);
     } catch (IOException e1) {
       e1.printStackTrace();
+      return "";
     }
-    InputStream is = p.getInputStream();
-    BufferedReader br = new BufferedReader(new InputStreamReader(is));
-    StringWriter sw = new StringWriter();
-    try {
-      while (p.isAlive()) {
-        try {
-          char[] buffer = new char[1024 * 4];
-          int n = 0;
-          while (-1 != (n = br.read(buffer))) {
-            sw.write(buffer, 0, n);
-          }
-          if (p.isAlive()) {
-            Thread.sleep(10);
-          }
-        } catch (IOException e) {
-          e.printStackTrace();
+
+    // drain the error output in parallel, otherwise the process might block when the pipe buffer is full
+    InputStream err = p.getErrorStream();
+    Thread errThread = new Thread(() -> {
+      try {
+        String errOutput = IOUtils.toString(err);
+        if (errOutput.length() > 0) {
+          log.warn("error output of {}: {}", cmd, errOutput);
         }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }, "scorer-stderr");
+    errThread.setDaemon(true);
+    errThread.start();
+
+    String str = "";
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+      str = IOUtils.toString(br);
+      int exitValue = p.waitFor();
+      errThread.join();
+      if (exitValue != 0) {
+        log.warn("command {} exited with {}", cmd, exitValue);
       }
-    } catch (InterruptedException e1) {
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      p.destroy();
       Thread.currentThread().interrupt();
     }
-    String str = sw.toString();
     return str;
   }
 
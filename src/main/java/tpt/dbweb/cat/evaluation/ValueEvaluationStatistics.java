@@ -52,6 +52,18 @@ public class ValueEvaluationStatistics extends EvaluationStatistics {
     return (float) precision.value(0);
   }
 
+  Fraction recallFraction() {
+    return recall;
+  }
+
+  Fraction precisionFraction() {
+    return precision;
+  }
+
+  Fraction weightFraction() {
+    return weight;
+  }
+
   /**
    * Doesn't support weights!
    */
@@ -0,0 +1,45 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+
+/**
+ * Destination of the output of {@link tpt.dbweb.cat.Compare}: first the parts before the articles (annotators, metrics), then the articles.
+ * The output is only complete if {@link #finish()} is called before it is closed, so a failed comparison does not look complete.
+ * See {@link CompareOutputWriter} for a single file and {@link PagedCompareOutputWriter} for several pages.
+ *
+ * @author Thomas Rebele
+ */
+public interface CompareOutput extends Closeable {
+
+  /**
+   * Write a part of the output before the articles (e.g. annotator information or metrics)
+   * @param str
+   * @throws IOException
+   */
+  public void write(String str) throws IOException;
+
+  /**
+   * Write a complete article together with its metrics
+   * @param id article id
+   * @param article the rendered article including the <code>&lt;article&gt;</code> tags
+   * @param metrics metrics of the article for every annotator except the gold standard, may be null
+   * @throws IOException
+   */
+  public void writeArticle(String id, String article, List<Map<String, EvaluationStatistics>> metrics) throws IOException;
+
+  /**
+   * Write the end of the output after the last article
+   * @throws IOException
+   */
+  public void finish() throws IOException;
+
+}
@@ -0,0 +1,120 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Describes where the articles are in an (uncompressed) output file of {@link tpt.dbweb.cat.Compare}, together with a hash of everything the
+ * rendering of an article depends on. It is stored next to the output file, and allows to copy unchanged articles instead of comparing them again.
+ *
+ * @author Thomas Rebele
+ */
+public class CompareOutputManifest {
+
+  private final static Logger log = LoggerFactory.getLogger(CompareOutputManifest.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public static final String SUFFIX = ".manifest.json";
+
+  public static class Article {
+
+    public String id;
+
+    public String hash;
+
+    /** position of the first byte of the article in the output file */
+    public long offset;
+
+    /** number of bytes of the article */
+    public long length;
+  }
+
+  /** size of the output file, to detect whether it has been changed by someone else */
+  public long size;
+
+  public List<Article> articles = new ArrayList<>();
+
+  private Map<String, Article> idToArticle = null;
+
+  public void add(String id, String hash, long offset, long length) {
+    Article article = new Article();
+    article.id = id;
+    article.hash = hash;
+    article.offset = offset;
+    article.length = length;
+    articles.add(article);
+    idToArticle = null;
+  }
+
+  /**
+   * @param id
+   * @param hash
+   * @return the article with this id from the output, if its hash is the same; null otherwise
+   */
+  public synchronized Article getUnchanged(String id, String hash) {
+    if (idToArticle == null) {
+      idToArticle = new HashMap<>();
+      for (Article article : articles) {
+        idToArticle.put(article.id, article);
+      }
+    }
+    Article article = idToArticle.get(id);
+    return article != null && article.hash.equals(hash) ? article : null;
+  }
+
+  /**
+   * @param out output file of compare
+   * @return path of the manifest of the output file
+   */
+  public static Path getPath(Path out) {
+    return out.resolveSibling(out.getFileName() + SUFFIX);
+  }
+
+  /**
+   * Read the manifest of an output file
+   * @param out output file of compare
+   * @return the manifest, or null if it doesn't exist or doesn't match the output file
+   */
+  public static CompareOutputManifest read(Path out) {
+    Path path = getPath(out);
+    if (!Files.exists(path) || !Files.exists(out)) {
+      return null;
+    }
+    try {
+      CompareOutputManifest manifest = mapper.readValue(path.toFile(), CompareOutputManifest.class);
+      if (manifest.size != Files.size(out)) {
+        log.info("output {} has changed since the last run, comparing all articles", out);
+        return null;
+      }
+      return manifest;
+    } catch (IOException e) {
+      log.warn("cannot read manifest {}: {}", path, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Write the manifest of an output file
+   * @param out output file of compare
+   * @throws IOException
+   */
+  public void write(Path out) throws IOException {
+    size = Files.size(out);
+    mapper.writeValue(getPath(out).toFile(), this);
+  }
+}
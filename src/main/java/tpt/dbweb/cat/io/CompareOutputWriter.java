@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import tpt.dbweb.cat.evaluation.EvaluationCache;
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+import tpt.dbweb.cat.tools.Utility;
+
+/**
+ * Writes the output of {@link tpt.dbweb.cat.Compare} to a single file as a stream.
+ * The template src/main/resources/compare-template.xml is split at the <code>&lt;article/&gt;</code> placeholder.
+ * The part before it is written when the file is opened, the part after it by {@link #finish()}.
+ * A writer which is closed without finishing, e.g. because an article failed, leaves the file without the end of the template.
+ * Everything in between (annotators, metrics, articles) is passed through directly, so only one article needs to be kept in memory.
+ * The output is compressed if the file name ends with .gz or .zst.
+ *
+ * @author Thomas Rebele
+ */
+public class CompareOutputWriter implements CompareOutput {
+
+  public static final String TEMPLATE = "compare-template.xml";
+
+  public static final String PLACEHOLDER = "<article/>";
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private static String[] templateParts = null;
+
+  private static String templateHash = null;
+
+  private Writer writer;
+
+  /** stream below the writer, for copying bytes */
+  private final OutputStream stream;
+
+  private long position = 0;
+
+  /**
+   * Get the parts of the template before and after the placeholder. The template is only loaded once.
+   * @return array with header and footer
+   * @throws IOException
+   */
+  public static synchronized String[] getTemplateParts() throws IOException {
+    if (templateParts == null) {
+      String template = Utility.readResourceAsString(TEMPLATE);
+      int pos = template.indexOf(PLACEHOLDER);
+      if (pos < 0) {
+        throw new IOException("placeholder " + PLACEHOLDER + " not found in " + TEMPLATE);
+      }
+      templateParts = new String[] { template.substring(0, pos), template.substring(pos + PLACEHOLDER.length()) };
+    }
+    return templateParts;
+  }
+
+  /**
+   * @return hexadecimal SHA-256 hash of the template, to recognize output which was written with another template
+   * @throws IOException
+   */
+  public static synchronized String getTemplateHash() throws IOException {
+    if (templateHash == null) {
+      String[] parts = getTemplateParts();
+      templateHash = EvaluationCache.sha256((parts[0] + PLACEHOLDER + parts[1]).getBytes(StandardCharsets.UTF_8));
+    }
+    return templateHash;
+  }
+
+  public CompareOutputWriter(Path out) throws IOException {
+    stream = Compression.newOutputStream(out);
+    writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    write(getTemplateParts()[0]);
+  }
+
+  @Override
+  public void write(String str) throws IOException {
+    writer.write(str);
+    position += utf8Length(str);
+  }
+
+  /**
+   * Write a complete article
+   * @param id article id
+   * @param article the rendered article including the <code>&lt;article&gt;</code> tags
+   * @throws IOException
+   */
+  public void writeArticle(String id, String article) throws IOException {
+    write(article);
+  }
+
+  @Override
+  public void writeArticle(String id, String article, List<Map<String, EvaluationStatistics>> metrics) throws IOException {
+    writeArticle(id, article);
+  }
+
+  /**
+   * Copy an article from a previous output file
+   * @param id article id
+   * @param from uncompressed output file
+   * @param offset position of the article in the file, see {@link #getPosition()}
+   * @param length number of bytes of the article
+   * @throws IOException
+   */
+  public void copyArticle(String id, FileChannel from, long offset, long length) throws IOException {
+    writer.flush();
+    ByteBuffer buf = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, length)));
+    for (long copied = 0; copied < length;) {
+      // through Buffer, whose clear() and limit(int) exist on Java 8 as well
+      ((Buffer) buf).clear();
+      ((Buffer) buf).limit((int) Math.min(buf.capacity(), length - copied));
+      int n = from.read(buf, offset + copied);
+      if (n < 0) {
+        throw new EOFException("article " + id + " is incomplete in the previous output");
+      }
+      stream.write(buf.array(), 0, n);
+      copied += n;
+    }
+    position += length;
+  }
+
+  /**
+   * @return number of (uncompressed) bytes written so far
+   */
+  public long getPosition() {
+    return position;
+  }
+
+  /**
+   * @return number of bytes of the string encoded as UTF-8, the same as {@link String#getBytes(java.nio.charset.Charset)} but without copying
+   */
+  static long utf8Length(String str) {
+    long result = 0;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        result++;
+      } else if (c < 0x800) {
+        result += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1))) {
+        result += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        // replaced by '?'
+        result++;
+      } else {
+        result += 3;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void finish() throws IOException {
+    write(getTemplateParts()[1]);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (writer != null) {
+      writer.close();
+      writer = null;
+    }
+  }
+}
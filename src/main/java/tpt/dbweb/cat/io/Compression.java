@@ -0,0 +1,221 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * Compression of input and output files. The compression of an input file is detected from its first bytes, so the file name doesn't matter.
+ *
+ * @author Thomas Rebele
+ */
+public enum Compression {
+  NONE("", new byte[0]), GZIP(".gz", new byte[] { 0x1f, (byte) 0x8b }), ZSTD(".zst", new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd });
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** number of decompressed blocks which are kept in advance */
+  private static final int READ_AHEAD_BLOCKS = 8;
+
+  /** file name extension, including the dot */
+  public final String extension;
+
+  private final byte[] magic;
+
+  private Compression(String extension, byte[] magic) {
+    this.extension = extension;
+    this.magic = magic;
+  }
+
+  /**
+   * @param fileName
+   * @return compression according to the extension of the file name
+   */
+  public static Compression fromFileName(String fileName) {
+    for (Compression c : values()) {
+      if (c != NONE && fileName.endsWith(c.extension)) {
+        return c;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * @param fileName
+   * @return file name without the extension of the compression, e.g. "a.xml" for "a.xml.gz"
+   */
+  public static String stripExtension(String fileName) {
+    return fileName.substring(0, fileName.length() - fromFileName(fileName).extension.length());
+  }
+
+  /**
+   * Detect the compression from the first bytes of a stream. The stream is reset afterwards.
+   * @param in stream which supports mark/reset
+   * @return
+   * @throws IOException
+   */
+  public static Compression detect(InputStream in) throws IOException {
+    byte[] buf = new byte[4];
+    in.mark(buf.length);
+    int n = 0, read;
+    while (n < buf.length && (read = in.read(buf, n, buf.length - n)) >= 0) {
+      n += read;
+    }
+    in.reset();
+    for (Compression c : values()) {
+      if (c != NONE && startsWith(buf, n, c.magic)) {
+        return c;
+      }
+    }
+    return NONE;
+  }
+
+  private static boolean startsWith(byte[] buf, int length, byte[] prefix) {
+    if (length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buf[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Detect the compression of a file
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static Compression detect(Path path) throws IOException {
+    try (InputStream in = new BufferedInputStream(open(path), 4)) {
+      return detect(in);
+    }
+  }
+
+  public InputStream decompress(InputStream in) throws IOException {
+    switch (this) {
+      case GZIP:
+        return new GZIPInputStream(in, BUFFER_SIZE);
+      case ZSTD:
+        return new ZstdInputStream(in);
+      default:
+        return in;
+    }
+  }
+
+  public OutputStream compress(OutputStream out) throws IOException {
+    switch (this) {
+      case GZIP:
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+      case ZSTD:
+        ZstdOutputStream zstd = new ZstdOutputStream(out);
+        // compress blocks in parallel
+        zstd.setWorkers(Runtime.getRuntime().availableProcessors());
+        return zstd;
+      default:
+        return out;
+    }
+  }
+
+  private static InputStream open(Path path) throws IOException {
+    try {
+      return Files.newInputStream(path);
+    } catch (NoSuchFileException e) {
+      throw new FileNotFoundException(path.toString());
+    }
+  }
+
+  /**
+   * Open a file and decompress it if necessary
+   * @param path
+   * @return buffered stream
+   * @throws IOException
+   */
+  public static InputStream newInputStream(Path path) throws IOException {
+    InputStream in = new BufferedInputStream(open(path), BUFFER_SIZE);
+    try {
+      Compression c = detect(in);
+      // decompress in the background, while the caller parses the previous blocks
+      return c == NONE ? in : new ReadAheadInputStream(c.decompress(in), BUFFER_SIZE, READ_AHEAD_BLOCKS);
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a UTF-8 encoded file and decompress it if necessary
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static Reader newReader(Path path) throws IOException {
+    return new InputStreamReader(newInputStream(path), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a file, or append to it, compressed according to the extension of its name.
+   * Appending to a compressed file adds another gzip member or zstd frame, which are read as one stream.
+   * @param path
+   * @param options e.g. {@link StandardOpenOption#APPEND}
+   * @return buffered stream
+   * @throws IOException
+   */
+  public static OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    if (options.length == 0) {
+      options = new OpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE };
+    } else {
+      options = Arrays.copyOf(options, options.length + 2);
+      options[options.length - 2] = StandardOpenOption.CREATE;
+      options[options.length - 1] = StandardOpenOption.WRITE;
+    }
+    OutputStream out = Files.newOutputStream(path, options);
+    try {
+      return new BufferedOutputStream(fromFileName(path.getFileName().toString()).compress(out), BUFFER_SIZE);
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Create a UTF-8 encoded file, see {@link #newOutputStream(Path, OpenOption...)}
+   * @param path
+   * @param options
+   * @return
+   * @throws IOException
+   */
+  public static Writer newWriter(Path path, OpenOption... options) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(newOutputStream(path, options), StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+}
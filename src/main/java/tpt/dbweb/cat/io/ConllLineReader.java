@@ -0,0 +1,153 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads a CoNLL file line by line and splits the lines into whitespace separated columns, like line.split("\\s+").
+ * The characters are read into a buffer which is reused for all lines, so strings are only created for the columns which are requested.
+ *
+ * @author Thomas Rebele
+ */
+class ConllLineReader implements Closeable {
+
+  private final Reader in;
+
+  private char[] buf = new char[1 << 16];
+
+  /** buf[pos] until buf[limit] (exclusive) have not been consumed yet */
+  private int pos = 0, limit = 0;
+
+  private boolean eof = false;
+
+  /** current line */
+  private int lineStart = 0, lineEnd = 0;
+
+  private int[] colStart = new int[16], colEnd = new int[16];
+
+  private int colCount = 0;
+
+  ConllLineReader(Reader in) {
+    this.in = in;
+  }
+
+  /**
+   * Advance to the next line. The line terminator (\n or \r\n) is not part of the line.
+   * @return false at the end of the input
+   */
+  boolean nextLine() throws IOException {
+    int i = pos;
+    while (true) {
+      while (i < limit && buf[i] != '\n') {
+        i++;
+      }
+      if (i < limit || eof) {
+        break;
+      }
+      // line continues after the buffer, so move it to the beginning and read more
+      if (pos > 0) {
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        i -= pos;
+        limit -= pos;
+        pos = 0;
+      } else if (limit == buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+      int n = in.read(buf, limit, buf.length - limit);
+      if (n < 0) {
+        eof = true;
+      } else {
+        limit += n;
+      }
+    }
+    if (i == limit && i == pos) {
+      return false;
+    }
+    lineStart = pos;
+    lineEnd = i;
+    pos = i < limit ? i + 1 : i;
+    if (lineEnd > lineStart && buf[lineEnd - 1] == '\r') {
+      lineEnd--;
+    }
+    split();
+    return true;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * Same columns as line.split("\\s+"): a line starting with whitespace has an empty first column, a line with only whitespace has no columns.
+   */
+  private void split() {
+    colCount = 0;
+    int i = lineStart;
+    while (i < lineEnd && isWhitespace(buf[i])) {
+      i++;
+    }
+    if (i == lineEnd) {
+      return;
+    }
+    if (i > lineStart) {
+      addColumn(lineStart, lineStart);
+    }
+    while (i < lineEnd) {
+      int start = i;
+      while (i < lineEnd && !isWhitespace(buf[i])) {
+        i++;
+      }
+      addColumn(start, i);
+      while (i < lineEnd && isWhitespace(buf[i])) {
+        i++;
+      }
+    }
+  }
+
+  private void addColumn(int start, int end) {
+    if (colCount == colStart.length) {
+      colStart = Arrays.copyOf(colStart, colCount * 2);
+      colEnd = Arrays.copyOf(colEnd, colCount * 2);
+    }
+    colStart[colCount] = start;
+    colEnd[colCount++] = end;
+  }
+
+  boolean startsWith(String prefix) {
+    if (lineEnd - lineStart < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (buf[lineStart + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  String getLine() {
+    return new String(buf, lineStart, lineEnd - lineStart);
+  }
+
+  int getColumnCount() {
+    return colCount;
+  }
+
+  String getColumn(int i) {
+    if (i < 0 || i >= colCount) {
+      throw new IndexOutOfBoundsException("column " + i + ", columns " + colCount);
+    }
+    return new String(buf, colStart[i], colEnd[i] - colStart[i]);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
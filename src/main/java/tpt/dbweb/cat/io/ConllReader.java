@@ -4,103 +4,233 @@
 
 package tpt.dbweb.cat.io;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javatools.datatypes.PeekIterator;
 import tpt.dbweb.cat.datatypes.EntityMention;
 import tpt.dbweb.cat.datatypes.TaggedText;
 
-public class ConllReader {
+/**
+ * Reads documents in CoNLL format, see {@link ConllWriter}
+ * @author Thomas Rebele
+ */
+public class ConllReader implements TaggedTextReader {
 
   private final static Logger log = LoggerFactory.getLogger(ConllReader.class);
 
+  private final int textColumn;
+
+  public ConllReader() {
+    this(0);
+  }
+
+  /**
+   * @param textColumn index of the column which contains the words
+   */
+  public ConllReader(int textColumn) {
+    this.textColumn = textColumn;
+  }
+
+  @Override
+  public PeekIterator<TaggedText> open(Reader r, String errorMessageInfo) {
+    return getIterator(r, textColumn, errorMessageInfo);
+  }
+
   /**
    * Read tabular conll file and parse the last column as coreferences.
    * @param file
    * @param textColumn
-   * @return
+   * @return documents in the order of the file
    */
   public static List<TaggedText> readConllFile(Path file, int textColumn) {
-    List<TaggedText> result = new ArrayList<>();
-    Map<String, List<List<String>>> docs = ConllWriter.readConllDocuments(file);
-
-    // for each document between '#begin document' and '#end document'
-    docs.forEach((docId, table) -> {
-      TaggedText tt = new TaggedText();
-      tt.id = docId;
-
-      // track starting corefs
-      StringBuilder sb = new StringBuilder();
-      Map<String, List<EntityMention>> entityIdToMentions = new HashMap<>();
-
-      // for each line in document
-      table.forEach(row -> {
-        // add whitespace characters between words
-        if (row.size() == 0) {
-          sb.append("\n");
-          return;
-        }
-        if (sb.length() > 0) {
-          if (sb.charAt(sb.length() - 1) != '\n') {
-            sb.append(" ");
-          }
-        }
+    try {
+      return PeekIterator.asList(iteratePath(file, textColumn));
+    } catch (FileNotFoundException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
+  }
 
-        String word = row.get(textColumn);
-        String corefCol = row.get(row.size() - 1);
-
-        // parse starting/ending corefs
-        List<String> corefs = Arrays.asList(corefCol.split("\\|"));
-        List<String> endingCorefs = new ArrayList<>();
-        corefs.forEach(coref -> {
-          String entityId = coref.replace("(", "").replace(")", "");
-          if (coref.startsWith("(")) {
-            EntityMention em = new EntityMention(null, sb.length(), sb.length(), entityId);
-            entityIdToMentions.computeIfAbsent(entityId, k -> new ArrayList<>()).add(em);
+  /**
+   * Iterate over the documents of a (possibly compressed) conll file, without keeping the whole file in memory. The last column is parsed as coreferences.
+   * @param file
+   * @param textColumn
+   * @return documents in the order of the file
+   * @throws FileNotFoundException
+   */
+  public static PeekIterator<TaggedText> iteratePath(Path file, int textColumn) throws FileNotFoundException {
+    try {
+      return new ConllReader(textColumn).open(file);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Read the rows of the documents without parsing them. Lines starting with # are skipped.
+   * @param r
+   * @param errorMessageInfo e.g. file name
+   * @return map of document ids to a table (list of rows; a row is a list of columns, empty for an empty line)
+   * @throws IOException
+   */
+  public static Map<String, List<List<String>>> readTables(Reader r, String errorMessageInfo) throws IOException {
+    Map<String, List<List<String>>> result = new HashMap<>();
+    List<List<String>> rows = new ArrayList<>();
+    String docid = null;
+    try (ConllLineReader lines = new ConllLineReader(r)) {
+      while (lines.nextLine()) {
+        if (lines.startsWith("#begin document")) {
+          rows = new ArrayList<>();
+          docid = lines.getLine().substring("#begin document".length()).trim();
+        } else if (lines.startsWith("#end document")) {
+          if (docid == null) {
+            log.error("doc id is null, cannot read conll file {}", errorMessageInfo);
+          } else {
+            result.put(docid, rows);
           }
-          if (coref.endsWith(")")) {
-            endingCorefs.add(entityId);
+          docid = null;
+        } else if (!lines.startsWith("#")) {
+          List<String> row = new ArrayList<>(lines.getColumnCount());
+          for (int i = 0; i < lines.getColumnCount(); i++) {
+            row.add(lines.getColumn(i));
           }
-        });
-
-        // build text
-        sb.append(word);
+          rows.add(row);
+        }
+      }
+    }
+    return result;
+  }
 
-        // deal with ending corefs
-        endingCorefs.forEach(coref -> {
-          List<EntityMention> ems = entityIdToMentions.get(coref);
-          if (ems.size() == 0) {
-            log.error("coref {} has no starting coref?", coref);
-            return;
+  /**
+   * Iterate over the documents between '#begin document' and '#end document'. Lines outside of documents are ignored.
+   * @param r
+   * @param textColumn
+   * @param errorMessageInfo e.g. file name
+   * @return
+   */
+  public static PeekIterator<TaggedText> getIterator(Reader r, int textColumn, String errorMessageInfo) {
+    ConllLineReader lines = new ConllLineReader(r);
+    return new PeekIterator<TaggedText>() {
+
+      @Override
+      protected TaggedText internalNext() throws Exception {
+        TaggedText tt = null;
+        StringBuilder sb = null;
+        // track starting corefs
+        Map<String, List<EntityMention>> entityIdToMentions = null;
+
+        // for each line
+        while (lines.nextLine()) {
+          if (lines.startsWith("#")) {
+            if (lines.startsWith("#begin document")) {
+              tt = new TaggedText();
+              tt.id = lines.getLine().substring("#begin document".length() + 1);
+              sb = new StringBuilder();
+              entityIdToMentions = new HashMap<>();
+            } else if (lines.startsWith("#end document") && tt != null) {
+              // entity mentions which do not close
+              for (String entityId : entityIdToMentions.keySet()) {
+                for (int i = 0; i < entityIdToMentions.get(entityId).size(); i++) {
+                  log.error("coref {} has no endig tag", entityId);
+                }
+              }
+              tt.text = sb.toString();
+              for (EntityMention em : tt.mentions) {
+                em.text = tt.text;
+              }
+              return tt;
+            } else if (lines.startsWith("#end document")) {
+              log.error("doc id is null, cannot read conll file {}", errorMessageInfo);
+            }
+            continue;
           }
+          if (tt == null) {
+            continue;
+          }
+          addRow(lines, textColumn, tt, sb, entityIdToMentions);
+        }
+        return null;
+      }
 
-          EntityMention last = ems.remove(ems.size() - 1);
-          last.end = sb.length();
-          tt.mentions.add(last);
-        });
-
-      });
+      @Override
+      public void close() {
+        IOUtils.closeQuietly(lines);
+      }
+    };
+  }
 
-      // entity mentions which do not close
-      for (String entityId : entityIdToMentions.keySet()) {
-        for (EntityMention em : entityIdToMentions.get(entityId)) {
-          log.error("coref {} has no endig tag", entityId);
+  /**
+   * Append the word of a row to the text, and track the corefs of the row
+   */
+  private static void addRow(ConllLineReader row, int textColumn, TaggedText tt, StringBuilder sb,
+      Map<String, List<EntityMention>> entityIdToMentions) {
+    // add whitespace characters between words
+    if (row.getColumnCount() == 0) {
+      sb.append("\n");
+      return;
+    }
+    if (sb.length() > 0) {
+      if (sb.charAt(sb.length() - 1) != '\n') {
+        sb.append(" ");
+      }
+    }
+
+    String word = row.getColumn(textColumn);
+    String corefCol = row.getColumn(row.getColumnCount() - 1);
+
+    // parse starting/ending corefs
+    List<String> endingCorefs = null;
+    int start = 0;
+    while (start <= corefCol.length()) {
+      int end = corefCol.indexOf('|', start);
+      if (end < 0) {
+        end = corefCol.length();
+      }
+      String coref = corefCol.substring(start, end);
+      start = end + 1;
+      String entityId = coref.replace("(", "").replace(")", "");
+      if (coref.startsWith("(")) {
+        EntityMention em = new EntityMention(null, sb.length(), sb.length(), entityId);
+        entityIdToMentions.computeIfAbsent(entityId, k -> new ArrayList<>()).add(em);
+      }
+      if (coref.endsWith(")")) {
+        if (endingCorefs == null) {
+          endingCorefs = new ArrayList<>();
         }
+        endingCorefs.add(entityId);
       }
+    }
+
+    // build text
+    sb.append(word);
+
+    // deal with ending corefs
+    if (endingCorefs != null) {
+      for (String coref : endingCorefs) {
+        List<EntityMention> ems = entityIdToMentions.get(coref);
+        if (ems.size() == 0) {
+          log.error("coref {} has no starting coref?", coref);
+          continue;
+        }
 
-      tt.text = sb.toString();
-      tt.mentions.forEach(em -> em.text = tt.text);
-      result.add(tt);
-    });
-
-    return result;
+        EntityMention last = ems.remove(ems.size() - 1);
+        last.end = sb.length();
+        tt.mentions.add(last);
+      }
+    }
   }
 
 }
@@ -4,20 +4,22 @@
 
 package tpt.dbweb.cat.io;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,17 +70,69 @@ public class ConllWriter {
     writeTTList(Arrays.asList(tt), outputFile);
   }
 
+  /**
+   * Output tagged texts in conll format, compressed according to the file name (see {@link Compression})
+   * @param tts
+   * @param outputFile
+   */
   public void writeTTList(List<TaggedText> tts, Path outputFile) {
-    List<ConllDocumentPart> parts = new ArrayList<>();
-    Tokenizer wd = new RegexWordTokenizer();
+    try (Writer w = Compression.newWriter(outputFile)) {
+      writeTTList(tts, w);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Output tagged texts in conll format. Every document is converted just before it is written, so this works for pipes as well.
+   * @param tts
+   * @param w
+   * @throws IOException
+   */
+  public void writeTTList(Iterable<TaggedText> tts, Writer w) throws IOException {
     for (TaggedText tt : tts) {
-      ConllDocumentPart part = new ConllDocumentPart();
-      part.tt = tt;
-      part.title = tt.id;
-      part.alignToWords = wd.getTokens(tt.text).stream().map(ts -> ts.spanString()).collect(Collectors.toList());
-      parts.add(part);
+      writePart(toPart(tt), w);
     }
-    writePartList(parts, outputFile);
+  }
+
+  /**
+   * Output tagged texts in conll format, encoded as UTF-8. The stream is flushed, but not closed.
+   * @param tts
+   * @param out
+   * @throws IOException
+   */
+  public void writeTTList(Iterable<TaggedText> tts, OutputStream out) throws IOException {
+    Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writeTTList(tts, w);
+    w.flush();
+  }
+
+  /**
+   * Create a document part for a tagged text, with the words of the text as text column
+   * @param tt
+   * @return
+   */
+  public ConllDocumentPart toPart(TaggedText tt) {
+    ConllDocumentPart part = new ConllDocumentPart();
+    part.tt = tt;
+    part.title = tt.id;
+    // the tokens are spans of the text already, so they don't need to be aligned
+    part.alignToSpans = wordTokenizer.getTokens(tt.text);
+    return part;
+  }
+
+  /**
+   * Spans of the words which are written to the text column for a tagged text (see {@link #toPart(TaggedText)}).
+   * reference-coreference-scorers identifies the mentions by these words.
+   * @param tt
+   * @return
+   */
+  public List<TextSpan> getWordSpans(TaggedText tt) {
+    return getWordSpans(toPart(tt));
+  }
+
+  private static List<TextSpan> getWordSpans(ConllDocumentPart part) {
+    return part.alignToSpans != null ? part.alignToSpans : getWordSpans(part.tt.text, part.alignToWords);
   }
 
   public void writePartList(List<ConllDocumentPart> parts, Path outputFile) {
@@ -87,27 +141,34 @@ public class ConllWriter {
 
   /**
    * Output entity mentions in conll format. Documents get enclosed by #begin document ... #end document
+   * The file is compressed according to its name, see {@link Compression}
    * @param parts
    * @param outputFile
    */
   public void writePartList(List<ConllDocumentPart> parts, Path outputFile, boolean append) {
-    try {
-      Files.createDirectories(outputFile.getParent());
-    } catch (IOException e1) {
-      e1.printStackTrace();
-    }
-    try (Writer w = new FileWriter(outputFile.toFile(), append)) {
+    OpenOption[] options = append ? new OpenOption[] { StandardOpenOption.APPEND } : new OpenOption[0];
+    try (Writer w = Compression.newWriter(outputFile, options)) {
       for (ConllDocumentPart e : parts) {
-        w.write("#begin document " + e.title + "\n");
-        List<TextSpan> wordSpans = getWordSpans(e.tt.text, e.alignToWords);
-        w.write(convert(e.tt, wordSpans, ""));
-        w.write("#end document\n");
+        writePart(e, w);
       }
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
+  /**
+   * Output one document, enclosed by #begin document ... #end document
+   * @param part
+   * @param w
+   * @throws IOException
+   */
+  public void writePart(ConllDocumentPart part, Writer w) throws IOException {
+    w.write("#begin document " + part.title + "\n");
+    List<TextSpan> wordSpans = getWordSpans(part);
+    w.write(convert(part.tt, wordSpans, ""));
+    w.write("#end document\n");
+  }
+
   /**
    * Transform a list of words in a text to a list of text spans.
    * @param text
@@ -140,67 +201,51 @@ public class ConllWriter {
   }
 
   /**
-   * Reads a conll file.
+   * Reads a (possibly compressed) conll file.
    * @param file
    * @return map of document ids to a table (list of rows; a row is a list of columns)
+   * @deprecated use {@link ConllReader#readTables(java.io.Reader, String)}, or {@link ConllReader} to parse the documents
    */
+  @Deprecated
   public static Map<String, List<List<String>>> readConllDocuments(Path file) {
-    Map<String, List<List<String>>> result = new HashMap<>();
-    List<List<String>> docList = new ArrayList<>();
-    String docid = null;
-    LineIterator it;
     try {
-      it = FileUtils.lineIterator(file.toFile());
-      while (it.hasNext()) {
-        String line = it.next();
-        if (line.startsWith("#")) {
-          if (line.startsWith("#begin document")) {
-            docList = new ArrayList<>();
-            docid = line.substring("#begin document".length() + 1);
-          } else if (line.startsWith("#end document")) {
-            if (docid == null) {
-              log.error("doc id is null, cannot read conll file {}", file);
-            } else {
-              result.put(docid, docList);
-            }
-            docid = null;
-          }
-          continue;
-        }
-        String[] cols = line.split("\\s+");
-        if (cols.length == 0 || (cols.length == 1 && "".equals(cols[0]))) {
-          docList.add(Arrays.asList());
-        } else {
-          docList.add(Arrays.asList(cols));
-        }
-        // extract column for words
-        // align output line by line to these words // TODO: move comment to right place
-      }
+      return ConllReader.readTables(Compression.newReader(file), file.toString());
     } catch (IOException e) {
-      e.printStackTrace();
+      log.error("cannot read conll file {}", file, e);
+      return new HashMap<>();
     }
-    return result;
   }
 
   /**
-   * Reads a column (space-separated) of a file. Ignores lines starting with #
+   * Reads a column (space-separated) of a (possibly compressed) file. Ignores lines starting with #
    * @param alignToFile
    * @param columnIndex
    * @return map from docid to word list
    * @throws IOException
    */
   public static Map<String, List<String>> readColumn(Path file, int columnIndex) {
-    Map<String, List<String>> result = new HashMap<>();
-    // iterate over documents
-    Map<String, List<List<String>>> docs = readConllDocuments(file);
-    for (String docId : docs.keySet()) {
-      List<List<String>> table = docs.get(docId);
-      // extract column of table
-
-      List<String> column = result.computeIfAbsent(docId, k -> new ArrayList<>());
-      column.addAll(table.stream().filter(l -> l.size() > columnIndex).map(l -> {
-        return l.get(columnIndex);
-      }).collect(Collectors.toList()));
+    Map<String, List<String>> result = new LinkedHashMap<>();
+    // iterate over the lines without keeping the other columns
+    try (ConllLineReader lines = new ConllLineReader(Compression.newReader(file))) {
+      String docid = null;
+      List<String> column = new ArrayList<>();
+      while (lines.nextLine()) {
+        if (lines.startsWith("#begin document")) {
+          docid = lines.getLine().substring("#begin document".length() + 1);
+          column = new ArrayList<>();
+        } else if (lines.startsWith("#end document")) {
+          if (docid == null) {
+            log.error("doc id is null, cannot read conll file {}", file);
+          } else {
+            result.put(docid, column);
+          }
+          docid = null;
+        } else if (!lines.startsWith("#") && lines.getColumnCount() > columnIndex) {
+          column.add(lines.getColumn(columnIndex));
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
     return result;
   }
@@ -0,0 +1,203 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+
+/**
+ * Writes the output of {@link tpt.dbweb.cat.Compare} to several page files with a fixed number of articles each, so that a browser only needs
+ * to load one page. Every page is a complete output file with the annotators and the overall metrics, written by a {@link CompareOutputWriter}.
+ * The file given to the constructor is an index page (XHTML) with a link to every article on its page and the metrics of the article.
+ * The pages are written next to the index, e.g. the pages of compare.xml are called compare-00001.xml, compare-00002.xml, etc.
+ * Pages of a previous run which had more pages are deleted when the output is finished.
+ *
+ * @author Thomas Rebele
+ */
+public class PagedCompareOutputWriter implements CompareOutput {
+
+  private final static Logger log = LoggerFactory.getLogger(PagedCompareOutputWriter.class);
+
+  private final Path out;
+
+  private final int pageSize;
+
+  private final List<String> annotators;
+
+  /** everything that was written before the first article, repeated on every page */
+  private final StringBuilder preamble = new StringBuilder();
+
+  private CompareOutputWriter page = null;
+
+  private int pageCount = 0;
+
+  private int articlesOnPage = 0;
+
+  private Writer index;
+
+  private boolean indexHeaderWritten = false;
+
+  /**
+   * @param out index file, the page files are written to the same directory
+   * @param pageSize number of articles per page
+   * @param annotators file names of the annotators, the first is the gold standard
+   * @throws IOException
+   */
+  public PagedCompareOutputWriter(Path out, int pageSize, List<String> annotators) throws IOException {
+    this.out = out;
+    this.pageSize = Math.max(1, pageSize);
+    this.annotators = annotators;
+    index = Compression.newWriter(out);
+    index.write("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+    index.write("<html xmlns=\"http://www.w3.org/1999/xhtml\">\n<head>\n<meta charset=\"UTF-8\" />\n<title>Casie</title>\n");
+    index.write("<style>table { border-collapse: collapse; } td, th { padding: 0 .5em; text-align: left; }</style>\n</head>\n<body>\n");
+    index.write("<h1>Casie</h1>\n<ol start=\"0\">\n");
+    for (String annotator : annotators) {
+      index.write("<li>" + escape(annotator) + "</li>\n");
+    }
+    index.write("</ol>\n");
+  }
+
+  private static String escape(String str) {
+    return StringEscapeUtils.escapeXml10(str);
+  }
+
+  /**
+   * @param id article id
+   * @return id of the heading of the article in the rendered output, see the template {@link CompareOutputWriter#TEMPLATE}
+   */
+  public static String getAnchor(String id) {
+    return "article-" + id;
+  }
+
+  /**
+   * @param out index file
+   * @param page number of the page, starting with 1
+   * @return path of the page
+   */
+  public static Path getPagePath(Path out, int page) {
+    String fileName = out.getFileName().toString();
+    String extension = Compression.fromFileName(fileName).extension;
+    String name = Compression.stripExtension(fileName);
+    int dot = name.lastIndexOf('.');
+    if (dot > 0) {
+      name = name.substring(0, dot);
+    }
+    return out.resolveSibling(String.format("%s-%05d.xml%s", name, page, extension));
+  }
+
+  /**
+   * Write a part of the output before the articles; it is repeated on every page
+   */
+  @Override
+  public void write(String str) throws IOException {
+    if (page != null) {
+      throw new IllegalStateException("only articles can be written after the first article");
+    }
+    preamble.append(str);
+  }
+
+  @Override
+  public void writeArticle(String id, String article, List<Map<String, EvaluationStatistics>> metrics) throws IOException {
+    if (page == null || articlesOnPage >= pageSize) {
+      nextPage();
+    }
+    page.writeArticle(id, article, metrics);
+    articlesOnPage++;
+    writeIndexEntry(id, metrics);
+  }
+
+  private void nextPage() throws IOException {
+    if (page != null) {
+      page.finish();
+      page.close();
+    }
+    pageCount++;
+    articlesOnPage = 0;
+    page = new CompareOutputWriter(getPagePath(out, pageCount));
+    page.write(preamble.toString());
+  }
+
+  private void writeIndexEntry(String id, List<Map<String, EvaluationStatistics>> metrics) throws IOException {
+    if (!indexHeaderWritten) {
+      indexHeaderWritten = true;
+      index.write("<table>\n<tr><th>article</th><th>page</th>");
+      for (int i = 1; i < annotators.size(); i++) {
+        index.write("<th>annotator " + i + " (P / R / F1)</th>");
+      }
+      index.write("</tr>\n");
+    }
+    String href = escape(getPagePath(out, pageCount).getFileName().toString() + "#" + encodeFragment(getAnchor(id)));
+    index.write("<tr><td><a href=\"" + href + "\">" + escape(id) + "</a></td><td>" + pageCount + "</td>");
+    for (int i = 1; i < annotators.size(); i++) {
+      index.write("<td>");
+      Map<String, EvaluationStatistics> metricToResult = metrics != null && i - 1 < metrics.size() ? metrics.get(i - 1) : null;
+      if (metricToResult != null) {
+        String sep = "";
+        for (Map.Entry<String, EvaluationStatistics> entry : metricToResult.entrySet()) {
+          EvaluationStatistics es = entry.getValue();
+          index.write(sep + escape(entry.getKey()) + ": " + es.formatPrecision() + " / " + es.formatRecall() + " / " + es.formatF1());
+          sep = "<br/>";
+        }
+      }
+      index.write("</td>");
+    }
+    index.write("</tr>\n");
+  }
+
+  private static String encodeFragment(String str) throws IOException {
+    return URLEncoder.encode(str, StandardCharsets.UTF_8.name()).replace("+", "%20");
+  }
+
+  /**
+   * @return number of pages written so far
+   */
+  public int getPageCount() {
+    return pageCount;
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (page == null) {
+      // at least one page, even without articles
+      nextPage();
+    }
+    page.finish();
+    for (int stale = pageCount + 1; Files.deleteIfExists(getPagePath(out, stale)); stale++) {
+      log.debug("deleted page {} of a previous run", stale);
+    }
+    if (indexHeaderWritten) {
+      index.write("</table>\n");
+    }
+    index.write("</body>\n</html>\n");
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (index == null) {
+      return;
+    }
+    try {
+      if (page != null) {
+        page.close();
+      }
+    } finally {
+      index.close();
+      index = null;
+    }
+  }
+}
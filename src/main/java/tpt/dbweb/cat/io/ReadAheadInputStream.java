@@ -0,0 +1,160 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads blocks of another stream in a background thread, so that e.g. decompressing a file and parsing it run in parallel.
+ * At most a fixed number of blocks are read in advance.
+ *
+ * @author Thomas Rebele
+ */
+class ReadAheadInputStream extends InputStream {
+
+  /** marks the end of the input */
+  private static final byte[] EOF = new byte[0];
+
+  private final InputStream in;
+
+  private final BlockingQueue<byte[]> blocks;
+
+  private final Thread thread;
+
+  private volatile Throwable exception = null;
+
+  private volatile boolean closed = false;
+
+  private byte[] block = null;
+
+  private int blockPos = 0, blockLength = 0;
+
+  private boolean eof = false;
+
+  /**
+   * @param in gets closed by this stream
+   * @param blockSize
+   * @param blockCount number of blocks which are read in advance
+   */
+  ReadAheadInputStream(InputStream in, int blockSize, int blockCount) {
+    this.in = in;
+    this.blocks = new ArrayBlockingQueue<>(blockCount);
+    thread = new Thread(() -> {
+      try {
+        while (!closed) {
+          byte[] buf = new byte[blockSize];
+          int n = IOUtils.read(in, buf);
+          if (n == 0) {
+            break;
+          }
+          // the last block carries its length in its array length
+          blocks.put(n == blockSize ? buf : Arrays.copyOf(buf, n));
+          if (n < blockSize) {
+            break;
+          }
+        }
+      } catch (InterruptedException e) {
+        // closed
+      } catch (Throwable e) {
+        // e.g. a runtime exception of a decompressor; passed on to the reader
+        exception = e;
+      } finally {
+        // the reader waits for the marker, unless the stream has been closed
+        while (!closed) {
+          try {
+            blocks.put(EOF);
+            break;
+          } catch (InterruptedException e) {
+            // try again, or stop if closed
+          }
+        }
+      }
+    }, "read-ahead");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Make the next block available
+   * @return false at the end of the input
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (block != null && blockPos < blockLength) {
+      return true;
+    }
+    try {
+      block = blocks.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while reading ahead");
+    }
+    if (block == EOF) {
+      eof = true;
+      if (exception instanceof IOException) {
+        throw (IOException) exception;
+      } else if (exception instanceof Error) {
+        throw (Error) exception;
+      } else if (exception != null) {
+        throw new IOException("cannot read ahead", exception);
+      }
+      return false;
+    }
+    blockPos = 0;
+    blockLength = block.length;
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return block[blockPos++] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int n = Math.min(len, blockLength - blockPos);
+    System.arraycopy(block, blockPos, b, off, n);
+    blockPos += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return block == null || eof ? 0 : blockLength - blockPos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    in.close();
+  }
+}
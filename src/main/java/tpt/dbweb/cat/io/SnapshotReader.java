@@ -0,0 +1,255 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.CompactMentions;
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.datatypes.TextSpan;
+
+/**
+ * Reads snapshots written by {@link SnapshotWriter}. Uncompressed snapshots are memory mapped, compressed ones are read into memory.
+ * Only the index is decoded when a snapshot is opened, an article is decoded when it is accessed.
+ *
+ * @author Thomas Rebele
+ */
+public class SnapshotReader implements TaggedTextFileReader {
+
+  private final boolean compactMentions;
+
+  public SnapshotReader() {
+    this(false);
+  }
+
+  /**
+   * @param compactMentions store the mentions of a tagged text in a {@link CompactMentions} list
+   */
+  public SnapshotReader(boolean compactMentions) {
+    this.compactMentions = compactMentions;
+  }
+
+  @Override
+  public PeekIterator<TaggedText> open(Path path) throws IOException {
+    Snapshot snapshot = load(path);
+    return new PeekIterator<TaggedText>() {
+
+      private int i = 0;
+
+      @Override
+      protected TaggedText internalNext() throws Exception {
+        return i < snapshot.size() ? snapshot.get(i++, compactMentions) : null;
+      }
+    };
+  }
+
+  @Override
+  public TaggedText get(Path path, String id) throws IOException {
+    Snapshot snapshot = load(path);
+    Integer i = snapshot.idToIndex.get(id);
+    return i == null ? null : snapshot.get(i, compactMentions);
+  }
+
+  /**
+   * Open a snapshot and read its index
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static Snapshot load(Path path) throws IOException {
+    ByteBuffer buf;
+    if (Compression.detect(path) == Compression.NONE) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException("snapshot too large: " + path);
+        }
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    } else {
+      try (InputStream in = Compression.newInputStream(path)) {
+        buf = ByteBuffer.wrap(IOUtils.toByteArray(in));
+      }
+    }
+    return new Snapshot(buf, path.toString());
+  }
+
+  /**
+   * The articles of a snapshot. It can be used by several threads.
+   */
+  public static class Snapshot {
+
+    private final ByteBuffer buf;
+
+    private final String[] ids;
+
+    private final int[] offsets;
+
+    /** first article of an id */
+    private final Map<String, Integer> idToIndex = new HashMap<>();
+
+    private Snapshot(ByteBuffer buf, String name) throws IOException {
+      this.buf = buf;
+      Decoder d = new Decoder(0);
+      for (byte b : SnapshotWriter.MAGIC) {
+        if (buf.limit() < 8 + SnapshotWriter.MAGIC.length || buf.get(d.pos++) != b) {
+          throw new IOException("not a snapshot: " + name);
+        }
+      }
+      long version = d.readVarint();
+      if (version != SnapshotWriter.VERSION) {
+        throw new IOException("unsupported snapshot version " + version + ": " + name);
+      }
+
+      d.pos = (int) buf.getLong(buf.limit() - 8);
+      int count = (int) d.readVarint();
+      ids = new String[count];
+      offsets = new int[count];
+      long offset = 0;
+      for (int i = 0; i < count; i++) {
+        ids[i] = d.readString();
+        offset += d.readVarint();
+        offsets[i] = (int) offset;
+        idToIndex.putIfAbsent(ids[i], i);
+      }
+    }
+
+    public int size() {
+      return ids.length;
+    }
+
+    public String getId(int i) {
+      return ids[i];
+    }
+
+    /**
+     * Decode an article
+     * @param i index of the article
+     * @param compactMentions store the mentions in a {@link CompactMentions} list
+     * @return
+     */
+    public TaggedText get(int i, boolean compactMentions) {
+      Decoder d = new Decoder(offsets[i]);
+      TaggedText tt = new TaggedText();
+      tt.id = d.readString();
+      Map<String, String> info = d.readInfo();
+      if (info != null) {
+        tt.info().putAll(info);
+      }
+      tt.text = d.readString();
+
+      String[] entities = new String[(int) d.readVarint()];
+      for (int j = 0; j < entities.length; j++) {
+        entities[j] = d.readString();
+      }
+
+      int mentionCount = (int) d.readVarint();
+      CompactMentions compact = compactMentions ? new CompactMentions(tt.text, mentionCount) : null;
+      tt.mentions = compactMentions ? compact : new ArrayList<>(mentionCount);
+      int start = 0;
+      for (int j = 0; j < mentionCount; j++) {
+        start += d.readSigned();
+        int end = start + d.readSigned();
+        String entity = entities[(int) d.readVarint()];
+        int minStart = -1, minEnd = -1;
+        long min = d.readVarint();
+        if (min > 0) {
+          minStart = start + unzigzag(min - 1);
+          minEnd = minStart + d.readSigned();
+        }
+        Map<String, String> mentionInfo = d.readInfo();
+        if (compactMentions) {
+          compact.add(start, end, entity, minStart, minEnd, mentionInfo);
+          continue;
+        }
+        EntityMention em = new EntityMention(tt.text, start, end, entity);
+        if (minStart >= 0) {
+          em.min = new TextSpan(tt.text, minStart, minEnd);
+        }
+        if (mentionInfo != null) {
+          em.info().putAll(mentionInfo);
+        }
+        tt.mentions.add(em);
+      }
+      return tt;
+    }
+
+    private static int unzigzag(long value) {
+      return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    /**
+     * Reads the values starting at a position, with absolute gets so that the buffer can be shared
+     */
+    private class Decoder {
+
+      private int pos;
+
+      Decoder(int pos) {
+        this.pos = pos;
+      }
+
+      long readVarint() {
+        long result = 0;
+        for (int shift = 0;; shift += 7) {
+          byte b = buf.get(pos++);
+          result |= (long) (b & 0x7f) << shift;
+          if (b >= 0) {
+            return result;
+          }
+        }
+      }
+
+      int readSigned() {
+        return unzigzag(readVarint());
+      }
+
+      String readString() {
+        int len = (int) readVarint() - 1;
+        if (len < 0) {
+          return null;
+        }
+        String result;
+        if (buf.hasArray()) {
+          result = new String(buf.array(), buf.arrayOffset() + pos, len, StandardCharsets.UTF_8);
+        } else {
+          byte[] b = new byte[len];
+          ByteBuffer dup = buf.duplicate();
+          // Buffer.position(int), which also exists on Java 8
+          ((Buffer) dup).position(pos);
+          dup.get(b);
+          result = new String(b, StandardCharsets.UTF_8);
+        }
+        pos += len;
+        return result;
+      }
+
+      Map<String, String> readInfo() {
+        int size = (int) readVarint();
+        if (size == 0) {
+          return null;
+        }
+        Map<String, String> result = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+          result.put(readString(), readString());
+        }
+        return result;
+      }
+    }
+  }
+}
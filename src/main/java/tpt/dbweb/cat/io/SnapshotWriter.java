@@ -0,0 +1,199 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Writes tagged texts to a binary snapshot, which can be read much faster than XML or CoNLL files, see {@link SnapshotReader}.
+ *
+ * Format (version {@value #VERSION}), numbers are unsigned varints unless noted otherwise:
+ * <pre>
+ * header:   magic "CASIESNP", version
+ * article:  id, info map, text, entity count, entities, mention count, mentions
+ * mention:  zigzag(start - previous start), zigzag(end - start), entity index,
+ *           0 or zigzag(min start - start) + 1 followed by zigzag(min end - min start), info map
+ * index:    article count, (id, offset - previous offset) per article
+ * trailer:  offset of the index, 8 bytes big endian
+ * string:   0 for null, otherwise length of the UTF-8 bytes + 1 followed by the bytes
+ * info map: entry count, (key, value) per entry
+ * </pre>
+ *
+ * @author Thomas Rebele
+ */
+public class SnapshotWriter implements Closeable {
+
+  static final byte[] MAGIC = "CASIESNP".getBytes(StandardCharsets.US_ASCII);
+
+  static final int VERSION = 1;
+
+  /** file name extension of snapshots */
+  public static final String EXTENSION = ".casie";
+
+  private final OutputStream out;
+
+  private long offset = 0;
+
+  private final List<String> ids = new ArrayList<>();
+
+  private final List<Long> offsets = new ArrayList<>();
+
+  private final byte[] varintBuf = new byte[10];
+
+  /**
+   * @param file compressed according to its name, see {@link Compression}
+   * @throws IOException
+   */
+  public SnapshotWriter(Path file) throws IOException {
+    this(Compression.newOutputStream(file));
+  }
+
+  /**
+   * @param out gets closed by {@link #close()}
+   * @throws IOException
+   */
+  public SnapshotWriter(OutputStream out) throws IOException {
+    this.out = out;
+    writeBytes(MAGIC, MAGIC.length);
+    writeVarint(VERSION);
+  }
+
+  private void writeBytes(byte[] b, int len) throws IOException {
+    out.write(b, 0, len);
+    offset += len;
+  }
+
+  private void writeVarint(long value) throws IOException {
+    int len = 0;
+    while ((value & ~0x7fL) != 0) {
+      varintBuf[len++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    varintBuf[len++] = (byte) value;
+    writeBytes(varintBuf, len);
+  }
+
+  private static long zigzag(int value) {
+    return ((value << 1) ^ (value >> 31)) & 0xffffffffL;
+  }
+
+  private void writeSigned(int value) throws IOException {
+    writeVarint(zigzag(value));
+  }
+
+  private void writeString(String str) throws IOException {
+    if (str == null) {
+      writeVarint(0);
+      return;
+    }
+    byte[] b = str.getBytes(StandardCharsets.UTF_8);
+    writeVarint(b.length + 1L);
+    writeBytes(b, b.length);
+  }
+
+  private void writeInfo(Map<String, String> info) throws IOException {
+    if (info == null) {
+      writeVarint(0);
+      return;
+    }
+    writeVarint(info.size());
+    for (Map.Entry<String, String> entry : info.entrySet()) {
+      writeString(entry.getKey());
+      writeString(entry.getValue());
+    }
+  }
+
+  /**
+   * Append an article
+   * @param tt
+   * @throws IOException
+   */
+  public void write(TaggedText tt) throws IOException {
+    ids.add(tt.id);
+    offsets.add(offset);
+    writeString(tt.id);
+    writeInfo(tt.info(false));
+    writeString(tt.text);
+
+    // entity dictionary
+    Map<String, Integer> entityIdx = new HashMap<>();
+    List<String> entities = new ArrayList<>();
+    for (EntityMention em : tt.mentions) {
+      if (!entityIdx.containsKey(em.entity)) {
+        entityIdx.put(em.entity, entities.size());
+        entities.add(em.entity);
+      }
+    }
+    writeVarint(entities.size());
+    for (String entity : entities) {
+      writeString(entity);
+    }
+
+    writeVarint(tt.mentions.size());
+    int prevStart = 0;
+    for (EntityMention em : tt.mentions) {
+      writeSigned(em.start - prevStart);
+      writeSigned(em.end - em.start);
+      writeVarint(entityIdx.get(em.entity));
+      if (em.min == null) {
+        writeVarint(0);
+      } else {
+        writeVarint(zigzag(em.min.start - em.start) + 1);
+        writeSigned(em.min.end - em.min.start);
+      }
+      writeInfo(em.info(false));
+      prevStart = em.start;
+    }
+  }
+
+  /**
+   * Write the index and close the stream
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      long indexOffset = offset;
+      writeVarint(ids.size());
+      long prev = 0;
+      for (int i = 0; i < ids.size(); i++) {
+        writeString(ids.get(i));
+        writeVarint(offsets.get(i) - prev);
+        prev = offsets.get(i);
+      }
+      byte[] trailer = new byte[8];
+      for (int i = 0; i < 8; i++) {
+        trailer[i] = (byte) (indexOffset >>> (56 - 8 * i));
+      }
+      writeBytes(trailer, trailer.length);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Write a snapshot of tagged texts
+   * @param tts
+   * @param file
+   * @throws IOException
+   */
+  public static void write(Iterable<TaggedText> tts, Path file) throws IOException {
+    try (SnapshotWriter writer = new SnapshotWriter(file)) {
+      for (TaggedText tt : tts) {
+        writer.write(tt);
+      }
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Reads the articles of a file one at a time. Text formats implement {@link TaggedTextReader}, which also parses character streams;
+ * binary formats like snapshots ({@link SnapshotReader}) can only be read from files.
+ * The iterators close their input when they are exhausted, otherwise {@link PeekIterator#close()} has to be called.
+ * See {@link TaggedTextFormats} for choosing the reader of a file.
+ *
+ * @author Thomas Rebele
+ */
+public interface TaggedTextFileReader {
+
+  /**
+   * Iterate over the articles of a (possibly compressed) file, in the order of the file
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public PeekIterator<TaggedText> open(Path path) throws IOException;
+
+  /**
+   * Read a single article. This implementation iterates over the file, readers with an index may do better.
+   * @param path
+   * @param id
+   * @return the article, or null if the file contains no article with this id
+   * @throws IOException
+   */
+  public default TaggedText get(Path path, String id) throws IOException {
+    PeekIterator<TaggedText> it = open(path);
+    try {
+      while (it.hasNext()) {
+        TaggedText tt = it.next();
+        if (id.equals(tt.id)) {
+          return tt;
+        }
+      }
+      return null;
+    } finally {
+      it.close();
+    }
+  }
+
+}
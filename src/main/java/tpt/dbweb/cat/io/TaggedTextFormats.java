@@ -0,0 +1,173 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.apache.commons.io.IOUtils;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Registry of the file formats of tagged texts. The format of a file is detected by the extension of the file name (ignoring the extension of the
+ * compression, e.g. ".xml.gz"), and if this doesn't help by the first characters of the (decompressed) file.
+ *
+ * @author Thomas Rebele
+ */
+public class TaggedTextFormats {
+
+  /** number of characters at the beginning of a file which are passed to the detectors */
+  private static final int PREFIX_LENGTH = 1024;
+
+  public static class Format {
+
+    public final String name;
+
+    private final List<String> extensions;
+
+    private final Predicate<String> detector;
+
+    private final Supplier<? extends TaggedTextFileReader> readerFactory;
+
+    private Format(String name, List<String> extensions, Predicate<String> detector, Supplier<? extends TaggedTextFileReader> readerFactory) {
+      this.name = name;
+      this.extensions = extensions;
+      this.detector = detector;
+      this.readerFactory = readerFactory;
+    }
+
+    /**
+     * @return new reader with the default options of this format
+     */
+    public TaggedTextFileReader newReader() {
+      return readerFactory.get();
+    }
+
+    /**
+     * @return new reader of character streams with the default options of this format, or null if the format is binary
+     */
+    public TaggedTextReader newTextReader() {
+      TaggedTextFileReader reader = readerFactory.get();
+      return reader instanceof TaggedTextReader ? (TaggedTextReader) reader : null;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static final List<Format> formats = new CopyOnWriteArrayList<>();
+
+  static {
+    register("xml", Arrays.asList(".xml"), prefix -> prefix.startsWith("<"), TaggedTextXMLReader::new);
+    register("conll", Arrays.asList(".conll"), prefix -> prefix.startsWith("#begin document"), ConllReader::new);
+    register("snapshot", Arrays.asList(SnapshotWriter.EXTENSION), prefix -> prefix.startsWith("CASIESNP"), SnapshotReader::new);
+  }
+
+  /**
+   * Add a format. Formats registered later take precedence.
+   * @param name
+   * @param extensions file name extensions, including the dot
+   * @param detector gets the first characters of a file without leading whitespace (and byte order mark), returns true if the file has this format
+   * @param readerFactory creates a {@link TaggedTextReader} for text formats
+   */
+  public static void register(String name, List<String> extensions, Predicate<String> detector,
+      Supplier<? extends TaggedTextFileReader> readerFactory) {
+    formats.add(0, new Format(name, new ArrayList<>(extensions), detector, readerFactory));
+  }
+
+  /**
+   * @param name
+   * @return format with this name (case insensitive), or null
+   */
+  public static Format getFormat(String name) {
+    for (Format format : formats) {
+      if (format.name.equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Detect the format of a file, by extension or by content
+   * @param path
+   * @return the format, or null if unknown
+   * @throws IOException
+   */
+  public static Format detect(Path path) throws IOException {
+    String fileName = Compression.stripExtension(path.getFileName().toString().toLowerCase());
+    for (Format format : formats) {
+      for (String extension : format.extensions) {
+        if (fileName.endsWith(extension)) {
+          return format;
+        }
+      }
+    }
+
+    String prefix;
+    try (Reader r = Compression.newReader(path)) {
+      char[] buf = new char[PREFIX_LENGTH];
+      prefix = new String(buf, 0, IOUtils.read(r, buf));
+    }
+    return detectContent(prefix);
+  }
+
+  /**
+   * Detect the format by the content
+   * @param prefix the beginning of the (decompressed) content
+   * @return the format, or null if unknown
+   */
+  public static Format detectContent(String prefix) {
+    if (prefix.length() > PREFIX_LENGTH) {
+      prefix = prefix.substring(0, PREFIX_LENGTH);
+    }
+    int start = 0;
+    while (start < prefix.length() && (Character.isWhitespace(prefix.charAt(start)) || prefix.charAt(start) == '\uFEFF')) {
+      start++;
+    }
+    prefix = prefix.substring(start);
+    for (Format format : formats) {
+      if (format.detector.test(prefix)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get a reader for a file, with the default options of the format
+   * @param path
+   * @return
+   * @throws IOException if the format is unknown
+   */
+  public static TaggedTextFileReader getReader(Path path) throws IOException {
+    Format format = detect(path);
+    if (format == null) {
+      throw new IOException("unknown format of " + path);
+    }
+    return format.newReader();
+  }
+
+  /**
+   * Iterate over the articles of a file of any registered format
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public static PeekIterator<TaggedText> open(Path path) throws IOException {
+    return getReader(path).open(path);
+  }
+}
@@ -4,6 +4,38 @@
 
 package tpt.dbweb.cat.io;
 
-public interface TaggedTextReader {
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Reads the articles of a text format. Implementations only need to parse a character stream,
+ * opening (and decompressing, see {@link Compression}) the files is done here.
+ *
+ * @author Thomas Rebele
+ */
+public interface TaggedTextReader extends TaggedTextFileReader {
+
+  /**
+   * Iterate over the articles of a stream, in the order of the stream
+   * @param r
+   * @param errorMessageInfo e.g. file name
+   * @return
+   */
+  public PeekIterator<TaggedText> open(Reader r, String errorMessageInfo);
+
+  /**
+   * Iterate over the articles of a (possibly compressed) file, in the order of the file
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  @Override
+  public default PeekIterator<TaggedText> open(Path path) throws IOException {
+    return open(Compression.newReader(path), path.toString());
+  }
 
 }
@@ -0,0 +1,375 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the articles of a tagged text XML file, which maps the article id to the byte offset and length of the &lt;article&gt; element.
+ * The index is stored next to the XML file (file.xml.idx), together with size and modification time of the XML file.
+ * If they don't match anymore, the index is built again.
+ * Articles are fetched from a memory mapped file, so an article can be read without scanning the file.
+ *
+ * @author Thomas Rebele
+ */
+public class TaggedTextXMLIndex {
+
+  private final static Logger log = LoggerFactory.getLogger(TaggedTextXMLIndex.class);
+
+  public static final String EXTENSION = ".idx";
+
+  private static final int MAGIC = 0x43494458; // CIDX
+
+  private static final int VERSION = 1;
+
+  /** size of the memory mapped segments; a segment additionally contains maxLength bytes, so that every article fits into a single segment */
+  private static final long SEGMENT_SIZE = 1L << 28;
+
+  private static final Pattern ID_PATTERN = Pattern.compile("\\sid\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")");
+
+  public static class Entry {
+
+    public final long offset;
+
+    public final int length;
+
+    public Entry(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  private final Path file;
+
+  private long size, lastModified;
+
+  private int maxLength = 0;
+
+  private final Map<String, Entry> idToEntry = new LinkedHashMap<>();
+
+  private MappedByteBuffer[] segments = null;
+
+  private TaggedTextXMLIndex(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Path of the index file of a tagged text XML file
+   * @param file
+   * @return
+   */
+  public static Path getIndexPath(Path file) {
+    return file.resolveSibling(file.getFileName().toString() + EXTENSION);
+  }
+
+  /**
+   * Load the index of a file. If there's no index or it is outdated, it gets created.
+   * @param file tagged text XML file
+   * @return
+   * @throws IOException
+   */
+  public static TaggedTextXMLIndex open(Path file) throws IOException {
+    Path indexPath = getIndexPath(file);
+    if (Files.exists(indexPath)) {
+      try {
+        TaggedTextXMLIndex index = read(file, indexPath);
+        if (index.isValid()) {
+          return index;
+        }
+        log.info("index {} is outdated", indexPath);
+      } catch (IOException e) {
+        log.warn("cannot read index {}: {}", indexPath, e.getMessage());
+      }
+    }
+    TaggedTextXMLIndex index = build(file);
+    try {
+      index.write(indexPath);
+    } catch (IOException e) {
+      log.warn("cannot write index {}: {}", indexPath, e.getMessage());
+    }
+    return index;
+  }
+
+  /**
+   * @return whether the XML file still has the size and modification time it had when the index was built
+   */
+  public boolean isValid() {
+    try {
+      return Files.size(file) == size && Files.getLastModifiedTime(file).toMillis() == lastModified;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * @return article ids in the order of the file
+   */
+  public Set<String> getIds() {
+    return Collections.unmodifiableSet(idToEntry.keySet());
+  }
+
+  public Entry getEntry(String id) {
+    return idToEntry.get(id);
+  }
+
+  /**
+   * Get the XML of an article
+   * @param id
+   * @return &lt;article ...&gt;...&lt;/article&gt;, or null if there's no article with this id
+   * @throws IOException
+   */
+  public String getArticle(String id) throws IOException {
+    Entry e = idToEntry.get(id);
+    if (e == null) {
+      return null;
+    }
+    int segment = (int) (e.offset / SEGMENT_SIZE);
+    ByteBuffer buf = getSegment(segment).duplicate();
+    int pos = (int) (e.offset - segment * SEGMENT_SIZE);
+    // cast, so that the class runs on Java 8, where ByteBuffer does not override these methods
+    ((Buffer) buf).limit(pos + e.length);
+    ((Buffer) buf).position(pos);
+    return StandardCharsets.UTF_8.decode(buf).toString();
+  }
+
+  private synchronized MappedByteBuffer getSegment(int segment) throws IOException {
+    if (segments == null) {
+      segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+    }
+    if (segments[segment] == null) {
+      long start = segment * SEGMENT_SIZE;
+      long length = Math.min(size - start, SEGMENT_SIZE + maxLength);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        segments[segment] = channel.map(MapMode.READ_ONLY, start, length);
+      }
+    }
+    return segments[segment];
+  }
+
+  private void add(String id, long offset, long length) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("article " + id + " is too long: " + length + " bytes");
+    }
+    if (id == null) {
+      log.warn("article without id at byte {} of {}", offset, file);
+      return;
+    }
+    if (idToEntry.containsKey(id)) {
+      log.warn("duplicate article id {} in {}, only the first one is indexed", id, file);
+      return;
+    }
+    idToEntry.put(id, new Entry(offset, (int) length));
+    maxLength = Math.max(maxLength, (int) length);
+  }
+
+  /**
+   * Scan the bytes of the XML file for &lt;article&gt; elements. Comments and CDATA sections are skipped.
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  static TaggedTextXMLIndex build(Path file) throws IOException {
+    TaggedTextXMLIndex index = new TaggedTextXMLIndex(file);
+    index.lastModified = Files.getLastModifiedTime(file).toMillis();
+    index.size = Files.size(file);
+
+    try (ByteScanner in = new ByteScanner(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      int depth = 0;
+      long start = -1;
+      String id = null;
+      int c;
+      while ((c = in.read()) >= 0) {
+        if (c != '<') {
+          continue;
+        }
+        long tagStart = in.pos - 1;
+        if (in.skipIfNext("!--")) {
+          in.skipTo("-->");
+        } else if (in.skipIfNext("![CDATA[")) {
+          in.skipTo("]]>");
+        } else if (in.skipIfNext("/article") && in.isNameEnd(in.peek())) {
+          in.skipTo(">");
+          if (depth > 0 && --depth == 0) {
+            index.add(id, start, in.pos - start);
+          }
+        } else if (in.skipIfNext("article") && in.isNameEnd(in.peek())) {
+          String tag = in.readTag();
+          boolean empty = tag.endsWith("/");
+          if (depth == 0) {
+            start = tagStart;
+            Matcher m = ID_PATTERN.matcher(tag);
+            id = m.find() ? StringEscapeUtils.unescapeXml(m.group(1) != null ? m.group(1) : m.group(2)) : null;
+            if (empty) {
+              index.add(id, start, in.pos - start);
+            }
+          }
+          if (!empty) {
+            depth++;
+          }
+        }
+      }
+    }
+    log.info("indexed {} articles of {}", index.idToEntry.size(), file);
+    return index;
+  }
+
+  /**
+   * Helper for {@link TaggedTextXMLIndex#build(Path)}, which keeps track of the byte position
+   */
+  private static class ByteScanner implements AutoCloseable {
+
+    final InputStream in;
+
+    long pos = 0;
+
+    ByteScanner(InputStream in) {
+      this.in = in;
+    }
+
+    int read() throws IOException {
+      int c = in.read();
+      if (c >= 0) {
+        pos++;
+      }
+      return c;
+    }
+
+    int peek() throws IOException {
+      in.mark(1);
+      int c = in.read();
+      in.reset();
+      return c;
+    }
+
+    boolean isNameEnd(int c) {
+      return c < 0 || c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Consume str if the following bytes are equal to it
+     */
+    boolean skipIfNext(String str) throws IOException {
+      in.mark(str.length());
+      for (int i = 0; i < str.length(); i++) {
+        if (in.read() != str.charAt(i)) {
+          in.reset();
+          return false;
+        }
+      }
+      pos += str.length();
+      return true;
+    }
+
+    void skipTo(String str) throws IOException {
+      // compare the last bytes with str, e.g. "--->" ends with "-->"
+      int n = str.length(), c;
+      int[] last = new int[n];
+      long count = 0;
+      while ((c = read()) >= 0) {
+        last[(int) (count++ % n)] = c;
+        if (count >= n && c == str.charAt(n - 1)) {
+          boolean match = true;
+          for (int i = 0; i < n && match; i++) {
+            match = last[(int) ((count - n + i) % n)] == str.charAt(i);
+          }
+          if (match) {
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Read the rest of a start tag, including the closing &gt;
+     * @return the tag without the &gt;, decoded as UTF-8
+     */
+    String readTag() throws IOException {
+      ByteArrayOutputStream tag = new ByteArrayOutputStream();
+      int quote = 0, c;
+      while ((c = read()) >= 0) {
+        if (quote == 0 && c == '>') {
+          break;
+        }
+        if (c == '\'' || c == '"') {
+          quote = quote == 0 ? c : (quote == c ? 0 : quote);
+        }
+        tag.write(c);
+      }
+      return new String(tag.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  static TaggedTextXMLIndex read(Path file, Path indexPath) throws IOException {
+    TaggedTextXMLIndex index = new TaggedTextXMLIndex(file);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("unknown format");
+      }
+      index.size = in.readLong();
+      index.lastModified = in.readLong();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String id = in.readUTF();
+        long offset = in.readLong();
+        int length = in.readInt();
+        index.idToEntry.put(id, new Entry(offset, length));
+        index.maxLength = Math.max(index.maxLength, length);
+      }
+    }
+    return index;
+  }
+
+  void write(Path indexPath) throws IOException {
+    Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(size);
+      out.writeLong(lastModified);
+      out.writeInt(idToEntry.size());
+      for (Map.Entry<String, Entry> e : idToEntry.entrySet()) {
+        out.writeUTF(e.getKey());
+        out.writeLong(e.getValue().offset);
+        out.writeInt(e.getValue().length);
+      }
+    }
+    Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
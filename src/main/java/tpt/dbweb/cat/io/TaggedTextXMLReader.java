@@ -4,22 +4,22 @@
 
 package tpt.dbweb.cat.io;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.io.Reader;
-import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -32,12 +32,19 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javatools.datatypes.PeekIterator;
-import javatools.filehandlers.FileLines;
+import tpt.dbweb.cat.datatypes.CompactMentions;
 import tpt.dbweb.cat.datatypes.EntityMention;
 import tpt.dbweb.cat.datatypes.TaggedText;
 import tpt.dbweb.cat.datatypes.TextSpan;
 import tpt.dbweb.cat.tools.Utility;
 
+/**
+ * Reads tagged text XML files, i.e. <code>&lt;article&gt;</code> elements with <code>&lt;mark entity='...'&gt;</code> tags.
+ * The whole input is parsed by a single {@link XMLStreamReader}; whitespace is normalized on the fly by a {@link WhitespaceNormalizingReader} in front of it.
+ * The articles may be enclosed by an <code>&lt;articles&gt;</code> element, but this is not necessary.
+ *
+ * @author Thomas Rebele
+ */
 public class TaggedTextXMLReader implements TaggedTextReader {
 
   private final static Logger log = LoggerFactory.getLogger(TaggedTextXMLReader.class);
@@ -55,10 +62,20 @@ public class TaggedTextXMLReader implements TaggedTextReader {
 
     /** combine multiple newlines to a paragraph */
     public boolean combineMultipleNewlinesToParagraph = true;
+
+    /** store the mentions of a tagged text in a {@link CompactMentions} list */
+    public boolean compactMentions = false;
   }
 
   private Options options = new Options();
 
+  private final Map<Path, TaggedTextXMLIndex> indexes = new HashMap<>();
+
+  private static final XMLInputFactory xmlInputFactory = createXMLInputFactory();
+
+  /** enclosing element, so that files with several root elements (e.g. only &lt;article&gt; elements) can be parsed */
+  private static final String ROOT = "tagged-text-xml-reader-root";
+
   public TaggedTextXMLReader() {
   }
 
@@ -66,6 +83,14 @@ public class TaggedTextXMLReader implements TaggedTextReader {
     this.options = options;
   }
 
+  private static XMLInputFactory createXMLInputFactory() {
+    XMLInputFactory xif = XMLInputFactory.newInstance();
+    xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    xif.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+    xif.setProperty(XMLInputFactory.IS_VALIDATING, false);
+    return xif;
+  }
+
   public List<TaggedText> getTaggedTextFromFile(String f) {
     return getTaggedText(Paths.get(f));
   }
@@ -78,9 +103,7 @@ public class TaggedTextXMLReader implements TaggedTextReader {
     if (!f.contains("<article>")) {
       f = "<article>" + f + "</article>";
     }
-
-    InputStream is = new ByteArrayInputStream(f.getBytes(StandardCharsets.UTF_8));
-    return IteratorUtils.toList(getNormalizedIterator(is, null));
+    return IteratorUtils.toList(open(new StringReader(f), null));
   }
 
   public List<TaggedText> getTaggedText(Path path) {
@@ -93,94 +116,173 @@ public class TaggedTextXMLReader implements TaggedTextReader {
     return result;
   }
 
-  private Iterator<String> getArticleIterator(InputStream is, String debugInfo) {
-    Reader r = new InputStreamReader(is);
-    return new PeekIterator<String>() {
+  /**
+   * Get the index of a file, see {@link TaggedTextXMLIndex}. It is kept as long as the file doesn't change.
+   * @param path
+   * @return
+   * @throws IOException
+   */
+  public TaggedTextXMLIndex getIndex(Path path) throws IOException {
+    Path key = path.toAbsolutePath().normalize();
+    synchronized (indexes) {
+      TaggedTextXMLIndex index = indexes.get(key);
+      if (index == null || !index.isValid()) {
+        index = TaggedTextXMLIndex.open(key);
+        indexes.put(key, index);
+      }
+      return index;
+    }
+  }
 
-      boolean containsArticleTags = false;
+  /**
+   * Read a single article, using the index of the file
+   * @param path
+   * @param id
+   * @return the article, or null if the file contains no article with this id
+   * @throws IOException
+   */
+  public TaggedText getTaggedTextById(Path path, String id) throws IOException {
+    String article = getIndex(path).getArticle(id);
+    if (article == null) {
+      return null;
+    }
+    Iterator<TaggedText> it = open(new StringReader(article), path + ", article " + id);
+    return it.hasNext() ? it.next() : null;
+  }
 
-      @Override
-      protected String internalNext() throws Exception {
-        String prefix = "<article", suffix = "</article>";
-        String text = FileLines.readTo(r, suffix).toString();
-        String between = FileLines.readBetween(text, prefix, suffix);
-        if (between == null) {
-          if (containsArticleTags) {
-            return null;
-          }
-          if (text.contains("<articles")) {
-            return null;
-          }
-          return text != null && text.length() > 0 ? text : null;
-        }
-        containsArticleTags = true;
-        if (between.startsWith("s>")) {
-          int pos = between.indexOf(prefix);
-          if (pos > 0) {
-            between = between.substring(pos + prefix.length());
-          } else {
-            return internalNext();
-          }
-        }
-        String result = between != null ? prefix + between + suffix : null;
-        if (result != null && result.contains("<articles>")) {
-          log.error("<articles> should not be in the output of TaggedTextXMLReader");
-        }
-        return result;
+  /**
+   * Read several articles, using the index of the file
+   * @param path
+   * @param ids
+   * @return the articles in the order of the ids; ids which are not in the file are skipped
+   * @throws IOException
+   */
+  public List<TaggedText> getTaggedTextByIds(Path path, Collection<String> ids) throws IOException {
+    List<TaggedText> result = new ArrayList<>();
+    for (String id : ids) {
+      TaggedText tt = getTaggedTextById(path, id);
+      if (tt == null) {
+        log.warn("article {} not found in {}", id, path);
+      } else {
+        result.add(tt);
       }
-    };
+    }
+    return result;
   }
 
-  private Iterator<TaggedText> getNormalizedIterator(InputStream is, String errorMessageInfo) {
-    return new PeekIterator<TaggedText>() {
+  /**
+   * Uses the index for uncompressed files, see {@link #getTaggedTextById(Path, String)}
+   */
+  @Override
+  public TaggedText get(Path path, String id) throws IOException {
+    if (Compression.detect(path) != Compression.NONE) {
+      return TaggedTextReader.super.get(path, id);
+    }
+    return getTaggedTextById(path, id);
+  }
 
-      Iterator<String> articleIterator = getArticleIterator(is, errorMessageInfo);
+  public Iterator<TaggedText> iteratePath(Path path) throws FileNotFoundException {
+    try {
+      return open(path);
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-      @Override
-      protected TaggedText internalNext() throws Exception {
-        while (articleIterator.hasNext()) {
-          String article = normalize(articleIterator.next());
-          if (article.contains("<articles>")) {
-            log.error("article should not contain <articles> tag");
-          }
-          Iterator<TaggedText> it = getIterator(IOUtils.toInputStream(article, StandardCharsets.UTF_8), errorMessageInfo + ", article " + article);
-          if (it.hasNext()) {
-            return it.next();
-          }
-        }
-        return null;
+  /**
+   * Skips the XML declaration (and a byte order mark), as the input gets wrapped into another element
+   * @param r
+   * @return
+   * @throws IOException
+   */
+  private static Reader skipXMLDeclaration(Reader r) throws IOException {
+    BufferedReader br = r instanceof BufferedReader ? (BufferedReader) r : new BufferedReader(r);
+    br.mark(8);
+    int c = br.read();
+    if (c == '\uFEFF') {
+      br.mark(8);
+      c = br.read();
+    }
+    char[] buf = new char[5];
+    buf[0] = (char) c;
+    int n = c < 0 ? 0 : 1 + IOUtils.read(br, buf, 1, 4);
+    if (n == 5 && "<?xml".equals(new String(buf))) {
+      int prev = 0;
+      while ((c = br.read()) >= 0 && !(prev == '?' && c == '>')) {
+        prev = c;
       }
-
-    };
+    } else {
+      br.reset();
+    }
+    return br;
   }
 
-  private String normalize(String input) {
-    if (options.trimLines) {
-      input = input.replaceAll("[ \\t\\x0B\\f\\r]*\\n[ \\t\\x0B\\f\\r]*", "\n");
-    }
-    if (options.stripSingleNewlineCharacters) {
-      input = input.replaceAll("([^\\n])\\n([^\\n])", "$1 $2");
+  /**
+   * Encloses the input with the &lt;{@value #ROOT}&gt; element
+   */
+  private static class RootReader extends Reader {
+
+    private final Reader in;
+
+    private final String start = "<" + ROOT + ">", end = "</" + ROOT + ">";
+
+    private int pos = 0;
+
+    private boolean inputFinished = false;
+
+    RootReader(Reader in) {
+      this.in = in;
     }
-    if (options.combineMultipleNewlinesToParagraph) {
-      input = input.replaceAll("\\n\\n+", "\n\n");
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos < start.length()) {
+        int n = Math.min(len, start.length() - pos);
+        start.getChars(pos, pos + n, cbuf, off);
+        pos += n;
+        return n;
+      }
+      if (!inputFinished) {
+        int n = in.read(cbuf, off, len);
+        if (n >= 0) {
+          return n;
+        }
+        inputFinished = true;
+        pos = 0;
+      }
+      if (pos >= end.length()) {
+        return -1;
+      }
+      int n = Math.min(len, end.length() - pos);
+      end.getChars(pos, pos + n, cbuf, off);
+      pos += n;
+      return n;
     }
-    if (options.normalizeWhitespace) {
-      input = input.replaceAll("[ \\t\\x0B\\f\\r]+", " ");
+
+    @Override
+    public void close() throws IOException {
+      in.close();
     }
-    return input;
   }
 
-  private Iterator<TaggedText> getIterator(InputStream is, String errorMessageInfo) {
-
+  @Override
+  public PeekIterator<TaggedText> open(Reader r, String errorMessageInfo) {
     XMLStreamReader tmpxsr = null;
     try {
-      XMLInputFactory xif = XMLInputFactory.newInstance();
-      xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-      xif.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
-      xif.setProperty(XMLInputFactory.IS_VALIDATING, false);
-      tmpxsr = xif.createXMLStreamReader(is);
-    } catch (XMLStreamException | FactoryConfigurationError e) {
+      Reader in = skipXMLDeclaration(r);
+      if (options.trimLines || options.stripSingleNewlineCharacters || options.combineMultipleNewlinesToParagraph || options.normalizeWhitespace) {
+        in = new WhitespaceNormalizingReader(in, options);
+      }
+      in = new RootReader(in);
+      tmpxsr = xmlInputFactory.createXMLStreamReader(in);
+    } catch (XMLStreamException | IOException e) {
       e.printStackTrace();
+      IOUtils.closeQuietly(r);
       return null;
     }
 
@@ -192,17 +294,17 @@ public class TaggedTextXMLReader implements TaggedTextReader {
         ArrayList<TextSpan> openMarks = new ArrayList<>();
         StringBuilder pureTextSB = new StringBuilder();
         ArrayList<TextSpan> marks = new ArrayList<>();
-        marks.add(new TextSpan(null, 0, 0));
         TaggedText tt = null;
 
         try {
-          loop: while (xsr.hasNext()) {
-            xsr.next();
-            int event = xsr.getEventType();
+          while (xsr.hasNext()) {
+            int event = xsr.next();
+            if (tt == null && event != XMLStreamConstants.START_ELEMENT) {
+              continue;
+            }
             switch (event) {
               case XMLStreamConstants.START_ELEMENT:
-                if ("articles".equals(xsr.getLocalName())) {
-                } else if ("article".equals(xsr.getLocalName())) {
+                if ("article".equals(xsr.getLocalName())) {
                   tt = new TaggedText();
                   for (int i = 0; i < xsr.getAttributeCount(); i++) {
                     if ("id".equals(xsr.getAttributeLocalName(i))) {
@@ -210,7 +312,8 @@ public class TaggedTextXMLReader implements TaggedTextReader {
                     }
                     tt.info().put(xsr.getAttributeLocalName(i), xsr.getAttributeValue(i));
                   }
-
+                } else if (tt == null) {
+                  // e.g. <articles>
                 } else if ("mark".equals(xsr.getLocalName())) {
                   TextSpan tr = new TextSpan(null, pureTextSB.length(), pureTextSB.length());
                   for (int i = 0; i < xsr.getAttributeCount(); i++) {
@@ -228,57 +331,18 @@ public class TaggedTextXMLReader implements TaggedTextReader {
                 if ("mark".equals(xsr.getLocalName())) {
 
                   // search corresponding <mark ...>
-                  TextSpan tr = openMarks.remove(openMarks.size() - 1);
-                  if (tr == null) {
+                  if (openMarks.isEmpty()) {
                     log.warn("markend at " + xsr.getLocation().getCharacterOffset() + " has no corresponding mark tag");
                     break;
                   }
-
+                  TextSpan tr = openMarks.remove(openMarks.size() - 1);
                   tr.end = pureTextSB.length();
                   marks.add(tr);
 
                 } else if ("article".equals(xsr.getLocalName())) {
-                  tt.text = StringUtils.stripEnd(pureTextSB.toString().trim(), " \t\n");
-                  pureTextSB = new StringBuilder();
-
-                  tt.mentions = new ArrayList<>();
-                  for (TextSpan mark : marks) {
-
-                    String entity = mark.info().get("entity");
-                    if (entity == null) {
-                      entity = mark.info().get("annotation");
-                    }
-                    if (entity != null) {
-                      EntityMention e = new EntityMention(tt.text, mark.start, mark.end, entity);
-                      String minMention = mark.info().get("min");
-                      String mention = e.getMention();
-                      if (minMention != null && !"".equals(minMention)) {
-                        Pattern p = Pattern.compile(Pattern.quote(minMention));
-                        Matcher m = p.matcher(mention);
-                        if (m.find()) {
-                          TextSpan min = new TextSpan(e.text, e.start + m.start(), e.start + m.end());
-                          e.min = min;
-                          if (m.find()) {
-                            log.warn("found " + minMention + " two times in \"" + mention + "\"");
-                          }
-                        } else {
-                          String prefix = Utility.findLongestPrefix(mention, minMention);
-                          log.warn("didn't find min mention '" + minMention + "' in text '" + mention + "', longest prefix found: '" + prefix
-                              + "' in article " + tt.id);
-                        }
-                      }
-
-                      mark.info().remove("min");
-                      mark.info().remove("entity");
-                      if (mark.info().size() > 0) {
-                        e.info().putAll(mark.info());
-                      }
-                      tt.mentions.add(e);
-                    }
-                  }
-                  openMarks.clear();
-                  marks.clear();
-                  break loop;
+                  finish(tt, pureTextSB, marks, options.compactMentions);
+                  tt.mentions.sort(null);
+                  return tt;
                 }
                 break;
               case XMLStreamConstants.CHARACTERS:
@@ -286,30 +350,87 @@ public class TaggedTextXMLReader implements TaggedTextReader {
                 if (pureTextSB.length() == 0) {
                   toadd = StringUtils.stripStart(toadd, " \t\n");
                 }
-                if (toadd.contains("thanks")) {
-                  log.info("test");
-                }
                 pureTextSB.append(toadd);
                 break;
             }
-
           }
         } catch (XMLStreamException e) {
-          log.error("{}", errorMessageInfo);
+          if (tt == null) {
+            // e.g. a file which has been truncated after an article
+            log.warn("stop reading {}: {}", errorMessageInfo, e.getMessage());
+            return null;
+          }
+          log.error("{}, article {}", errorMessageInfo, tt.id);
           throw new RuntimeException(e);
         }
-        if (tt != null && tt.mentions != null) {
-          tt.mentions.sort(null);
+        return null;
+      }
+
+      @Override
+      public void close() {
+        try {
+          xsr.close();
+        } catch (XMLStreamException e) {
+          e.printStackTrace();
         }
-        return tt;
+        IOUtils.closeQuietly(r);
       }
     };
   }
 
-  public Iterator<TaggedText> iteratePath(Path path) throws FileNotFoundException {
-    InputStream is = null;
-    is = new FileInputStream(path.toFile());
-    return getNormalizedIterator(is, path.toString());
+  /**
+   * Set text and mentions of a tagged text
+   * @param tt
+   * @param pureTextSB text of the article
+   * @param marks text spans of the &lt;mark&gt; tags
+   */
+  private static void finish(TaggedText tt, StringBuilder pureTextSB, List<TextSpan> marks, boolean compact) {
+    tt.text = StringUtils.stripEnd(pureTextSB.toString().trim(), " \t\n");
+
+    CompactMentions compactMentions = compact ? new CompactMentions(tt.text, marks.size()) : null;
+    tt.mentions = compact ? compactMentions : new ArrayList<>();
+    for (TextSpan mark : marks) {
+
+      String entity = mark.info().get("entity");
+      if (entity == null) {
+        entity = mark.info().get("annotation");
+      }
+      if (entity != null) {
+        String mention = new TextSpan(tt.text, mark.start, mark.end).spanString();
+        int minStart = -1, minEnd = -1;
+        String minMention = mark.info().get("min");
+        if (minMention != null && !"".equals(minMention)) {
+          Pattern p = Pattern.compile(Pattern.quote(minMention));
+          Matcher m = p.matcher(mention);
+          if (m.find()) {
+            minStart = mark.start + m.start();
+            minEnd = mark.start + m.end();
+            if (m.find()) {
+              log.warn("found " + minMention + " two times in \"" + mention + "\"");
+            }
+          } else {
+            String prefix = Utility.findLongestPrefix(mention, minMention);
+            log.warn("didn't find min mention '" + minMention + "' in text '" + mention + "', longest prefix found: '" + prefix + "' in article "
+                + tt.id);
+          }
+        }
+
+        mark.info().remove("min");
+        mark.info().remove("entity");
+        if (compact) {
+          compactMentions.add(mark.start, mark.end, entity, minStart, minEnd, mark.info());
+          continue;
+        }
+        EntityMention e = new EntityMention(tt.text, mark.start, mark.end, entity);
+        if (minStart >= 0) {
+          e.min = new TextSpan(e.text, minStart, minEnd);
+        }
+        if (mark.info().size() > 0) {
+          e.info().putAll(mark.info());
+        }
+        tt.mentions.add(e);
+      }
+    }
   }
 
   public static void main(String... args) {
@@ -317,16 +438,5 @@ public class TaggedTextXMLReader implements TaggedTextReader {
     for (TaggedText tt : new TaggedTextXMLReader().getTaggedTextFromFile(file)) {
       System.out.println(tt);
     }
-
-    try {
-      for (String str : Utility.iterable(new TaggedTextXMLReader().getArticleIterator(new FileInputStream(file), file))) {
-        System.out.print("START: " + str.subSequence(0, 50));
-        System.out.print("...");
-        System.out.println(str.subSequence(str.length() - 50, str.length()) + " END");
-      }
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-    }
-
   }
 }
@@ -5,10 +5,8 @@
 package tpt.dbweb.cat.io;
 
 import java.io.Closeable;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -34,15 +32,10 @@ public class TaggedTextXMLWriter implements Closeable {
 
   public TaggedTextXMLWriter(Path file) {
     try {
-      if (!Files.exists(file.getParent())) {
-        Files.createDirectories(file.getParent());
-      }
-      ps = new PrintStream(file.toFile());
+      ps = new PrintStream(Compression.newOutputStream(file), false, "UTF-8");
       ps.println("<?xml version='1.0' encoding='UTF-8' ?>");
       ps.println("<?xml-stylesheet type='text/xsl' href='trafo.xsl' ?>");
       ps.println("<articles>");
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -0,0 +1,225 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Normalizes whitespace of a character stream while it is read. The result is the same as applying the following regular expressions one after another
+ * (each of them can be disabled by {@link TaggedTextXMLReader.Options}):
+ * <ol>
+ * <li>trimLines: <code>[ \t\x0B\f\r]*\n[ \t\x0B\f\r]*</code> &rarr; <code>\n</code></li>
+ * <li>stripSingleNewlineCharacters: <code>([^\n])\n([^\n])</code> &rarr; <code>$1 $2</code></li>
+ * <li>combineMultipleNewlinesToParagraph: <code>\n\n+</code> &rarr; <code>\n\n</code></li>
+ * <li>normalizeWhitespace: <code>[ \t\x0B\f\r]+</code> &rarr; <code> </code></li>
+ * </ol>
+ * Every step is a small state machine, so the input is only read once and never kept in memory.
+ *
+ * @author Thomas Rebele
+ */
+public class WhitespaceNormalizingReader extends FilterReader {
+
+  private final TaggedTextXMLReader.Options options;
+
+  private final char[] inBuf = new char[1 << 13];
+
+  private char[] outBuf = new char[1 << 14];
+
+  private int outPos = 0, outLen = 0;
+
+  private boolean eof = false;
+
+  // trimLines: whitespace which is only written if it is not adjacent to a newline
+  private final StringBuilder pendingWhitespace = new StringBuilder();
+
+  private boolean afterNewline = false;
+
+  // stripSingleNewlineCharacters: whether the last character can be the first group of a match, and whether a newline waits for the next character
+  private boolean lastAvailable = false, pendingNewline = false;
+
+  // combineMultipleNewlinesToParagraph
+  private int newlines = 0;
+
+  // normalizeWhitespace
+  private boolean inWhitespace = false;
+
+  public WhitespaceNormalizingReader(Reader in, TaggedTextXMLReader.Options options) {
+    super(in);
+    this.options = options;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  @Override
+  public int read() throws IOException {
+    char[] c = new char[1];
+    return read(c, 0, 1) < 0 ? -1 : c[0];
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (outPos == outLen) {
+      if (eof) {
+        return -1;
+      }
+      outPos = outLen = 0;
+      int read = in.read(inBuf, 0, inBuf.length);
+      if (read < 0) {
+        eof = true;
+        flush();
+      } else {
+        for (int i = 0; i < read; i++) {
+          trimLines(inBuf[i]);
+        }
+      }
+    }
+    int n = Math.min(len, outLen - outPos);
+    System.arraycopy(outBuf, outPos, cbuf, off, n);
+    outPos += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = 0;
+    char[] buf = new char[1024];
+    while (skipped < n) {
+      int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+      if (read < 0) {
+        break;
+      }
+      skipped += read;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    return outPos < outLen || in.ready();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void mark(int readAheadLimit) throws IOException {
+    throw new IOException("mark not supported");
+  }
+
+  @Override
+  public void reset() throws IOException {
+    throw new IOException("reset not supported");
+  }
+
+  private void flush() {
+    if (options.trimLines) {
+      for (int i = 0; i < pendingWhitespace.length(); i++) {
+        stripSingleNewline(pendingWhitespace.charAt(i));
+      }
+      pendingWhitespace.setLength(0);
+    }
+    if (options.stripSingleNewlineCharacters && pendingNewline) {
+      pendingNewline = false;
+      combineNewlines('\n');
+    }
+  }
+
+  private void trimLines(char c) {
+    if (!options.trimLines) {
+      stripSingleNewline(c);
+    } else if (isWhitespace(c)) {
+      if (!afterNewline) {
+        pendingWhitespace.append(c);
+      }
+    } else if (c == '\n') {
+      pendingWhitespace.setLength(0);
+      afterNewline = true;
+      stripSingleNewline(c);
+    } else {
+      for (int i = 0; i < pendingWhitespace.length(); i++) {
+        stripSingleNewline(pendingWhitespace.charAt(i));
+      }
+      pendingWhitespace.setLength(0);
+      afterNewline = false;
+      stripSingleNewline(c);
+    }
+  }
+
+  private void stripSingleNewline(char c) {
+    if (!options.stripSingleNewlineCharacters) {
+      combineNewlines(c);
+      return;
+    }
+    if (pendingNewline) {
+      pendingNewline = false;
+      if (c != '\n') {
+        // the character is consumed by the match, so it cannot start another one
+        combineNewlines(' ');
+        combineNewlines(c);
+        lastAvailable = false;
+        return;
+      }
+      combineNewlines('\n');
+      lastAvailable = false;
+    }
+    if (c == '\n') {
+      if (lastAvailable) {
+        pendingNewline = true;
+      } else {
+        combineNewlines(c);
+      }
+      lastAvailable = false;
+    } else {
+      combineNewlines(c);
+      lastAvailable = true;
+    }
+  }
+
+  private void combineNewlines(char c) {
+    if (!options.combineMultipleNewlinesToParagraph) {
+      normalizeWhitespace(c);
+    } else if (c == '\n') {
+      if (newlines < 2) {
+        normalizeWhitespace(c);
+      }
+      newlines++;
+    } else {
+      newlines = 0;
+      normalizeWhitespace(c);
+    }
+  }
+
+  private void normalizeWhitespace(char c) {
+    if (!options.normalizeWhitespace) {
+      emit(c);
+    } else if (isWhitespace(c)) {
+      if (!inWhitespace) {
+        emit(' ');
+      }
+      inWhitespace = true;
+    } else {
+      inWhitespace = false;
+      emit(c);
+    }
+  }
+
+  private void emit(char c) {
+    if (outLen == outBuf.length) {
+      char[] tmp = new char[outBuf.length * 2];
+      System.arraycopy(outBuf, 0, tmp, 0, outLen);
+      outBuf = tmp;
+    }
+    outBuf[outLen++] = c;
+  }
+}
@@ -0,0 +1,401 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.ParametersDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import tpt.dbweb.cat.Compare;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+import tpt.dbweb.cat.evaluation.ReferenceEvaluator;
+import tpt.dbweb.cat.io.TaggedTextFormats;
+import tpt.dbweb.cat.io.TaggedTextReader;
+import tpt.dbweb.cat.server.GoldStandardCache.GoldStandard;
+
+/**
+ * HTTP server which evaluates and renders annotations against gold standards that are kept in memory, see {@link GoldStandardCache}.
+ * This avoids starting a JVM and parsing the gold standard for every request.
+ *
+ * <pre>
+ * GET  /gold                      registered gold standards
+ * POST /gold/{id}                 register a gold standard below --gold-root, body: {"path": "gold.xml"}
+ * POST /score/{id}[?format=conll] metrics of the annotations in the body (XML or CoNLL), as JSON
+ * POST /render/{id}[?article=...] rendered &lt;article&gt; elements of the annotations in the body, as XML
+ * </pre>
+ *
+ * Only the articles of the gold standard which occur in the body are evaluated and rendered.
+ *
+ * @author Thomas Rebele
+ */
+public class CompareServer {
+
+  private final static Logger log = LoggerFactory.getLogger(CompareServer.class);
+
+  public static class Options {
+
+    @Parameter(names = "-h")
+    public boolean showHelp = false;
+
+    @Parameter(names = "--host", description = "address of the server")
+    public String host = "localhost";
+
+    @Parameter(names = "--port", description = "port of the server, 0 for any free port")
+    public int port = 8117;
+
+    @Parameter(names = "--gold", description = "register a gold standard, as id=file; can be repeated")
+    public List<String> gold = new ArrayList<>();
+
+    @Parameter(names = "--gold-root", description = "directory of the gold standards which clients may register; registration is disabled if not set")
+    public String goldRoot = null;
+
+    @Parameter(names = "--gold-cache-mb", description = "limit of the (estimated) memory used by parsed gold standards, in MB")
+    public long goldCacheMB = 1024;
+
+    @Parameter(names = "--server-threads", description = "number of requests handled in parallel")
+    public int serverThreads = Runtime.getRuntime().availableProcessors();
+
+    @ParametersDelegate
+    public Compare.Options compareOptions = new Compare.Options();
+
+    @ParametersDelegate
+    public ReferenceEvaluator.Options refEvalOptions = new ReferenceEvaluator.Options();
+  }
+
+  /**
+   * Error with a HTTP status code, which is sent to the client
+   */
+  private static class RequestException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    final int status;
+
+    RequestException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final Options options;
+
+  private final GoldStandardCache golds;
+
+  private final Compare compare;
+
+  private final ReferenceEvaluator evaluator;
+
+  private HttpServer server;
+
+  private ExecutorService executor;
+
+  public CompareServer(Options options) {
+    this.options = options;
+    this.compare = new Compare(options.compareOptions);
+    this.evaluator = new ReferenceEvaluator(options.refEvalOptions);
+    this.golds = new GoldStandardCache(options.goldCacheMB << 20, file -> TaggedTextFormats.open(file).asList());
+    for (String gold : options.gold) {
+      int eq = gold.indexOf('=');
+      if (eq <= 0) {
+        throw new IllegalArgumentException("gold standard must be given as id=file: " + gold);
+      }
+      golds.register(gold.substring(0, eq), Paths.get(gold.substring(eq + 1)));
+    }
+  }
+
+  public GoldStandardCache getGoldStandards() {
+    return golds;
+  }
+
+  /**
+   * Start the server in the background
+   * @throws IOException
+   */
+  public void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(options.host, options.port), 0);
+    executor = Executors.newFixedThreadPool(Math.max(1, options.serverThreads));
+    server.setExecutor(executor);
+    server.createContext("/gold", exchange -> handle(exchange, this::gold));
+    server.createContext("/score", exchange -> handle(exchange, this::score));
+    server.createContext("/render", exchange -> handle(exchange, this::render));
+    server.start();
+    log.info("listening on http://{}:{}/", options.host, getPort());
+  }
+
+  /**
+   * @return port of the running server
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public void stop() {
+    if (server != null) {
+      server.stop(0);
+      executor.shutdownNow();
+      server = null;
+    }
+  }
+
+  private interface Handler {
+
+    /**
+     * @return content type and content of the response
+     */
+    String[] handle(HttpExchange exchange, String id, Map<String, String> query) throws IOException, RequestException;
+  }
+
+  private void handle(HttpExchange exchange, Handler handler) throws IOException {
+    int status = 200;
+    String[] response;
+    try {
+      // the path is /{context}/{id}
+      String path = exchange.getRequestURI().getPath();
+      String context = exchange.getHttpContext().getPath();
+      String id = path.length() > context.length() + 1 ? URLDecoder.decode(path.substring(context.length() + 1), "UTF-8") : null;
+      response = handler.handle(exchange, id, parseQuery(exchange.getRequestURI().getRawQuery()));
+    } catch (RequestException e) {
+      status = e.status;
+      response = new String[] { "text/plain", e.getMessage() };
+    } catch (IOException | RuntimeException e) {
+      log.error("request {} failed", exchange.getRequestURI(), e);
+      status = 500;
+      response = new String[] { "text/plain", String.valueOf(e.getMessage()) };
+    }
+    byte[] body = response[1].getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", response[0] + "; charset=UTF-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) throws IOException {
+    Map<String, String> result = new HashMap<>();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        int eq = param.indexOf('=');
+        String key = eq < 0 ? param : param.substring(0, eq), value = eq < 0 ? "" : param.substring(eq + 1);
+        result.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+      }
+    }
+    return result;
+  }
+
+  private static void requireMethod(HttpExchange exchange, String... methods) throws RequestException {
+    if (!Arrays.asList(methods).contains(exchange.getRequestMethod())) {
+      throw new RequestException(405, "method not allowed: " + exchange.getRequestMethod());
+    }
+  }
+
+  private static String json(Object value) throws IOException {
+    return mapper.writeValueAsString(value);
+  }
+
+  private String[] gold(HttpExchange exchange, String id, Map<String, String> query) throws IOException, RequestException {
+    if (id == null) {
+      requireMethod(exchange, "GET");
+      Map<String, Object> result = new LinkedHashMap<>();
+      for (Map.Entry<String, Path> entry : golds.getRegistered().entrySet()) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("path", entry.getValue().toString());
+        info.put("loaded", golds.isLoaded(entry.getKey()));
+        result.put(entry.getKey(), info);
+      }
+      return new String[] { "application/json", json(result) };
+    }
+
+    requireMethod(exchange, "POST", "PUT");
+    if (options.goldRoot == null) {
+      throw new RequestException(403, "registration of gold standards is disabled, see --gold-root");
+    }
+    Map<?, ?> body;
+    try {
+      body = mapper.readValue(exchange.getRequestBody(), Map.class);
+    } catch (IOException e) {
+      throw new RequestException(400, "invalid JSON: " + e.getMessage());
+    }
+    if (!(body.get("path") instanceof String)) {
+      throw new RequestException(400, "missing path of the gold standard");
+    }
+    // relative paths are resolved against the root; symbolic links must not lead outside of it
+    Path root = Paths.get(options.goldRoot).toRealPath();
+    Path path = root.resolve((String) body.get("path")).normalize();
+    if (!path.startsWith(root)) {
+      throw new RequestException(403, "gold standard outside of --gold-root: " + body.get("path"));
+    }
+    if (!Files.isRegularFile(path)) {
+      throw new RequestException(404, "file not found: " + body.get("path"));
+    }
+    path = path.toRealPath();
+    if (!path.startsWith(root)) {
+      throw new RequestException(403, "gold standard outside of --gold-root: " + body.get("path"));
+    }
+    golds.register(id, path);
+    log.info("registered gold standard {}: {}", id, path);
+    return new String[] { "application/json", json(body) };
+  }
+
+  /**
+   * Parse the annotations in the body of the request
+   * @return the articles which also occur in the gold standard
+   */
+  private List<TaggedText> readAnnotations(HttpExchange exchange, GoldStandard gold, Map<String, String> query)
+      throws IOException, RequestException {
+    requireMethod(exchange, "POST");
+    String body = IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8);
+    TaggedTextFormats.Format format = query.containsKey("format") ? TaggedTextFormats.getFormat(query.get("format"))
+        : TaggedTextFormats.detectContent(body);
+    if (format == null) {
+      throw new RequestException(400, "unknown format of the annotations");
+    }
+    TaggedTextReader reader = format.newTextReader();
+    if (reader == null) {
+      throw new RequestException(415, "annotations in format " + format + " cannot be sent in a request");
+    }
+    List<TaggedText> result = new ArrayList<>();
+    try {
+      for (TaggedText tt : reader.open(new StringReader(body), "request").asList()) {
+        if (gold.idToArticle.containsKey(tt.id)) {
+          result.add(tt);
+        } else {
+          log.warn("article {} is not in gold standard {}", tt.id, gold.id);
+        }
+      }
+    } catch (RuntimeException e) {
+      throw new RequestException(400, "cannot parse the annotations: " + e.getMessage());
+    }
+    return result;
+  }
+
+  private GoldStandard getGold(String id) throws IOException, RequestException {
+    if (id == null) {
+      throw new RequestException(400, "missing id of the gold standard");
+    }
+    GoldStandard gold = golds.get(id);
+    if (gold == null) {
+      throw new RequestException(404, "unknown gold standard: " + id);
+    }
+    return gold;
+  }
+
+  private ComparisonResult evaluate(GoldStandard gold, List<TaggedText> annotations) throws IOException {
+    List<TaggedText> goldArticles = new ArrayList<>();
+    for (TaggedText tt : annotations) {
+      goldArticles.add(gold.idToArticle.get(tt.id));
+    }
+    Path tmpDirectory = Files.createTempDirectory("casie-server-");
+    try {
+      return evaluator.compare(goldArticles, gold.id, annotations, "request", tmpDirectory);
+    } finally {
+      FileUtils.deleteQuietly(tmpDirectory.toFile());
+    }
+  }
+
+  private static Map<String, Object> toJson(Map<String, EvaluationStatistics> metricToResult) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    for (Map.Entry<String, EvaluationStatistics> entry : metricToResult.entrySet()) {
+      Map<String, Object> values = new LinkedHashMap<>();
+      values.put("recall", entry.getValue().getRecall());
+      values.put("precision", entry.getValue().getPrecision());
+      values.put("f1", entry.getValue().getF1());
+      result.put(entry.getKey(), values);
+    }
+    return result;
+  }
+
+  private String[] score(HttpExchange exchange, String id, Map<String, String> query) throws IOException, RequestException {
+    GoldStandard gold = getGold(id);
+    List<TaggedText> annotations = readAnnotations(exchange, gold, query);
+    ComparisonResult evaluation = evaluate(gold, annotations);
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    ComparisonResult combined = evaluation.combine();
+    for (String type : combined.docidToMetricToResult.keySet()) {
+      result.put(type, toJson(combined.docidToMetricToResult.get(type)));
+    }
+    Map<String, Object> documents = new LinkedHashMap<>();
+    for (TaggedText tt : annotations) {
+      Map<String, EvaluationStatistics> metricToResult = evaluation.docidToMetricToResult.get(tt.id);
+      if (metricToResult != null) {
+        documents.put(tt.id, toJson(metricToResult));
+      }
+    }
+    result.put("documents", documents);
+    return new String[] { "application/json", json(result) };
+  }
+
+  private String[] render(HttpExchange exchange, String id, Map<String, String> query) throws IOException, RequestException {
+    GoldStandard gold = getGold(id);
+    List<TaggedText> annotations = readAnnotations(exchange, gold, query);
+    String article = query.get("article");
+    if (article != null) {
+      annotations.removeIf(tt -> !article.equals(tt.id));
+      if (annotations.isEmpty()) {
+        throw new RequestException(404, "article not found: " + article);
+      }
+    }
+    List<ComparisonResult> evaluations = Arrays.asList(evaluate(gold, annotations));
+    List<String> infos = Arrays.asList(gold.id, "request");
+
+    StringBuilder sb = new StringBuilder();
+    for (TaggedText tt : annotations) {
+      String rendered = compare.renderArticle(infos, Arrays.asList(gold.idToArticle.get(tt.id), tt), evaluations);
+      if (rendered == null) {
+        throw new RequestException(400, "text of article " + tt.id + " differs from the gold standard");
+      }
+      sb.append(rendered);
+    }
+    return new String[] { "application/xml", sb.toString() };
+  }
+
+  public static void main(String[] args) throws IOException {
+    Options options = new Options();
+    JCommander jc = new JCommander(options);
+    try {
+      jc.parse(args);
+    } catch (ParameterException e) {
+      log.error(e.getMessage());
+      jc.usage();
+      System.exit(0);
+    }
+    if (options.showHelp) {
+      jc.usage();
+      System.exit(0);
+    }
+    new CompareServer(options).start();
+  }
+}
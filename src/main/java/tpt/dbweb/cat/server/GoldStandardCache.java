@@ -0,0 +1,258 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+/**
+ * Keeps parsed gold standards in memory. Every gold standard is registered with an id and a file, and loaded when it is used for the first time.
+ * If the estimated memory usage of the loaded gold standards exceeds a limit, the least recently used ones are removed; they are loaded again when needed.
+ * A gold standard is also loaded again if its file has been modified. Concurrent requests of a gold standard which is being loaded wait for
+ * that load instead of reading the file again.
+ *
+ * @author Thomas Rebele
+ */
+public class GoldStandardCache {
+
+  private final static Logger log = LoggerFactory.getLogger(GoldStandardCache.class);
+
+  /**
+   * A loaded gold standard. The articles must not be changed.
+   */
+  public static class GoldStandard {
+
+    public final String id;
+
+    public final Path file;
+
+    public final List<TaggedText> articles;
+
+    public final Map<String, TaggedText> idToArticle = new LinkedHashMap<>();
+
+    final FileTime modified;
+
+    final long size;
+
+    GoldStandard(String id, Path file, List<TaggedText> articles, FileTime modified) {
+      this.id = id;
+      this.file = file;
+      this.articles = Collections.unmodifiableList(articles);
+      this.modified = modified;
+      long size = 0;
+      for (TaggedText tt : articles) {
+        idToArticle.putIfAbsent(tt.id, tt);
+        size += estimateSize(tt);
+      }
+      this.size = size;
+    }
+  }
+
+  /**
+   * Reads the articles of a file
+   */
+  public interface Loader {
+
+    List<TaggedText> load(Path file) throws IOException;
+  }
+
+  /**
+   * A gold standard which is being loaded
+   */
+  private static class Loading {
+
+    final Path file;
+
+    final FileTime modified;
+
+    final CompletableFuture<GoldStandard> result = new CompletableFuture<>();
+
+    Loading(Path file, FileTime modified) {
+      this.file = file;
+      this.modified = modified;
+    }
+  }
+
+  private final long maxBytes;
+
+  private final Loader loader;
+
+  private final Map<String, Path> registered = new TreeMap<>();
+
+  /** access order, so the first entry is the least recently used one */
+  private final LinkedHashMap<String, GoldStandard> loaded = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final Map<String, Loading> loading = new HashMap<>();
+
+  private long bytes = 0;
+
+  /**
+   * @param maxBytes limit of the estimated memory usage of the loaded gold standards
+   * @param loader reads the articles of a file
+   */
+  public GoldStandardCache(long maxBytes, Loader loader) {
+    this.maxBytes = maxBytes;
+    this.loader = loader;
+  }
+
+  /**
+   * Register a gold standard. If a gold standard with this id is already loaded, it is removed from the cache.
+   * @param id
+   * @param file
+   */
+  public synchronized void register(String id, Path file) {
+    registered.put(id, file);
+    remove(id);
+  }
+
+  /**
+   * @return ids and files of the registered gold standards
+   */
+  public synchronized Map<String, Path> getRegistered() {
+    return new TreeMap<>(registered);
+  }
+
+  /**
+   * @param id
+   * @return whether the gold standard is currently in memory
+   */
+  public synchronized boolean isLoaded(String id) {
+    return loaded.containsKey(id);
+  }
+
+  /**
+   * Get a gold standard, loading it if necessary
+   * @param id
+   * @return the gold standard, or null if the id is not registered
+   * @throws IOException
+   */
+  public GoldStandard get(String id) throws IOException {
+    Path file;
+    GoldStandard gold;
+    synchronized (this) {
+      file = registered.get(id);
+      if (file == null) {
+        return null;
+      }
+      gold = loaded.get(id);
+    }
+    FileTime modified = Files.getLastModifiedTime(file);
+    if (gold != null && gold.file.equals(file) && gold.modified.equals(modified)) {
+      return gold;
+    }
+
+    // only one thread loads the file, the others wait for it
+    Loading current;
+    boolean owner;
+    synchronized (this) {
+      current = loading.get(id);
+      owner = current == null || !current.file.equals(file) || !current.modified.equals(modified);
+      if (owner) {
+        current = new Loading(file, modified);
+        loading.put(id, current);
+      }
+    }
+    if (!owner) {
+      return await(current);
+    }
+
+    // load outside of the lock, so that other gold standards can be used in the meantime
+    log.info("loading gold standard {} from {}", id, file);
+    try {
+      gold = new GoldStandard(id, file, loader.load(file), modified);
+    } catch (Throwable e) {
+      synchronized (this) {
+        loading.remove(id, current);
+      }
+      current.result.completeExceptionally(e);
+      throw e;
+    }
+    synchronized (this) {
+      loading.remove(id, current);
+      // unless registered again while loading
+      if (file.equals(registered.get(id))) {
+        remove(id);
+        loaded.put(id, gold);
+        bytes += gold.size;
+        evict(id);
+      }
+    }
+    current.result.complete(gold);
+    return gold;
+  }
+
+  private static GoldStandard await(Loading loading) throws IOException {
+    try {
+      return loading.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while loading gold standard " + loading.file);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException("cannot load gold standard " + loading.file, e.getCause());
+    }
+  }
+
+  private void remove(String id) {
+    GoldStandard old = loaded.remove(id);
+    if (old != null) {
+      bytes -= old.size;
+    }
+  }
+
+  /**
+   * Remove the least recently used gold standards until the memory usage is below the limit, but keep the one which was just loaded
+   */
+  private void evict(String keep) {
+    for (Iterator<GoldStandard> it = loaded.values().iterator(); it.hasNext() && bytes > maxBytes;) {
+      GoldStandard gold = it.next();
+      if (!gold.id.equals(keep)) {
+        log.info("removing gold standard {} from memory", gold.id);
+        it.remove();
+        bytes -= gold.size;
+      }
+    }
+  }
+
+  /**
+   * @return estimated memory usage of the loaded gold standards, in bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Rough estimate of the memory usage of an article: two bytes per character plus the overhead of the objects
+   * @param tt
+   * @return bytes
+   */
+  static long estimateSize(TaggedText tt) {
+    long size = 64 + (tt.id == null ? 0 : 40 + 2L * tt.id.length()) + (tt.text == null ? 0 : 40 + 2L * tt.text.length());
+    for (EntityMention em : tt.mentions) {
+      size += 48 + (em.entity == null ? 0 : 40 + 2L * em.entity.length()) + (em.min == null ? 0 : 32);
+    }
+    return size;
+  }
+}
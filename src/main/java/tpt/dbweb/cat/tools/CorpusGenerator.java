@@ -0,0 +1,317 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.tools;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.ConllWriter;
+import tpt.dbweb.cat.io.TaggedTextXMLWriter;
+
+/**
+ * Generates a synthetic annotated corpus: a gold standard and several annotators which disagree with it to a configurable degree.
+ * Every document only depends on the seed and its index, so the same options always result in the same corpus.
+ * The files are written document by document, so the size of the corpus is not limited by the memory.
+ *
+ * Usage: CorpusGenerator --out dir --documents 100000 --annotators 3
+ * creates dir/corpus.xml (gold standard), dir/corpus-1.xml, ... and the corresponding CoNLL files dir/corpus.conll, dir/corpus-1.conll, ...
+ *
+ * @author Thomas Rebele
+ */
+public class CorpusGenerator {
+
+  private final static Logger log = LoggerFactory.getLogger(CorpusGenerator.class);
+
+  public static class Options {
+
+    @Parameter(names = "-h")
+    public boolean showHelp = false;
+
+    @Parameter(names = "--out", description = "output directory")
+    public String out = "corpus";
+
+    @Parameter(names = "--name", description = "prefix of the output files")
+    public String name = "corpus";
+
+    @Parameter(names = "--skip-conll", description = "only write the XML files")
+    public boolean skipConll = false;
+
+    @Parameter(names = "--documents", description = "number of documents")
+    public int documents = 100;
+
+    @Parameter(names = "--words", description = "number of words per document")
+    public int words = 500;
+
+    @Parameter(names = "--mention-density", description = "probability that a mention starts at a word")
+    public double mentionDensity = 0.1;
+
+    @Parameter(names = "--nesting", description = "maximum nesting depth of mentions")
+    public int nesting = 2;
+
+    @Parameter(names = "--annotators", description = "number of annotators besides the gold standard")
+    public int annotators = 2;
+
+    @Parameter(names = "--disagreement", description = "probability that an annotator changes a mention of the gold standard")
+    public double disagreement = 0.1;
+
+    @Parameter(names = "--seed", description = "seed of the random number generator")
+    public long seed = 42;
+  }
+
+  private static final String[] SYLLABLES = { "ka", "lo", "mi", "ne", "ru", "sa", "ti", "vo", "an", "el", "or", "us" };
+
+  private final Options options;
+
+  public CorpusGenerator(Options options) {
+    this.options = options;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Options options = new Options();
+    JCommander jc = new JCommander(options);
+    try {
+      jc.parse(args);
+    } catch (ParameterException e) {
+      log.error(e.getMessage());
+      jc.usage();
+      System.exit(0);
+    }
+    if (options.showHelp) {
+      jc.usage();
+      System.exit(0);
+    }
+    new CorpusGenerator(options).write(Paths.get(options.out));
+  }
+
+  private Random random(int doc, int annotator) {
+    return new Random(options.seed * 1_000_003L + doc * 1009L + annotator);
+  }
+
+  public static String documentId(int doc) {
+    return String.format("doc-%07d", doc);
+  }
+
+  /**
+   * Generate the whole corpus in memory
+   * @return list of annotators, the first is the gold standard
+   */
+  public List<List<TaggedText>> generate() {
+    List<List<TaggedText>> result = new ArrayList<>();
+    for (int a = 0; a <= options.annotators; a++) {
+      result.add(new ArrayList<>());
+    }
+    for (int doc = 0; doc < options.documents; doc++) {
+      TaggedText gold = generateGoldstandard(doc);
+      result.get(0).add(gold);
+      for (int a = 1; a <= options.annotators; a++) {
+        result.get(a).add(generateAnnotation(doc, gold, a));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Path of the XML file of an annotator
+   * @param dir output directory
+   * @param annotator 0 for the gold standard
+   * @param extension e.g. ".xml"
+   * @return
+   */
+  public Path getPath(Path dir, int annotator, String extension) {
+    return dir.resolve(options.name + (annotator == 0 ? "" : "-" + annotator) + extension);
+  }
+
+  /**
+   * Generate the corpus and write it to a directory, one document after the other
+   * @param dir
+   * @return paths of the XML files, the first is the gold standard
+   * @throws IOException
+   */
+  public List<Path> write(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    List<Path> result = new ArrayList<>();
+    List<TaggedTextXMLWriter> xmlWriters = new ArrayList<>();
+    List<Writer> conllWriters = new ArrayList<>();
+    ConllWriter conll = new ConllWriter();
+    try {
+      for (int a = 0; a <= options.annotators; a++) {
+        result.add(getPath(dir, a, ".xml"));
+        xmlWriters.add(new TaggedTextXMLWriter(result.get(a)));
+        if (!options.skipConll) {
+          conllWriters.add(Files.newBufferedWriter(getPath(dir, a, ".conll"), StandardCharsets.UTF_8));
+        }
+      }
+
+      for (int doc = 0; doc < options.documents; doc++) {
+        TaggedText gold = generateGoldstandard(doc);
+        for (int a = 0; a <= options.annotators; a++) {
+          TaggedText tt = a == 0 ? gold : generateAnnotation(doc, gold, a);
+          xmlWriters.get(a).write(null, tt);
+          if (!options.skipConll) {
+            conll.writePart(conll.toPart(tt), conllWriters.get(a));
+          }
+        }
+        if ((doc + 1) % 10000 == 0) {
+          log.info("generated {} of {} documents", doc + 1, options.documents);
+        }
+      }
+    } finally {
+      for (TaggedTextXMLWriter w : xmlWriters) {
+        w.close();
+      }
+      for (Writer w : conllWriters) {
+        w.close();
+      }
+    }
+    log.info("wrote {} documents for {} annotators to {}", options.documents, options.annotators, dir);
+    return result;
+  }
+
+  /**
+   * Generate a document of the gold standard
+   * @param doc index of the document
+   * @return
+   */
+  public TaggedText generateGoldstandard(int doc) {
+    Random rnd = random(doc, 0);
+    TaggedText tt = new TaggedText();
+    tt.id = documentId(doc);
+
+    // text with sentences and paragraphs; remember word boundaries
+    StringBuilder sb = new StringBuilder();
+    int[] wordStart = new int[options.words], wordEnd = new int[options.words];
+    for (int w = 0; w < options.words; w++) {
+      if (w > 0) {
+        sb.append(rnd.nextInt(100) == 0 ? "\n\n" : " ");
+      }
+      wordStart[w] = sb.length();
+      int syllables = 1 + rnd.nextInt(3);
+      for (int s = 0; s < syllables; s++) {
+        sb.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+      }
+      if (rnd.nextInt(12) == 0) {
+        sb.append('.');
+      }
+      wordEnd[w] = sb.length();
+    }
+    tt.text = sb.toString();
+
+    // properly nested mentions; an outer mention contains inner mentions with strictly smaller spans
+    int entities = Math.max(1, (int) (options.words * options.mentionDensity / 3));
+    int w = 0;
+    while (w < options.words) {
+      if (rnd.nextDouble() >= options.mentionDensity) {
+        w++;
+        continue;
+      }
+      int depth = 1 + rnd.nextInt(Math.max(1, options.nesting));
+      int start = w, end = Math.min(options.words, w + depth + rnd.nextInt(3));
+      for (int d = 0; d < depth && start < end; d++) {
+        String entity = tt.id + "-E" + rnd.nextInt(entities);
+        tt.mentions.add(new EntityMention(tt.text, wordStart[start], wordEnd[end - 1], entity));
+        if (end - start < 2) {
+          break;
+        }
+        // shrink span for next nesting level
+        if (rnd.nextBoolean()) {
+          start++;
+        } else {
+          end--;
+        }
+      }
+      w = Math.min(options.words, w + depth + 3);
+    }
+    tt.mentions.sort(null);
+    return tt;
+  }
+
+  /**
+   * Generate the annotation of an annotator, by changing mentions of the gold standard.
+   * A changed mention is either dropped, gets another entity, or (if it doesn't contain other mentions) is shortened.
+   * Additionally, the annotator adds spurious mentions.
+   * @param doc index of the document
+   * @param gold
+   * @param annotator index of the annotator, starting with 1
+   * @return
+   */
+  public TaggedText generateAnnotation(int doc, TaggedText gold, int annotator) {
+    Random rnd = random(doc, annotator);
+    TaggedText tt = new TaggedText();
+    tt.id = gold.id;
+    tt.text = gold.text;
+
+    List<EntityMention> mentions = gold.mentions;
+    int entities = Math.max(1, (int) (options.words * options.mentionDensity / 3));
+    for (int i = 0; i < mentions.size(); i++) {
+      EntityMention em = mentions.get(i);
+      if (rnd.nextDouble() >= options.disagreement) {
+        tt.mentions.add(new EntityMention(tt.text, em.start, em.end, em.entity));
+        continue;
+      }
+      boolean isLeaf = i + 1 >= mentions.size() || mentions.get(i + 1).start >= em.end;
+      int lastSpace = tt.text.lastIndexOf(' ', em.end - 1);
+      switch (rnd.nextInt(3)) {
+        case 0:
+          // drop mention
+          break;
+        case 1:
+          tt.mentions.add(new EntityMention(tt.text, em.start, em.end, tt.id + "-E" + rnd.nextInt(entities)));
+          break;
+        default:
+          if (isLeaf && lastSpace > em.start) {
+            tt.mentions.add(new EntityMention(tt.text, em.start, lastSpace, em.entity));
+          } else {
+            tt.mentions.add(new EntityMention(tt.text, em.start, em.end, em.entity));
+          }
+      }
+    }
+
+    // spurious mentions on words outside of any mention
+    int covered = 0, pos = 0;
+    List<EntityMention> spurious = new ArrayList<>();
+    for (EntityMention em : mentions) {
+      addSpurious(rnd, tt, pos, em.start, entities, spurious);
+      covered = Math.max(covered, em.end);
+      pos = Math.max(pos, covered);
+    }
+    addSpurious(rnd, tt, pos, tt.text.length(), entities, spurious);
+    tt.mentions.addAll(spurious);
+    tt.mentions.sort(null);
+    return tt;
+  }
+
+  private void addSpurious(Random rnd, TaggedText tt, int from, int to, int entities, List<EntityMention> result) {
+    int start = from;
+    while (start < to) {
+      while (start < to && Character.isWhitespace(tt.text.charAt(start))) {
+        start++;
+      }
+      int end = start;
+      while (end < to && !Character.isWhitespace(tt.text.charAt(end))) {
+        end++;
+      }
+      if (start < end && rnd.nextDouble() < options.disagreement * options.mentionDensity) {
+        result.add(new EntityMention(tt.text, start, end, tt.id + "-E" + rnd.nextInt(entities)));
+      }
+      start = end;
+    }
+  }
+}
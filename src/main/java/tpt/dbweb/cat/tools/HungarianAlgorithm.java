@@ -0,0 +1,116 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.tools;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem (maximum weight bipartite matching) with the Hungarian algorithm (Kuhn-Munkres) in O(n^2 m).
+ * The weight matrix may be rectangular. Rows which cannot be assigned get -1.
+ *
+ * @author Thomas Rebele
+ */
+public class HungarianAlgorithm {
+
+  /**
+   * Find an assignment of rows to columns which maximizes the sum of the weights.
+   * @param weights weights[row][column], all rows must have the same length
+   * @return for every row the assigned column, or -1
+   */
+  public static int[] maximize(double[][] weights) {
+    int rows = weights.length;
+    int cols = rows == 0 ? 0 : weights[0].length;
+    if (rows == 0 || cols == 0) {
+      int[] result = new int[rows];
+      Arrays.fill(result, -1);
+      return result;
+    }
+
+    // the algorithm needs at least as many columns as rows, so transpose if necessary
+    boolean transposed = rows > cols;
+    int n = transposed ? cols : rows, m = transposed ? rows : cols;
+    double max = 0;
+    for (double[] row : weights) {
+      for (double w : row) {
+        max = Math.max(max, w);
+      }
+    }
+
+    // minimize cost = max - weight; arrays are 1-based, index 0 is a virtual row/column
+    double[] u = new double[n + 1], v = new double[m + 1];
+    int[] p = new int[m + 1], way = new int[m + 1];
+    double[] minv = new double[m + 1];
+    boolean[] used = new boolean[m + 1];
+    for (int i = 1; i <= n; i++) {
+      p[0] = i;
+      int j0 = 0;
+      Arrays.fill(minv, Double.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      do {
+        used[j0] = true;
+        int i0 = p[j0], j1 = 0;
+        double delta = Double.POSITIVE_INFINITY;
+        for (int j = 1; j <= m; j++) {
+          if (!used[j]) {
+            double w = transposed ? weights[j - 1][i0 - 1] : weights[i0 - 1][j - 1];
+            double cur = (max - w) - u[i0] - v[j];
+            if (cur < minv[j]) {
+              minv[j] = cur;
+              way[j] = j0;
+            }
+            if (minv[j] < delta) {
+              delta = minv[j];
+              j1 = j;
+            }
+          }
+        }
+        for (int j = 0; j <= m; j++) {
+          if (used[j]) {
+            u[p[j]] += delta;
+            v[j] -= delta;
+          } else {
+            minv[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while (p[j0] != 0);
+      do {
+        int j1 = way[j0];
+        p[j0] = p[j1];
+        j0 = j1;
+      } while (j0 != 0);
+    }
+
+    int[] result = new int[rows];
+    Arrays.fill(result, -1);
+    for (int j = 1; j <= m; j++) {
+      if (p[j] != 0) {
+        if (transposed) {
+          result[j - 1] = p[j] - 1;
+        } else {
+          result[p[j] - 1] = j - 1;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Sum of the weights of an assignment returned by {@link #maximize(double[][])}
+   * @param weights
+   * @param assignment
+   * @return
+   */
+  public static double sum(double[][] weights, int[] assignment) {
+    double sum = 0;
+    for (int i = 0; i < assignment.length; i++) {
+      if (assignment[i] >= 0) {
+        sum += weights[i][assignment[i]];
+      }
+    }
+    return sum;
+  }
+
+}
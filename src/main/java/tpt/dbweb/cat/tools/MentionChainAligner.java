@@ -5,11 +5,15 @@
 package tpt.dbweb.cat.tools;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.function.BinaryOperator;
 
 import org.slf4j.Logger;
@@ -18,8 +22,7 @@ import org.slf4j.LoggerFactory;
 import javatools.datatypes.PeekIterator;
 import tpt.dbweb.cat.datatypes.EntityMention;
 import tpt.dbweb.cat.datatypes.TaggedText;
-import tpt.dbweb.cat.datatypes.iterators.CompareIterator;
-import tpt.dbweb.cat.datatypes.iterators.ComparePair;
+import tpt.dbweb.cat.datatypes.iterators.BoundarySweep;
 
 /**
  * Collection of methods for finding similar entity mention chains between tagged texts.
@@ -31,13 +34,29 @@ public class MentionChainAligner {
 
   private final static Logger log = LoggerFactory.getLogger(MentionChainAligner.class);
 
+  /**
+   * Strategy for {@link MentionChainAligner#guessEntityMap(Alignment, TaggedText, TaggedText)}
+   */
+  public enum Alignment {
+    GREEDY, OPTIMAL
+  }
+
+  public Map<String, String> guessEntityMap(Alignment alignment, TaggedText tt0, TaggedText tt1) {
+    switch (alignment) {
+      case OPTIMAL:
+        return guessEntityMapOptimal(tt0, tt1);
+      default:
+        return guessEntityMapGreedy(tt0, tt1);
+    }
+  }
+
   public Map<String, String> guessEntityMapFirst(TaggedText tt0, TaggedText tt1) {
     Map<String, String> result = new HashMap<>();
 
-    CompareIterator ci = new CompareIterator(tt0.text, tt0.id, tt0.mentions, tt1.mentions);
-    for (ComparePair cp : Utility.iterable(ci)) {
-      EntityMention em0 = cp.getPrincipalMention(0);
-      EntityMention em1 = cp.getPrincipalMention(1);
+    BoundarySweep sweep = new BoundarySweep(tt0.text, tt0.id, Arrays.asList(tt0.mentions, tt1.mentions));
+    while (sweep.next()) {
+      EntityMention em0 = sweep.getPrincipalMention(0);
+      EntityMention em1 = sweep.getPrincipalMention(1);
 
       if (em0 != null && em0.entity != null && em1 != null && em1.entity != null) {
         result.put(em0.entity, em1.entity);
@@ -82,13 +101,84 @@ public class MentionChainAligner {
     return result;
   }
 
+  /**
+   * Calculate a one-to-one mapping from the entities in tt0 to those in tt1, which maximizes the sum of the overlap counts (see {@link #guessEntityMapGreedy(TaggedText, TaggedText)}).
+   * The entities are split into connected components of the overlap graph, and the Hungarian algorithm is run for every component.
+   * So the weight matrices stay small even for documents with thousands of chains.
+   * @param tt0
+   * @param tt1
+   * @return
+   */
+  public Map<String, String> guessEntityMapOptimal(TaggedText tt0, TaggedText tt1) {
+    Map<String, Map<String, Integer>> possibilitiesCount = getEntityMapPosibilitiesCount(tt0, tt1);
+
+    // number the entities, tt1 entities after the tt0 entities (sorted for deterministic results)
+    List<String> entities = new ArrayList<>(new TreeSet<>(possibilitiesCount.keySet()));
+    int rowCount = entities.size();
+    Map<String, Integer> entityIdx = new HashMap<>();
+    for (int row = 0; row < rowCount; row++) {
+      for (String entity1 : new TreeSet<>(possibilitiesCount.get(entities.get(row)).keySet())) {
+        if (!entityIdx.containsKey(entity1)) {
+          entityIdx.put(entity1, entities.size());
+          entities.add(entity1);
+        }
+      }
+    }
+
+    // connected components with union-find
+    int[] parent = new int[entities.size()];
+    for (int i = 0; i < parent.length; i++) {
+      parent[i] = i;
+    }
+    for (int row = 0; row < rowCount; row++) {
+      for (String entity1 : possibilitiesCount.get(entities.get(row)).keySet()) {
+        int a = find(parent, row), b = find(parent, entityIdx.get(entity1));
+        parent[Math.max(a, b)] = Math.min(a, b);
+      }
+    }
+    Map<Integer, List<Integer>> componentRows = new LinkedHashMap<>(), componentCols = new HashMap<>();
+    for (int i = 0; i < parent.length; i++) {
+      (i < rowCount ? componentRows : componentCols).computeIfAbsent(find(parent, i), x -> new ArrayList<>()).add(i);
+    }
+
+    Map<String, String> result = new HashMap<>();
+    for (Entry<Integer, List<Integer>> e : componentRows.entrySet()) {
+      List<Integer> rows = e.getValue(), cols = componentCols.get(e.getKey());
+      if (cols == null) {
+        continue;
+      }
+      double[][] weights = new double[rows.size()][cols.size()];
+      for (int r = 0; r < rows.size(); r++) {
+        Map<String, Integer> counts = possibilitiesCount.get(entities.get(rows.get(r)));
+        for (int c = 0; c < cols.size(); c++) {
+          weights[r][c] = counts.getOrDefault(entities.get(cols.get(c)), 0);
+        }
+      }
+      int[] assignment = HungarianAlgorithm.maximize(weights);
+      for (int r = 0; r < assignment.length; r++) {
+        if (assignment[r] >= 0 && weights[r][assignment[r]] > 0) {
+          result.put(entities.get(rows.get(r)), entities.get(cols.get(assignment[r])));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
   private Map<String, Map<String, Integer>> getEntityMapPosibilitiesCount(TaggedText tt0, TaggedText tt1) {
     Map<String, Map<String, Integer>> assignmentsCount = new HashMap<>();
 
-    CompareIterator ci = new CompareIterator(tt0.text, tt0.id, tt0.mentions, tt1.mentions);
-    for (ComparePair cp : Utility.iterable(ci)) {
-      EntityMention em0 = cp.getPrincipalMention(0);
-      EntityMention em1 = cp.getPrincipalMention(1);
+    BoundarySweep sweep = new BoundarySweep(tt0.text, tt0.id, Arrays.asList(tt0.mentions, tt1.mentions));
+    while (sweep.next()) {
+      EntityMention em0 = sweep.getPrincipalMention(0);
+      EntityMention em1 = sweep.getPrincipalMention(1);
 
       if (em0 != null && em0.entity != null && em1 != null && em1.entity != null) {
         assignmentsCount.compute(em0.entity, (tt0entity, map) -> {
@@ -0,0 +1,99 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.Compression;
+import tpt.dbweb.cat.io.SnapshotWriter;
+import tpt.dbweb.cat.io.TaggedTextFormats;
+
+/**
+ * Converts XML or CoNLL files (or any other format known by {@link TaggedTextFormats}) to binary snapshots, see {@link SnapshotWriter}.
+ * The snapshots can be used as input instead of the original files.
+ *
+ * @author Thomas Rebele
+ */
+public class Snapshot {
+
+  private final static Logger log = LoggerFactory.getLogger(Snapshot.class);
+
+  public static class Options {
+
+    @Parameter(names = "-h")
+    public boolean showHelp = false;
+
+    @Parameter(description = "Input files")
+    public List<String> input = new ArrayList<>();
+
+    @Parameter(names = "--out", description = "output file, only for a single input file; default: input file name with extension " + SnapshotWriter.EXTENSION)
+    public String out = null;
+  }
+
+  public static void main(String[] args) throws IOException {
+    Options options = new Options();
+    JCommander jc = new JCommander(options);
+    try {
+      jc.parse(args);
+    } catch (ParameterException e) {
+      log.error(e.getMessage());
+      jc.usage();
+      System.exit(0);
+    }
+    if (options.showHelp || options.input.size() == 0 || (options.out != null && options.input.size() > 1)) {
+      jc.usage();
+      System.exit(0);
+    }
+    for (String input : options.input) {
+      Path in = Paths.get(input);
+      Path out = options.out != null ? Paths.get(options.out) : getSnapshotPath(in);
+      log.info("writing snapshot of {} to {}", in, out);
+      convert(in, out);
+    }
+  }
+
+  /**
+   * @param input
+   * @return path of the input file, with the extension of the format replaced by {@value SnapshotWriter#EXTENSION}
+   */
+  public static Path getSnapshotPath(Path input) {
+    String name = Compression.stripExtension(input.getFileName().toString());
+    int dot = name.lastIndexOf('.');
+    if (dot > 0) {
+      name = name.substring(0, dot);
+    }
+    return input.resolveSibling(name + SnapshotWriter.EXTENSION);
+  }
+
+  /**
+   * Write a snapshot of a file, reading one article at a time
+   * @param input
+   * @param output
+   * @throws IOException
+   */
+  public static void convert(Path input, Path output) throws IOException {
+    PeekIterator<TaggedText> it = TaggedTextFormats.open(input);
+    try (SnapshotWriter writer = new SnapshotWriter(output)) {
+      while (it.hasNext()) {
+        writer.write(it.next());
+      }
+    } finally {
+      it.close();
+    }
+  }
+}
@@ -6,6 +6,7 @@ package tpt.dbweb.cat.tools;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -85,7 +86,7 @@ public class Utility {
 
   public static String readResourceAsString(String src) throws IOException {
     InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(src);
-    return IOUtils.toString(is);
+    return IOUtils.toString(is, StandardCharsets.UTF_8);
   }
 
   public static int getCommonPrefixLength(String first, String second) {
@@ -0,0 +1,219 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.io.CompareOutputManifest;
+import tpt.dbweb.cat.io.CompareOutputWriter;
+import tpt.dbweb.cat.tools.CorpusGenerator;
+
+public class CompareTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @return the texts of the articles of the output, without the attributes of the marks and the annotators
+   */
+  private static List<String> marks(Path output) throws IOException {
+    List<String> result = new ArrayList<>();
+    Matcher m = Pattern.compile("<content>.*?</content>", Pattern.DOTALL).matcher(new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+    while (m.find()) {
+      result.add(m.group().replaceAll("<mark [^>]*>", "<mark>").replaceAll("<annotator [^>]*/>", ""));
+    }
+    return result;
+  }
+
+  /**
+   * @return start and end of the mentions, together with the covered text
+   */
+  private static Set<String> spans(TaggedText tt) {
+    Set<String> result = new TreeSet<>();
+    for (EntityMention em : tt.mentions) {
+      result.add(em.start + "-" + em.end + " " + tt.text.substring(em.start, em.end));
+    }
+    return result;
+  }
+
+  /**
+   * A gold standard in XML and a system in CoNLL format, whose mentions have to be moved to the text of the gold standard
+   */
+  @Test
+  public void testConllSystem() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    CorpusGenerator.Options corpusOptions = TestCorpora.options(10, 200, 1);
+    corpusOptions.skipConll = false;
+    CorpusGenerator generator = new CorpusGenerator(corpusOptions);
+    List<Path> files = generator.write(dir);
+    Path conll = generator.getPath(dir, 1, ".conll");
+
+    Compare compare = new Compare(new Compare.Options());
+    List<List<TaggedText>> tts = compare.readFiles(Arrays.asList(files.get(0), files.get(1), conll));
+    for (int i = 0; i < tts.get(0).size(); i++) {
+      TaggedText gold = tts.get(0).get(i), xml = tts.get(1).get(i), fromConll = tts.get(2).get(i);
+      assertNotEquals(gold.text, fromConll.text);
+      TaggedText aligned = fromConll.alignTo(gold);
+      assertEquals(gold.text, aligned.text);
+      // the projected mentions have the offsets of the XML file; CoNLL files number the entities by themselves
+      assertEquals(spans(xml), spans(aligned));
+    }
+
+    // the output marks the same parts of the text as with an XML system
+    compare.compareFiles(Arrays.asList(files.get(0), files.get(1)), dir.resolve("xml.xml"), null);
+    compare.compareFiles(Arrays.asList(files.get(0), conll), dir.resolve("conll.xml"), null);
+    List<String> expected = marks(dir.resolve("xml.xml"));
+    assertEquals(10, expected.size());
+    assertEquals(expected, marks(dir.resolve("conll.xml")));
+  }
+
+  /**
+   * Iterators which are not read to the end get closed as well
+   */
+  @Test
+  public void testCloseIterators() throws IOException {
+    List<List<TaggedText>> tts = TestCorpora.generate(5, 100, 1);
+    List<PeekIterator<TaggedText>> its = new ArrayList<>();
+    List<Boolean> closeCalls = new ArrayList<>(Arrays.asList(false, false));
+    for (int i = 0; i < 2; i++) {
+      int idx = i;
+      // the system has fewer articles than the gold standard
+      Iterator<TaggedText> it = (i == 0 ? tts.get(i) : tts.get(i).subList(0, 3)).iterator();
+      its.add(new PeekIterator<TaggedText>() {
+
+        @Override
+        protected TaggedText internalNext() {
+          return it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public void close() {
+          closeCalls.set(idx, true);
+        }
+      });
+    }
+    new Compare(new Compare.Options()).compare(new ArrayList<>(its), Arrays.asList("gold", "system"), folder.getRoot().toPath().resolve("out.xml"),
+        null);
+    assertEquals(Arrays.asList(true, true), closeCalls);
+  }
+
+  /**
+   * If the comparison fails, the output does not get the end of the template, so that it does not look complete
+   */
+  @Test
+  public void testFailedComparison() throws IOException {
+    List<List<TaggedText>> tts = TestCorpora.generate(5, 100, 1);
+    Path dir = folder.getRoot().toPath();
+    for (int pageSize : new int[] { 0, 2 }) {
+      List<Iterator<TaggedText>> its = new ArrayList<>();
+      its.add(tts.get(0).iterator());
+      Iterator<TaggedText> system = tts.get(1).iterator();
+      its.add(new PeekIterator<TaggedText>() {
+
+        @Override
+        protected TaggedText internalNext() {
+          TaggedText tt = system.hasNext() ? system.next() : null;
+          if (tt == tts.get(1).get(3)) {
+            throw new IllegalStateException("cannot read article " + tt.id);
+          }
+          return tt;
+        }
+      });
+      Compare.Options options = new Compare.Options();
+      options.threads = 1;
+      options.pageSize = pageSize;
+      Path out = dir.resolve("out-" + pageSize + ".xml");
+      try {
+        new Compare(options).compare(its, Arrays.asList("gold", "system"), out, null);
+        fail("expected an IllegalStateException");
+      } catch (IllegalStateException e) {
+        // expected
+      }
+      String content = new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+      assertTrue(content.length() > 0);
+      assertFalse(content.endsWith(pageSize > 0 ? "</html>\n" : CompareOutputWriter.getTemplateParts()[1]));
+    }
+  }
+
+  /**
+   * Several threads write the same output as one thread. Large and small articles alternate, so that the comparisons of the articles
+   * finish in a different order than they are written.
+   */
+  @Test
+  public void testThreads() throws IOException {
+    List<List<TaggedText>> large = TestCorpora.generate(8, 3000, 1), small = TestCorpora.generate(24, 20, 1);
+    List<List<TaggedText>> corpus = Arrays.asList(new ArrayList<>(), new ArrayList<>());
+    for (int i = 0; i < large.get(0).size() + small.get(0).size(); i++) {
+      for (int annotator = 0; annotator < 2; annotator++) {
+        TaggedText tt = i % 4 == 0 ? large.get(annotator).get(i / 4) : small.get(annotator).get(i - i / 4 - 1);
+        tt.id = "article-" + i;
+        corpus.get(annotator).add(tt);
+      }
+    }
+    List<ComparisonResult> evaluations = Arrays.asList(new CoreferenceScorer().compare(corpus.get(0), corpus.get(1)));
+
+    Path dir = folder.getRoot().toPath();
+    for (int threads : new int[] { 1, 4 }) {
+      Compare.Options options = new Compare.Options();
+      options.threads = threads;
+      List<Iterator<TaggedText>> its = Arrays.asList(corpus.get(0).iterator(), corpus.get(1).iterator());
+      new Compare(options).compare(its, Arrays.asList("gold", "system"), dir.resolve(threads + ".xml"), evaluations);
+    }
+    String expected = new String(Files.readAllBytes(dir.resolve("1.xml")), StandardCharsets.UTF_8);
+    List<String> ids = new ArrayList<>();
+    Matcher m = Pattern.compile("<article id='([^']*)'>").matcher(expected);
+    while (m.find()) {
+      ids.add(m.group(1));
+    }
+    assertEquals(corpus.get(0).stream().map(tt -> tt.id).collect(Collectors.toList()), ids);
+    assertEquals(expected, new String(Files.readAllBytes(dir.resolve("4.xml")), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Mentions stored in parallel arrays give the same output and the same hashes of the incremental output
+   */
+  @Test
+  public void testCompactMentions() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    List<Path> files = TestCorpora.write(dir, 10, 200, 2);
+    for (boolean compact : new boolean[] { false, true }) {
+      Compare.Options options = new Compare.Options();
+      options.compactMentions = compact;
+      options.incremental = true;
+      new Compare(options).compareFiles(files, dir.resolve(compact + ".xml"), null);
+    }
+    assertEquals(new String(Files.readAllBytes(dir.resolve("false.xml")), StandardCharsets.UTF_8),
+        new String(Files.readAllBytes(dir.resolve("true.xml")), StandardCharsets.UTF_8));
+    assertEquals(new String(Files.readAllBytes(CompareOutputManifest.getPath(dir.resolve("false.xml"))), StandardCharsets.UTF_8)
+        .replace("false.xml", "true.xml"), new String(Files.readAllBytes(CompareOutputManifest.getPath(dir.resolve("true.xml"))), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,159 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.evaluation.EvaluationStatistics;
+import tpt.dbweb.cat.evaluation.ReferenceEvaluator;
+import tpt.dbweb.cat.tools.CorpusGenerator;
+
+/**
+ * Generated corpora and assertions which are shared by the tests
+ *
+ * @author Thomas Rebele
+ */
+public class TestCorpora {
+
+  /**
+   * @return options of a corpus with the given size; only the XML files are written
+   */
+  public static CorpusGenerator.Options options(int documents, int words, int annotators) {
+    CorpusGenerator.Options options = new CorpusGenerator.Options();
+    options.documents = documents;
+    options.words = words;
+    options.annotators = annotators;
+    options.skipConll = true;
+    return options;
+  }
+
+  /**
+   * @return list of annotators, the first is the gold standard
+   */
+  public static List<List<TaggedText>> generate(int documents, int words, int annotators) {
+    return new CorpusGenerator(options(documents, words, annotators)).generate();
+  }
+
+  /**
+   * Write the XML files of a corpus to a directory
+   * @return paths of the files, the first is the gold standard
+   */
+  public static List<Path> write(Path dir, int documents, int words, int annotators) throws IOException {
+    return new CorpusGenerator(options(documents, words, annotators)).write(dir);
+  }
+
+  /**
+   * @return options of an evaluator which does not need the perl scorer
+   */
+  public static ReferenceEvaluator.Options evaluatorOptions() {
+    ReferenceEvaluator.Options options = new ReferenceEvaluator.Options();
+    options.engine = ReferenceEvaluator.Engine.NATIVE;
+    return options;
+  }
+
+  /**
+   * Write a replacement of scorer.pl: recall and precision of every document and metric are the fractions of the lines of the key
+   * document which are equal to the line of the response document with the same id at the same position
+   * @return path of the executable script
+   */
+  public static Path stubScorer(Path dir) throws IOException {
+    Path scorer = dir.resolve("stub-scorer.pl");
+    String script = String.join("\n", "#!/usr/bin/env perl",
+        "my ($metric, $keyFile, $responseFile) = @ARGV;",
+        "sub docs {",
+        "  my (%docs, $id);",
+        "  open(my $f, '<', $_[0]) or die \"cannot open $_[0]\";",
+        "  while (<$f>) {",
+        "    if (/^#begin document (.*)$/) { $id = $1; $docs{$id} = []; }",
+        "    elsif (/^#end document/) { $id = undef; }",
+        "    elsif (defined $id) { push @{$docs{$id}}, $_; }",
+        "  }",
+        "  return \\%docs;",
+        "}",
+        "print \"version: 8.01\\n\";",
+        "for my $m ($metric eq 'all' ? qw(muc bcub ceafm ceafe blanc) : ($metric)) {",
+        "  # like CorScorer.pm, read the input files again for each metric",
+        "  my ($key, $response) = (docs($keyFile), docs($responseFile));",
+        "  print \"METRIC $m:\\n\";",
+        "  for my $id (sort keys %$key) {",
+        "    my @k = @{$key->{$id}};",
+        "    my @r = @{$response->{$id} || []};",
+        "    my $same = grep { $_ < @r && $k[$_] eq $r[$_] } 0 .. $#k;",
+        "    printf \"====> %s:\\nRecall: (%d / %d) 0%%\\tPrecision: (%d / %d) 0%%\\tF1: 0%%\\n\", $id, $same, scalar(@k), $same, scalar(@r) || 1;",
+        "  }",
+        "}",
+        "");
+    Files.write(scorer, script.getBytes(StandardCharsets.UTF_8));
+    scorer.toFile().setExecutable(true);
+    return scorer;
+  }
+
+  /**
+   * Assign the first mention of an article to another entity
+   */
+  public static void changeEntity(TaggedText tt) {
+    EntityMention em = tt.mentions.remove(0);
+    tt.mentions.add(new EntityMention(tt.text, em.start, em.end, "other"));
+  }
+
+  /**
+   * Check id, text and mentions of an article
+   */
+  public static void assertSameArticle(TaggedText expected, TaggedText actual) {
+    assertEquals(expected.id, actual.id);
+    assertEquals(expected.text, actual.text);
+    assertEquals(expected.mentions, actual.mentions);
+  }
+
+  /**
+   * Check an article like {@link #assertSameArticle(TaggedText, TaggedText)}, and additionally the info and minimal spans
+   */
+  public static void assertSameDetails(TaggedText expected, TaggedText actual) {
+    assertSameArticle(expected, actual);
+    assertEquals(expected.info(false), actual.info(false));
+    for (int i = 0; i < expected.mentions.size(); i++) {
+      assertEquals(String.valueOf(expected.mentions.get(i).min), String.valueOf(actual.mentions.get(i).min));
+      assertEquals(expected.mentions.get(i).info(false), actual.mentions.get(i).info(false));
+    }
+  }
+
+  public static void assertSameArticles(List<TaggedText> expected, List<TaggedText> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameArticle(expected.get(i), actual.get(i));
+    }
+  }
+
+  public static void assertSameDetails(List<TaggedText> expected, List<TaggedText> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameDetails(expected.get(i), actual.get(i));
+    }
+  }
+
+  /**
+   * Check that both results have the same documents, and the same recall and precision for every document and metric
+   */
+  public static void assertSameResult(ComparisonResult expected, ComparisonResult actual) {
+    assertEquals(expected.docidToMetricToResult.keySet(), actual.docidToMetricToResult.keySet());
+    for (String docid : expected.docidToMetricToResult.keySet()) {
+      for (String metric : CoreferenceScorer.METRICS) {
+        EvaluationStatistics e = expected.docidToMetricToResult.get(docid).get(metric), a = actual.docidToMetricToResult.get(docid).get(metric);
+        assertEquals(docid + " " + metric, e.getRecall(), a.getRecall(), 0);
+        assertEquals(docid + " " + metric, e.getPrecision(), a.getPrecision(), 0);
+      }
+    }
+  }
+}
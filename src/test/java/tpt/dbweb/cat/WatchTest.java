@@ -0,0 +1,136 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.io.TaggedTextFormats;
+import tpt.dbweb.cat.io.TaggedTextXMLWriter;
+
+public class WatchTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static Main.Options options(Path dir) {
+    Main.Options options = new Main.Options();
+    options.tmpDirectory = dir.toString();
+    options.refEvalOptions = TestCorpora.evaluatorOptions();
+    options.compareOptions.outputFile = dir.resolve("out.xml").toString();
+    return options;
+  }
+
+  /**
+   * Assign another entity to a mention of an article of a system
+   * @return the changed articles
+   */
+  private static List<TaggedText> change(Path file, int article) throws IOException {
+    List<TaggedText> system = TaggedTextFormats.open(file).asList();
+    TestCorpora.changeEntity(system.get(article));
+    try (TaggedTextXMLWriter writer = new TaggedTextXMLWriter(file)) {
+      system.forEach(tt -> writer.write(null, tt));
+    }
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+    return system;
+  }
+
+  private static float microF1(ComparisonResult evaluation) {
+    return evaluation.combine().docidToMetricToResult.get("micro").get(CoreferenceScorer.MUC).getF1();
+  }
+
+  @Test
+  public void testUpdate() throws IOException {
+    Path dir = folder.newFolder().toPath();
+    List<Path> files = TestCorpora.write(dir, 10, 100, 2);
+    Watch watch = new Watch(options(dir), files);
+    assertTrue(watch.update());
+    assertEquals(10, watch.getEvaluatedDocuments());
+    assertFalse(watch.update());
+
+    // change one article of a system
+    List<TaggedText> system = change(files.get(1), 4);
+    assertTrue(watch.update());
+    assertEquals(1, watch.getEvaluatedDocuments());
+
+    // same metrics as evaluating everything again
+    List<TaggedText> gold = TaggedTextFormats.open(files.get(0)).asList();
+    assertEquals(microF1(new CoreferenceScorer().compare(gold, system)), microF1(watch.getEvaluations().get(0)), 1e-6);
+    float aggregated = new CoreferenceScorer().compare(gold, system).combine().docidToMetricToResult.get("macro").get(CoreferenceScorer.MUC).getRecall();
+    assertEquals(aggregated, watch.getAggregators().get(0).getMacroRecall(CoreferenceScorer.MUC), 1e-6);
+
+    // the output is the same as the output of a complete run
+    Path expectedOutput = dir.resolve("expected.xml");
+    Compare compare = new Compare(new Compare.Options());
+    compare.compareFiles(files, expectedOutput, watch.getEvaluations());
+    assertEquals(FileUtils.readFileToString(expectedOutput.toFile(), StandardCharsets.UTF_8),
+        FileUtils.readFileToString(dir.resolve("out.xml").toFile(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRun() throws Exception {
+    Path dir = folder.newFolder().toPath();
+    List<Path> files = TestCorpora.write(dir, 10, 100, 1);
+    Main.Options options = options(dir);
+    options.watchDelay = 100;
+    Watch watch = new Watch(options, files);
+    Thread thread = new Thread(() -> {
+      try {
+        watch.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    thread.start();
+    try {
+      List<ComparisonResult> first = waitForEvaluations(watch, null);
+      assertEquals(10, watch.getEvaluatedDocuments());
+
+      // the watcher notices the change and evaluates the changed article again
+      List<TaggedText> system = change(files.get(1), 7);
+      List<ComparisonResult> next = waitForEvaluations(watch, first);
+      assertEquals(1, watch.getEvaluatedDocuments());
+      List<TaggedText> gold = TaggedTextFormats.open(files.get(0)).asList();
+      assertEquals(microF1(new CoreferenceScorer().compare(gold, system)), microF1(next.get(0)), 1e-6);
+    } finally {
+      thread.interrupt();
+      thread.join(10000);
+    }
+    assertFalse(thread.isAlive());
+  }
+
+  /**
+   * Wait until the watcher has evaluated the files again
+   * @return the new evaluations
+   */
+  private static List<ComparisonResult> waitForEvaluations(Watch watch, List<ComparisonResult> previous) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30000;
+    while (System.currentTimeMillis() < deadline) {
+      List<ComparisonResult> evaluations = watch.getEvaluations();
+      if (!evaluations.isEmpty() && evaluations != previous) {
+        return evaluations;
+      }
+      Thread.sleep(50);
+    }
+    throw new AssertionError("no evaluation within 30 seconds");
+  }
+}
@@ -0,0 +1,70 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.datatypes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompactMentionsTest {
+
+  private static final String TEXT = "abc def ghi jkl mno pqr stu vwx";
+
+  private static List<EntityMention> mentions() {
+    EntityMention withMin = new EntityMention(TEXT, 4, 11, "2");
+    withMin.min = new TextSpan(TEXT, 8, 11);
+    withMin.info().put("type", "PER");
+    return new ArrayList<>(Arrays.asList(new EntityMention(TEXT, 12, 15, "1"), withMin, new EntityMention(TEXT, 0, 3, "1"),
+        new EntityMention(TEXT, 4, 11, "3"), new EntityMention(TEXT, 4, 7, "NME")));
+  }
+
+  private static void assertSameMentions(List<EntityMention> expected, List<EntityMention> actual) {
+    assertEquals(expected, actual);
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(String.valueOf(expected.get(i).min), String.valueOf(actual.get(i).min));
+      assertEquals(expected.get(i).info(false), actual.get(i).info(false));
+    }
+  }
+
+  @Test
+  public void testSameAsList() {
+    List<EntityMention> expected = mentions();
+    CompactMentions cm = CompactMentions.of(TEXT, expected);
+    assertSameMentions(expected, cm);
+    assertEquals(cm.getEntityId(0), cm.getEntityId(2));
+    assertNull(cm.getInfo(0));
+
+    expected.sort(null);
+    cm.sort(null);
+    assertSameMentions(expected, cm);
+
+    expected.removeIf(em -> em.entity.equals("NME"));
+    cm.removeIf(em -> em.entity.equals("NME"));
+    assertSameMentions(expected, cm);
+    assertEquals("PER", cm.getInfo(1).get("type"));
+
+    expected.removeIf(em -> em.entity.equals("1"));
+    assertTrue(cm.removeIfEntity(entity -> entity.equals("1")));
+    assertFalse(cm.removeIfEntity(entity -> entity.equals("1")));
+    assertSameMentions(expected, cm);
+  }
+
+  @Test
+  public void testMinMentions() {
+    List<EntityMention> expected = new ArrayList<>();
+    for (EntityMention em : mentions()) {
+      expected.add(em.getMinMention());
+    }
+    expected.sort(null);
+    assertSameMentions(expected, CompactMentions.of(TEXT, mentions()).toMinMentions());
+  }
+}
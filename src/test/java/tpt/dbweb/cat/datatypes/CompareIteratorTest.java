@@ -7,8 +7,17 @@ package tpt.dbweb.cat.datatypes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 
+import tpt.dbweb.cat.datatypes.iterators.BoundarySweep;
 import tpt.dbweb.cat.datatypes.iterators.CompareIterator;
 import tpt.dbweb.cat.datatypes.iterators.ComparePair;
 import tpt.dbweb.cat.datatypes.iterators.EntityMentionPos;
@@ -141,4 +150,90 @@ public class CompareIteratorTest {
 
   }
 
+  /**
+   * Random mentions which are nested, overlap, end before they start or lie after the end of the text (but have no
+   * negative offsets, which the old iterator rejected)
+   * @return for every case the mention lists of the annotators; the first annotator has at least one mention
+   */
+  static List<List<List<EntityMention>>> generateCases() {
+    Random random = new Random(42);
+    List<List<List<EntityMention>>> cases = new ArrayList<>();
+    for (int c = 0; c < 50; c++) {
+      StringBuilder sb = new StringBuilder();
+      int length = 20 + random.nextInt(30);
+      while (sb.length() < length) {
+        sb.append(random.nextInt(4) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+      }
+      String text = sb.toString();
+      List<List<EntityMention>> annotators = new ArrayList<>();
+      for (int i = 0, count = 1 + random.nextInt(4); i < count; i++) {
+        List<EntityMention> mentions = new ArrayList<>();
+        for (int j = 0, mentionCount = random.nextInt(12) + (i == 0 ? 1 : 0); j < mentionCount; j++) {
+          int start = random.nextInt(length + 5), end = Math.max(0, start - 3 + random.nextInt(15));
+          mentions.add(new EntityMention(text, start, end, "m" + i + "-" + j));
+        }
+        annotators.add(mentions);
+      }
+      cases.add(annotators);
+    }
+    return cases;
+  }
+
+  /**
+   * @return one line with the span of the pair and for every annotator the mentions and their position types
+   */
+  static String describe(ComparePair pair) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(pair.start).append(' ').append(pair.end);
+    for (List<EntityMentionPos> emps : pair.emps) {
+      sb.append(" |");
+      for (EntityMentionPos emp : emps) {
+        sb.append(' ').append(emp.em.start).append('-').append(emp.em.end).append(':').append(emp.em.entity).append(':').append(emp.posType);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Compare with the pairs of the implementation of CompareIterator before {@link BoundarySweep}, recorded in
+   * src/test/resources/compare-iterator-pairs.txt (one line per pair, cases separated by "#" lines)
+   */
+  @Test
+  public void testBoundarySweep() throws IOException {
+    List<List<String>> recorded = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(getClass().getResourceAsStream("/compare-iterator-pairs.txt"), StandardCharsets.UTF_8))) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.startsWith("#")) {
+          recorded.add(new ArrayList<>());
+        } else {
+          recorded.get(recorded.size() - 1).add(line);
+        }
+      }
+    }
+
+    List<List<List<EntityMention>>> cases = generateCases();
+    assertEquals(cases.size(), recorded.size());
+    for (int c = 0; c < cases.size(); c++) {
+      List<List<EntityMention>> ems = cases.get(c);
+      String text = ems.get(0).get(0).text;
+      List<String> pairs = new ArrayList<>();
+      CompareIterator it = new CompareIterator(text, "case " + c, ems);
+      while (it.hasNext()) {
+        pairs.add(describe(it.next()));
+      }
+      assertEquals("case " + c, recorded.get(c), pairs);
+
+      pairs.clear();
+      BoundarySweep sweep = new BoundarySweep(text, "case " + c, ems);
+      while (sweep.next()) {
+        ComparePair pair = sweep.toComparePair();
+        pairs.add(describe(pair));
+        for (int i = 0; i < ems.size(); i++) {
+          assertEquals(pair.getPrincipalMention(i), sweep.getPrincipalMention(i));
+        }
+      }
+      assertEquals("case " + c, recorded.get(c), pairs);
+    }
+  }
 }
@@ -0,0 +1,148 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.TaggedTextXMLReader;
+
+public class CoreferenceScorerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final double DELTA = 0.005;
+
+  /**
+   * Create a tagged text with words a b c ... and assign each word to the entity given by its index
+   */
+  private static TaggedText tt(String... entities) {
+    return tt(false, entities);
+  }
+
+  /**
+   * Create a tagged text with words aaa bbb ccc ... and assign each word to the entity given by its index
+   * @param withinWords the mentions only cover the middle letter of their word
+   */
+  private static TaggedText tt(boolean withinWords, String... entities) {
+    TaggedText tt = new TaggedText();
+    tt.id = "doc";
+    StringBuilder sb = new StringBuilder();
+    List<int[]> spans = new ArrayList<>();
+    for (int i = 0; i < entities.length; i++) {
+      spans.add(withinWords ? new int[] { sb.length() + 1, sb.length() + 2 } : new int[] { sb.length(), sb.length() + 3 });
+      sb.append(StringUtils.repeat((char) ('a' + i), 3)).append(' ');
+    }
+    tt.text = sb.toString();
+    for (int i = 0; i < entities.length; i++) {
+      if (entities[i] != null) {
+        tt.mentions.add(new EntityMention(tt.text, spans.get(i)[0], spans.get(i)[1], entities[i]));
+      }
+    }
+    return tt;
+  }
+
+  private static void assertMetric(Map<String, EvaluationStatistics> result, String metric, double recall, double precision) {
+    EvaluationStatistics es = result.get(metric);
+    assertNotNull(metric, es);
+    assertEquals(metric + " recall", recall, es.getRecall(), DELTA);
+    assertEquals(metric + " precision", precision, es.getPrecision(), DELTA);
+  }
+
+  /**
+   * Example of Pradhan et al. (2014): key {a,b,c} {d,e,f,g}, response {a,b} {c,d} {f,g,h,i}
+   */
+  @Test
+  public void testPaperExample() {
+    TaggedText key = tt("1", "1", "1", "2", "2", "2", "2", null, null);
+    TaggedText response = tt("x", "x", "y", "y", null, "z", "z", "z", "z");
+    assertPaperExample(new CoreferenceScorer().score(key, response));
+  }
+
+  /**
+   * Mentions are scored by the words they cover, like scorer.pl does with CoNLL files
+   */
+  @Test
+  public void testPaperExampleWithinWords() {
+    TaggedText key = tt("1", "1", "1", "2", "2", "2", "2", null, null);
+    TaggedText response = tt(true, "x", "x", "y", "y", null, "z", "z", "z", "z");
+    assertPaperExample(new CoreferenceScorer().score(key, response));
+    assertPaperExample(new CoreferenceScorer().compare(Arrays.asList(key), Arrays.asList(response)).docidToMetricToResult.get("doc"));
+  }
+
+  /**
+   * Values of the example computed by hand, see Pradhan et al. (2014)
+   */
+  private static void assertPaperExample(Map<String, EvaluationStatistics> result) {
+    assertMetric(result, CoreferenceScorer.MUC, 0.40, 0.40);
+    assertMetric(result, CoreferenceScorer.BCUB, 35. / 12 / 7, 0.50);
+    assertMetric(result, CoreferenceScorer.CEAFM, 4. / 7, 0.50);
+    assertMetric(result, CoreferenceScorer.CEAFE, 0.65, 1.3 / 3);
+    assertMetric(result, CoreferenceScorer.BLANC, (2. / 9 + 8. / 12) / 2, (2. / 8 + 8. / 20) / 2);
+  }
+
+  @Test
+  public void testIdentical() {
+    TaggedText key = tt("1", "1", "2", null, "3", "2");
+    Map<String, EvaluationStatistics> result = new CoreferenceScorer().score(key, key);
+    for (String metric : CoreferenceScorer.METRICS) {
+      assertMetric(result, metric, 1, 1);
+    }
+  }
+
+  @Test
+  public void testEmptyResponse() {
+    TaggedText key = tt("1", "1", "2");
+    ComparisonResult result = new CoreferenceScorer().compare(Arrays.asList(key), new ArrayList<>());
+    Map<String, EvaluationStatistics> doc = result.docidToMetricToResult.get("doc");
+    for (String metric : CoreferenceScorer.METRICS) {
+      assertMetric(doc, metric, 0, 0);
+    }
+  }
+
+  /**
+   * Compare with the output of lib/reference-coreference-scorers, if it is available
+   */
+  @Test
+  public void testParityWithScorer() throws IOException {
+    Assume.assumeTrue(Files.exists(Paths.get("lib/reference-coreference-scorers/scorer.pl")));
+    Path tmpDir = folder.getRoot().toPath();
+    TaggedTextXMLReader reader = new TaggedTextXMLReader();
+    List<TaggedText> gold = reader.getTaggedText(Paths.get("doc/examples/tutorial.xml"));
+
+    for (String file : new String[] { "doc/examples/tutorial-1.xml", "doc/examples/tutorial-2.xml" }) {
+      List<TaggedText> cmp = reader.getTaggedText(Paths.get(file));
+      ReferenceEvaluator.Options perlOptions = new ReferenceEvaluator.Options();
+      perlOptions.engine = ReferenceEvaluator.Engine.PERL;
+      ComparisonResult perl = new ReferenceEvaluator(perlOptions).compare(gold, cmp, tmpDir);
+      ComparisonResult nat = new CoreferenceScorer().compare(gold, cmp);
+
+      for (String docid : perl.docidToMetricToResult.keySet()) {
+        for (String metric : CoreferenceScorer.METRICS) {
+          EvaluationStatistics expected = perl.docidToMetricToResult.get(docid).get(metric);
+          assertMetric(nat.docidToMetricToResult.get(docid), metric, expected.getRecall(), expected.getPrecision());
+        }
+      }
+    }
+  }
+}
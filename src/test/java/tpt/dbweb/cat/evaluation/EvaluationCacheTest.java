@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static tpt.dbweb.cat.TestCorpora.assertSameResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class EvaluationCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCache() throws IOException {
+    List<List<TaggedText>> corpus = TestCorpora.generate(20, 100, 1);
+    List<TaggedText> gold = corpus.get(0), cmp = corpus.get(1);
+    Path dir = folder.getRoot().toPath();
+    ReferenceEvaluator.Options options = TestCorpora.evaluatorOptions();
+    options.cacheDirectory = dir.toString();
+    options.cacheSize = 15;
+    ComparisonResult expected = new CoreferenceScorer().compare(gold, cmp);
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, dir));
+    // some documents were evicted
+    EvaluationCache cache = new EvaluationCache(dir, options.cacheSize);
+    assertTrue(cache.size() <= options.cacheSize);
+
+    // results from the cache
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, dir));
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, dir));
+
+    // a changed document gets evaluated again
+    TaggedText changed = cmp.get(0);
+    String key = EvaluationCache.key("version", gold.get(0), changed);
+    TestCorpora.changeEntity(changed);
+    assertNotEquals(key, EvaluationCache.key("version", gold.get(0), changed));
+    assertSameResult(new CoreferenceScorer().compare(gold, cmp), new ReferenceEvaluator(options).compare(gold, cmp, dir));
+
+    // entries survive a round trip
+    Map<String, EvaluationStatistics> metrics = expected.docidToMetricToResult.get(gold.get(1).id);
+    cache.put("ab", gold.get(1).id, metrics);
+    assertEquals(metrics.get(CoreferenceScorer.MUC).getF1(), cache.get("ab").get(CoreferenceScorer.MUC).getF1(), 0);
+  }
+
+  /**
+   * The documents which are not in the cache are evaluated in batches; the system lacks some documents
+   */
+  @Test
+  public void testCacheWithBatches() throws IOException {
+    List<List<TaggedText>> corpus = TestCorpora.generate(20, 100, 1);
+    List<TaggedText> gold = corpus.get(0), cmp = corpus.get(1);
+    cmp.remove(15);
+    cmp.remove(3);
+    Path dir = folder.getRoot().toPath();
+    ReferenceEvaluator.Options options = new ReferenceEvaluator.Options();
+    options.scorer = TestCorpora.stubScorer(dir).toString();
+    ComparisonResult expected = new ReferenceEvaluator(options).compare(gold, cmp, dir);
+    assertEquals(0, expected.docidToMetricToResult.get(gold.get(3).id).get(CoreferenceScorer.MUC).getRecall(), 0);
+    assertEquals(1, expected.docidToMetricToResult.get(gold.get(4).id).get(CoreferenceScorer.MUC).getRecall(), 0);
+
+    options.singleFile = false;
+    options.scorerBatchSize = 3;
+    options.cacheDirectory = dir.resolve("cache").toString();
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, dir));
+
+    // some documents from the cache, the others in batches
+    TestCorpora.changeEntity(cmp.get(10));
+    TestCorpora.changeEntity(cmp.get(0));
+    options.singleFile = true;
+    options.cacheDirectory = null;
+    expected = new ReferenceEvaluator(options).compare(gold, cmp, dir);
+    options.singleFile = false;
+    options.cacheDirectory = dir.resolve("cache").toString();
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, dir));
+  }
+}
@@ -0,0 +1,80 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.Fraction;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class MetricAggregatorTest {
+
+  private static void assertSameAverages(ComparisonResult expected, MetricAggregator actual) {
+    for (String metric : expected.docidToMetricToResult.get(MetricAggregator.MACRO).keySet()) {
+      EvaluationStatistics macro = expected.docidToMetricToResult.get(MetricAggregator.MACRO).get(metric);
+      EvaluationStatistics micro = expected.docidToMetricToResult.get(MetricAggregator.MICRO).get(metric);
+      assertEquals(macro.getRecall(), actual.getMacroRecall(metric), 1e-6);
+      assertEquals(macro.getPrecision(), actual.getMacroPrecision(metric), 1e-6);
+      assertEquals(micro.getRecall(), actual.getMicroRecall(metric), 1e-6);
+      assertEquals(micro.getPrecision(), actual.getMicroPrecision(metric), 1e-6);
+    }
+  }
+
+  /**
+   * Combine the results with addMacro and addMicro, one document after the other
+   */
+  private static ComparisonResult combineSequentially(List<Map<String, EvaluationStatistics>> docs) {
+    ComparisonResult result = new ComparisonResult();
+    for (Map<String, EvaluationStatistics> doc : docs) {
+      for (Map.Entry<String, EvaluationStatistics> entry : doc.entrySet()) {
+        result.docidToMetricToResult.computeIfAbsent(MetricAggregator.MACRO, k -> new TreeMap<>())
+            .computeIfAbsent(entry.getKey(), k -> new ValueEvaluationStatistics()).addMacro(entry.getValue());
+        result.docidToMetricToResult.computeIfAbsent(MetricAggregator.MICRO, k -> new TreeMap<>())
+            .computeIfAbsent(entry.getKey(), k -> new ValueEvaluationStatistics()).addMicro(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testAddRemove() {
+    List<List<TaggedText>> corpus = TestCorpora.generate(50, 100, 1);
+    ComparisonResult evaluation = new CoreferenceScorer().compare(corpus.get(0), corpus.get(1));
+    List<Map<String, EvaluationStatistics>> docs = new ArrayList<>(evaluation.docidToMetricToResult.values());
+    // a document with empty denominators
+    Map<String, EvaluationStatistics> empty = new TreeMap<>();
+    empty.put(CoreferenceScorer.MUC, new ValueEvaluationStatistics(Fraction.EMPTY, new Fraction(0, 2)));
+    docs.add(empty);
+
+    MetricAggregator aggregator = new MetricAggregator();
+    docs.forEach(aggregator::add);
+    ComparisonResult expected = combineSequentially(docs);
+    assertSameAverages(expected, aggregator);
+    assertSameAverages(aggregator.toComparisonResult(), aggregator);
+    assertEquals(docs.size(), aggregator.getDocuments(CoreferenceScorer.MUC));
+
+    // remove some documents
+    List<Map<String, EvaluationStatistics>> rest = new ArrayList<>(docs);
+    for (int i = 0; i < docs.size(); i += 3) {
+      aggregator.remove(docs.get(i));
+      rest.remove(docs.get(i));
+    }
+    assertSameAverages(combineSequentially(rest), aggregator);
+
+    // remove all documents
+    rest.forEach(aggregator::remove);
+    assertEquals(0, aggregator.getDocuments(CoreferenceScorer.MUC));
+    assertEquals(0, aggregator.getMacroRecall(CoreferenceScorer.MUC), 0);
+    assertEquals(0, aggregator.getMicroPrecision(CoreferenceScorer.MUC), 0);
+  }
+}
@@ -0,0 +1,166 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.evaluation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+import static tpt.dbweb.cat.TestCorpora.assertSameResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.Compare;
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.tools.CorpusGenerator;
+
+public class ReferenceEvaluatorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testCompareSystems() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    List<Path> files = TestCorpora.write(dir, 20, 100, 4);
+
+    ReferenceEvaluator.Options options = TestCorpora.evaluatorOptions();
+    options.evalThreads = 3;
+    ReferenceEvaluator evaluator = new ReferenceEvaluator(options);
+    List<ComparisonResult> results = evaluator.compareFiles(files.get(0), files.subList(1, files.size()), dir.resolve("tmp"));
+
+    // same results in the same order as evaluating one system after the other
+    assertEquals(files.size() - 1, results.size());
+    for (int i = 1; i < files.size(); i++) {
+      assertSameResult(evaluator.compareFiles(files.get(0), files.get(i), dir.resolve("tmp")), results.get(i - 1));
+    }
+
+    // the same articles for the evaluation and the comparison
+    Compare compare = new Compare(new Compare.Options());
+    List<List<TaggedText>> tts = compare.readFiles(files);
+    List<String> names = Arrays.asList("gold", "1", "2", "3", "4");
+    List<ComparisonResult> fused = evaluator.compare(tts.get(0), names.get(0), tts.subList(1, tts.size()), names.subList(1, names.size()),
+        dir.resolve("tmp"));
+    for (int i = 0; i < results.size(); i++) {
+      assertSameResult(results.get(i), fused.get(i));
+    }
+    compare.compareFiles(files, tts, dir.resolve("fused.xml"), fused);
+    compare.compareFiles(files, dir.resolve("streamed.xml"), results);
+    assertEquals(FileUtils.readFileToString(dir.resolve("streamed.xml").toFile(), StandardCharsets.UTF_8),
+        FileUtils.readFileToString(dir.resolve("fused.xml").toFile(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * The articles are split into batches, which are evaluated by a pool of scorer processes
+   */
+  @Test
+  public void testBatches() throws IOException {
+    List<List<TaggedText>> corpus = TestCorpora.generate(23, 100, 1);
+    List<TaggedText> gold = corpus.get(0), cmp = corpus.get(1);
+    TestCorpora.changeEntity(cmp.get(5));
+    TestCorpora.changeEntity(cmp.get(22));
+    Path dir = folder.getRoot().toPath(), tmp = dir.resolve("tmp");
+    ReferenceEvaluator.Options options = new ReferenceEvaluator.Options();
+    options.scorer = TestCorpora.stubScorer(dir).toString();
+    ComparisonResult expected = new ReferenceEvaluator(options).compare(gold, cmp, tmp);
+    assertEquals(gold.size(), expected.docidToMetricToResult.size());
+    assertNotEquals(1, expected.docidToMetricToResult.get(gold.get(22).id).get(CoreferenceScorer.MUC).getRecall(), 0);
+
+    // the results of all batches are merged, and their files are removed
+    options.singleFile = false;
+    options.scorerBatchSize = 4;
+    options.scorerThreads = 2;
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, tmp));
+    try (Stream<Path> files = Files.list(tmp)) {
+      assertEquals(0, files.count());
+    }
+
+    // every batch has its own files in a directory of the evaluation
+    options.removeTmpFiles = false;
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, tmp));
+    try (Stream<Path> files = Files.walk(tmp)) {
+      assertEquals(6 * 3, files.filter(Files::isRegularFile).count());
+    }
+  }
+
+  /**
+   * The scorer reads the articles from named pipes. It opens its input once per metric, which would block on a pipe that has
+   * already been read.
+   */
+  @Test(timeout = 60000)
+  public void testPipe() throws IOException {
+    Assume.assumeTrue(Files.isExecutable(Paths.get("/usr/bin/mkfifo")) || Files.isExecutable(Paths.get("/bin/mkfifo")));
+    List<List<TaggedText>> corpus = TestCorpora.generate(20, 100, 1);
+    List<TaggedText> gold = corpus.get(0), cmp = corpus.get(1);
+    // the CoNLL output is UTF-8, regardless of the platform encoding
+    gold.get(2).id = cmp.get(2).id = "\u00e9t\u00e9";
+    TestCorpora.changeEntity(cmp.get(3));
+    Path dir = folder.getRoot().toPath(), tmp = dir.resolve("tmp");
+    ReferenceEvaluator.Options options = new ReferenceEvaluator.Options();
+    options.scorer = TestCorpora.stubScorer(dir).toString();
+    ComparisonResult expected = new ReferenceEvaluator(options).compare(gold, cmp, tmp);
+
+    options.pipe = true;
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, tmp));
+    options.singleFile = false;
+    options.scorerBatchSize = 7;
+    assertSameResult(expected, new ReferenceEvaluator(options).compare(gold, cmp, tmp));
+
+    // a scorer which exits without reading the pipes fails the evaluation
+    Path failing = dir.resolve("failing-scorer.sh");
+    Files.write(failing, "#!/bin/sh\nexit 1\n".getBytes(StandardCharsets.UTF_8));
+    failing.toFile().setExecutable(true);
+    options.scorer = failing.toString();
+    try {
+      new ReferenceEvaluator(options).compare(gold, cmp, tmp);
+      fail("expected an IOException");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * CoNLL files don't contain the original whitespace, so their mentions have to be moved to the text of the gold standard
+   */
+  @Test
+  public void testMixedFormats() throws IOException {
+    Path dir = folder.getRoot().toPath();
+    CorpusGenerator.Options corpusOptions = TestCorpora.options(10, 200, 2);
+    corpusOptions.skipConll = false;
+    corpusOptions.disagreement = 0;
+    CorpusGenerator generator = new CorpusGenerator(corpusOptions);
+    List<Path> files = generator.write(dir);
+    Path conll = generator.getPath(dir, 1, ".conll");
+
+    ReferenceEvaluator evaluator = new ReferenceEvaluator(TestCorpora.evaluatorOptions());
+    ComparisonResult xmlResult = evaluator.compareFiles(files.get(0), files.get(1), dir.resolve("tmp"));
+    ComparisonResult conllResult = evaluator.compareFiles(files.get(0), conll, dir.resolve("tmp"));
+    assertSameResult(xmlResult, conllResult);
+    for (String metric : CoreferenceScorer.METRICS) {
+      assertEquals(metric, 1, conllResult.combine().docidToMetricToResult.get("micro").get(metric).getF1(), 1e-6);
+    }
+
+    // the same for several systems, and for articles which have been read already
+    List<ComparisonResult> results = evaluator.compareFiles(files.get(0), Arrays.asList(conll, generator.getPath(dir, 2, ".conll")),
+        dir.resolve("tmp"));
+    assertSameResult(xmlResult, results.get(0));
+    assertSameResult(evaluator.compareFiles(files.get(0), files.get(2), dir.resolve("tmp")), results.get(1));
+    List<List<TaggedText>> tts = new Compare(new Compare.Options()).readFiles(Arrays.asList(files.get(0), conll));
+    assertSameResult(xmlResult, evaluator.compare(tts.get(0), tts.get(1), dir.resolve("tmp")));
+  }
+}
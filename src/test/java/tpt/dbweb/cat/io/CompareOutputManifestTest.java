@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.Compare;
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class CompareOutputManifestTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static List<List<TaggedText>> corpus(boolean change) {
+    List<List<TaggedText>> corpus = TestCorpora.generate(10, 100, 1);
+    if (change) {
+      TestCorpora.changeEntity(corpus.get(1).get(3));
+    }
+    return corpus;
+  }
+
+  private static String compare(boolean incremental, boolean change, Path out) throws IOException {
+    Compare.Options options = new Compare.Options();
+    options.incremental = incremental;
+    options.threads = 2;
+    List<Iterator<TaggedText>> its = corpus(change).stream().map(List::iterator).collect(Collectors.toList());
+    new Compare(options).compare(its, Arrays.asList("gold", "system"), out, null);
+    return new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testIncremental() throws IOException {
+    Path dir = folder.newFolder().toPath();
+    Path out = dir.resolve("compare.xml");
+    String expected = compare(false, false, dir.resolve("expected.xml"));
+    assertEquals(expected, compare(true, false, out));
+    CompareOutputManifest manifest = CompareOutputManifest.read(out);
+    assertNotNull(manifest);
+    assertEquals(10, manifest.articles.size());
+    for (CompareOutputManifest.Article article : manifest.articles) {
+      byte[] bytes = Arrays.copyOfRange(Files.readAllBytes(out), (int) article.offset, (int) (article.offset + article.length));
+      assertTrue(new String(bytes, StandardCharsets.UTF_8).startsWith("  <article id='" + article.id + "'>"));
+    }
+
+    // nothing changed
+    assertEquals(expected, compare(true, false, out));
+
+    // only the changed article gets a new hash
+    String changed = compare(true, true, out);
+    assertEquals(compare(false, true, dir.resolve("expected.xml")), changed);
+    CompareOutputManifest next = CompareOutputManifest.read(out);
+    for (int i = 0; i < manifest.articles.size(); i++) {
+      assertEquals(i != 3, manifest.articles.get(i).hash.equals(next.articles.get(i).hash));
+    }
+  }
+}
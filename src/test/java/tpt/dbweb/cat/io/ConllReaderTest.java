@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import javatools.datatypes.PeekIterator;
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class ConllReaderTest {
+
+  @Test
+  public void testRows() throws IOException {
+    String conll = "ignored (9)\n#begin document doc\nThe (1\n  president\t1)|(2)\r\n\nof -\n#end document\n";
+    PeekIterator<TaggedText> it = ConllReader.getIterator(new StringReader(conll), 0, "test");
+    TaggedText tt = it.next();
+    assertFalse(it.hasNext());
+    assertEquals("doc", tt.id);
+    // a row starting with whitespace has an empty first column
+    assertEquals("The \nof", tt.text);
+    assertEquals(2, tt.mentions.size());
+    assertEquals(new EntityMention(tt.text, 0, 4, "1"), tt.mentions.get(0));
+    assertEquals(new EntityMention(tt.text, 4, 4, "2"), tt.mentions.get(1));
+
+    Map<String, List<List<String>>> tables = ConllReader.readTables(new StringReader(conll), "test");
+    assertEquals(Collections.singleton("doc"), tables.keySet());
+    assertEquals(Arrays.asList(Arrays.asList("The", "(1"), Arrays.asList("", "president", "1)|(2)"), Arrays.asList(), Arrays.asList("of", "-")),
+        tables.get("doc"));
+  }
+
+  @Test
+  public void testFileOrder() throws IOException {
+    List<TaggedText> tts = TestCorpora.generate(30, 500, 0).get(0);
+    StringWriter sw = new StringWriter();
+    new ConllWriter().writeTTList(tts, sw);
+
+    PeekIterator<TaggedText> it = ConllReader.getIterator(new StringReader(sw.toString()), 0, "test");
+    for (TaggedText expected : tts) {
+      TaggedText actual = it.next();
+      assertEquals(expected.id, actual.id);
+      assertEquals(expected.mentions.size(), actual.mentions.size());
+    }
+    assertFalse(it.hasNext());
+  }
+}
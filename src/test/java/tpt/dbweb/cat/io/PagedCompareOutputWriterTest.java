@@ -0,0 +1,84 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+import tpt.dbweb.cat.Compare;
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+
+public class PagedCompareOutputWriterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String compare(int pageSize, Path out) throws IOException {
+    List<List<TaggedText>> corpus = TestCorpora.generate(10, 100, 1);
+    List<ComparisonResult> evaluations = Arrays.asList(new CoreferenceScorer().compare(corpus.get(0), corpus.get(1)));
+
+    Compare.Options options = new Compare.Options();
+    options.pageSize = pageSize;
+    List<Iterator<TaggedText>> its = corpus.stream().map(List::iterator).collect(Collectors.toList());
+    new Compare(options).compare(its, Arrays.asList("gold", "system"), out, evaluations);
+    return new String(Files.readAllBytes(out), StandardCharsets.UTF_8);
+  }
+
+  private static String articles(String output) {
+    return output.substring(output.indexOf("  <article id="), output.lastIndexOf("</article>") + "</article>".length());
+  }
+
+  @Test
+  public void testPages() throws Exception {
+    Path dir = folder.newFolder().toPath();
+    String single = compare(0, dir.resolve("single.xml"));
+    Path index = dir.resolve("compare.html");
+    // pages of a previous run with more pages are removed
+    compare(2, index);
+    assertTrue(Files.exists(dir.resolve("compare-00005.xml")));
+    String html = compare(4, index);
+
+    // the pages contain the same articles as the single file, with the same header
+    StringBuilder pages = new StringBuilder();
+    for (int page = 1; page <= 3; page++) {
+      Path path = dir.resolve(String.format("compare-%05d.xml", page));
+      String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+      assertEquals(single.substring(0, single.indexOf("  <article id=")), content.substring(0, content.indexOf("  <article id=")));
+      pages.append(pages.length() > 0 ? "\n" : "").append(articles(content));
+    }
+    assertFalse(Files.exists(dir.resolve("compare-00004.xml")));
+    assertFalse(Files.exists(dir.resolve("compare-00005.xml")));
+    assertEquals(articles(single), pages.toString());
+
+    // the index is well-formed and links every article
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(index.toFile());
+    assertEquals(10, doc.getElementsByTagName("a").getLength());
+    // the links point to the heading of the article
+    String lastId = articles(single).replaceAll("(?s).*<article id='([^']*)'.*", "$1");
+    assertTrue(html.contains("href=\"compare-00003.xml#" + PagedCompareOutputWriter.getAnchor(lastId) + "\""));
+    assertTrue(single.contains("<h2 id=\"" + PagedCompareOutputWriter.getAnchor("{@id}") + "\">"));
+    assertEquals(dir.resolve("compare-00002.xml.gz"), PagedCompareOutputWriter.getPagePath(dir.resolve("compare.xml.gz"), 2));
+  }
+}
@@ -0,0 +1,71 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static tpt.dbweb.cat.TestCorpora.assertSameDetails;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.datatypes.CompactMentions;
+import tpt.dbweb.cat.datatypes.EntityMention;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.datatypes.TextSpan;
+import tpt.dbweb.cat.tools.Snapshot;
+
+public class SnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<TaggedText> expected = new TaggedTextXMLReader().getTaggedText(Paths.get("doc/examples/tutorial.xml"));
+    TaggedText first = expected.get(0);
+    first.info().put("source", "test");
+    EntityMention em = first.mentions.get(0);
+    em.min = new TextSpan(first.text, em.start, em.start + 1);
+    em.info().put("type", "PER");
+    // mentions which are not sorted or end before they start
+    first.mentions.add(new EntityMention(first.text, 3, 1, "invalid"));
+    first.mentions.add(new EntityMention(first.text, 0, 2, null));
+
+    Path dir = folder.newFolder().toPath();
+    for (Compression compression : Compression.values()) {
+      Path file = dir.resolve("tutorial" + SnapshotWriter.EXTENSION + compression.extension);
+      SnapshotWriter.write(expected, file);
+      TaggedTextFormats.Format format = TaggedTextFormats.detect(file);
+      assertEquals("snapshot", format.name);
+      // snapshots are binary, they can only be read from files
+      assertNull(format.newTextReader());
+      assertSameDetails(expected, TaggedTextFormats.open(file).asList());
+
+      SnapshotReader reader = new SnapshotReader();
+      assertEquals(expected.get(2).text, reader.get(file, expected.get(2).id).text);
+      assertNull(reader.get(file, "missing"));
+
+      TaggedText compact = new SnapshotReader(true).open(file).next();
+      assertTrue(compact.mentions instanceof CompactMentions);
+      assertEquals(first.mentions, compact.mentions);
+    }
+
+    // conversion of a CoNLL file
+    Path conll = dir.resolve("tutorial.conll");
+    new ConllWriter().writeTTList(expected.subList(1, expected.size()), conll);
+    Path snapshot = Snapshot.getSnapshotPath(conll);
+    assertEquals(dir.resolve("tutorial" + SnapshotWriter.EXTENSION), snapshot);
+    Snapshot.convert(conll, snapshot);
+    assertSameDetails(ConllReader.readConllFile(conll, 0), new SnapshotReader().open(snapshot).asList());
+  }
+}
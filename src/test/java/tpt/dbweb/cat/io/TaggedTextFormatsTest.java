@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static tpt.dbweb.cat.TestCorpora.assertSameArticles;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class TaggedTextFormatsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(Path source, Path target, Compression compression) throws IOException {
+    try (OutputStream out = compression.compress(Files.newOutputStream(target))) {
+      Files.copy(source, out);
+    }
+  }
+
+  @Test
+  public void testDetection() throws IOException {
+    Path xml = Paths.get("doc/examples/tutorial.xml");
+    List<TaggedText> expected = new TaggedTextXMLReader().getTaggedText(xml);
+    Path dir = folder.newFolder().toPath();
+    Path conll = dir.resolve("tutorial.conll");
+    new ConllWriter().writeTTList(expected, conll);
+    List<TaggedText> expectedConll = ConllReader.readConllFile(conll, 0);
+
+    for (Compression compression : Compression.values()) {
+      // by extension
+      Path file = dir.resolve("tutorial.xml" + compression.extension);
+      write(xml, file, compression);
+      assertEquals(compression, Compression.detect(file));
+      assertEquals("xml", TaggedTextFormats.detect(file).name);
+      assertSameArticles(expected, TaggedTextFormats.open(file).asList());
+
+      // by content
+      file = dir.resolve("tutorial-" + compression + ".txt");
+      write(xml, file, compression);
+      assertEquals("xml", TaggedTextFormats.detect(file).name);
+      assertSameArticles(expected, TaggedTextFormats.open(file).asList());
+      assertEquals(expected.get(1).text, TaggedTextFormats.getReader(file).get(file, expected.get(1).id).text);
+      assertNull(TaggedTextFormats.getReader(file).get(file, "missing"));
+
+      file = dir.resolve("conll-" + compression + ".txt");
+      write(conll, file, compression);
+      assertEquals("conll", TaggedTextFormats.detect(file).name);
+      assertSameArticles(expectedConll, TaggedTextFormats.open(file).asList());
+    }
+  }
+
+  @Test
+  public void testCompressedOutput() throws IOException {
+    Path dir = folder.newFolder().toPath();
+    // larger than the blocks which are decompressed in advance
+    List<TaggedText> expected = new TaggedTextXMLReader().getTaggedText(TestCorpora.write(dir, 200, 500, 0).get(0));
+    for (Compression compression : Compression.values()) {
+      Path xml = dir.resolve("out.xml" + compression.extension);
+      try (TaggedTextXMLWriter writer = new TaggedTextXMLWriter(xml)) {
+        for (TaggedText tt : expected) {
+          writer.write(null, tt);
+        }
+      }
+      assertEquals(compression, Compression.detect(xml));
+      assertSameArticles(expected, TaggedTextFormats.open(xml).asList());
+
+      // appending adds another gzip member or zstd frame
+      Path conll = dir.resolve("out.conll" + compression.extension);
+      ConllWriter writer = new ConllWriter();
+      writer.writePartList(Arrays.asList(writer.toPart(expected.get(0))), conll);
+      writer.writePartList(Arrays.asList(writer.toPart(expected.get(1))), conll, true);
+      assertEquals(compression, Compression.detect(conll));
+      assertEquals(Arrays.asList(expected.get(0).id, expected.get(1).id), new ArrayList<>(ConllWriter.readColumn(conll, 0).keySet()));
+    }
+  }
+
+  /**
+   * A runtime exception of the underlying stream, e.g. of a decompressor, reaches the reader instead of blocking it
+   */
+  @Test(timeout = 10000)
+  public void testReadAheadError() throws IOException {
+    InputStream failing = new InputStream() {
+
+      private int count = 0;
+
+      @Override
+      public int read() {
+        if (count++ == 100) {
+          throw new IllegalStateException("corrupt input");
+        }
+        return 'a';
+      }
+    };
+    try (InputStream in = new ReadAheadInputStream(failing, 16, 2)) {
+      // the blocks before the error are available
+      byte[] buf = new byte[96];
+      IOUtils.readFully(in, buf);
+      assertEquals('a', buf[95]);
+      try {
+        IOUtils.toByteArray(in);
+        fail("expected an IOException");
+      } catch (IOException e) {
+        assertEquals("corrupt input", e.getCause().getMessage());
+      }
+    }
+  }
+}
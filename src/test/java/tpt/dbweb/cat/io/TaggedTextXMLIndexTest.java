@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static tpt.dbweb.cat.TestCorpora.assertSameDetails;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class TaggedTextXMLIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRandomAccess() throws IOException {
+    Path dir = folder.newFolder().toPath();
+    Path file = TestCorpora.write(dir, 50, 500, 0).get(0);
+    // a comment which looks like an article must not be indexed
+    Files.write(file, "<!-- <article id='comment'></article> --->\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    List<TaggedText> all = new TaggedTextXMLReader().getTaggedText(file);
+
+    TaggedTextXMLReader reader = new TaggedTextXMLReader();
+    TaggedTextXMLIndex index = reader.getIndex(file);
+    assertTrue(Files.exists(TaggedTextXMLIndex.getIndexPath(file)));
+    assertEquals(50, index.getIds().size());
+    for (int i = all.size() - 1; i >= 0; i--) {
+      assertSameDetails(all.get(i), reader.getTaggedTextById(file, all.get(i).id));
+    }
+    assertNull(reader.getTaggedTextById(file, "comment"));
+
+    List<TaggedText> subset = reader.getTaggedTextByIds(file, Arrays.asList(all.get(7).id, all.get(3).id));
+    assertEquals(2, subset.size());
+    assertSameDetails(all.get(7), subset.get(0));
+    assertSameDetails(all.get(3), subset.get(1));
+
+    // the index is rebuilt after the file changes
+    Files.write(file, "<article id='new'>added</article>\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertEquals("added", new TaggedTextXMLReader().getTaggedTextById(file, "new").text);
+    assertEquals("added", reader.getTaggedTextById(file, "new").text);
+  }
+}
@@ -0,0 +1,86 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+
+public class WhitespaceNormalizingReaderTest {
+
+  /**
+   * Normalization with regular expressions, as TaggedTextXMLReader did it before
+   */
+  private static String normalize(String input, TaggedTextXMLReader.Options options) {
+    if (options.trimLines) {
+      input = input.replaceAll("[ \\t\\x0B\\f\\r]*\\n[ \\t\\x0B\\f\\r]*", "\n");
+    }
+    if (options.stripSingleNewlineCharacters) {
+      input = input.replaceAll("([^\\n])\\n([^\\n])", "$1 $2");
+    }
+    if (options.combineMultipleNewlinesToParagraph) {
+      input = input.replaceAll("\\n\\n+", "\n\n");
+    }
+    if (options.normalizeWhitespace) {
+      input = input.replaceAll("[ \\t\\x0B\\f\\r]+", " ");
+    }
+    return input;
+  }
+
+  private static String read(String input, TaggedTextXMLReader.Options options) throws IOException {
+    return IOUtils.toString(new WhitespaceNormalizingReader(new StringReader(input), options));
+  }
+
+  @Test
+  public void testRandom() throws IOException {
+    char[] alphabet = { 'a', 'b', ' ', ' ', '\t', '\r', '\u000B', '\f', '\n', '\n', '\n' };
+    Random rnd = new Random(1);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder sb = new StringBuilder();
+      int len = rnd.nextInt(30);
+      for (int j = 0; j < len; j++) {
+        sb.append(alphabet[rnd.nextInt(alphabet.length)]);
+      }
+      TaggedTextXMLReader.Options options = new TaggedTextXMLReader.Options();
+      options.trimLines = rnd.nextInt(4) > 0;
+      options.stripSingleNewlineCharacters = rnd.nextInt(4) > 0;
+      options.combineMultipleNewlinesToParagraph = rnd.nextInt(4) > 0;
+      options.normalizeWhitespace = rnd.nextInt(4) > 0;
+      String input = sb.toString();
+      assertEquals("input '" + input + "'", normalize(input, options), read(input, options));
+    }
+  }
+
+  @Test
+  public void testNonOverlappingMatches() throws IOException {
+    TaggedTextXMLReader.Options options = new TaggedTextXMLReader.Options();
+    assertEquals("a b\nc", read("a\nb\nc", options));
+    assertEquals("a\n\nb c", read("a \n\n\n b\n  c", options));
+  }
+
+  @Test
+  public void testArticlesWithoutRoot() throws IOException {
+    String xml = "<?xml version='1.0' encoding='UTF-8' ?>\n<article id='1'>a\n<mark entity='x'>b</mark></article>\n<article id='2'>c</article>";
+    Path file = Files.createTempFile("casie-articles", ".xml");
+    Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    List<TaggedText> tts = new TaggedTextXMLReader().getTaggedText(file);
+    Files.delete(file);
+    assertEquals(2, tts.size());
+    assertEquals("a b", tts.get(0).text);
+    assertEquals("x", tts.get(0).mentions.get(0).entity);
+    assertEquals("2", tts.get(1).id);
+  }
+}
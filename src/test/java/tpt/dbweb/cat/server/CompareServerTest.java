@@ -0,0 +1,175 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import tpt.dbweb.cat.TestCorpora;
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.evaluation.ComparisonResult;
+import tpt.dbweb.cat.evaluation.CoreferenceScorer;
+import tpt.dbweb.cat.io.TaggedTextFormats;
+
+public class CompareServerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static String request(int port, String method, String path, String body, int expectedStatus) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+    conn.setRequestMethod(method);
+    if (body != null) {
+      conn.setDoOutput(true);
+      try (OutputStream os = conn.getOutputStream()) {
+        os.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    assertEquals(expectedStatus, conn.getResponseCode());
+    try (InputStream is = conn.getResponseCode() < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+      return IOUtils.toString(is, StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testServer() throws IOException {
+    List<Path> files = TestCorpora.write(folder.getRoot().toPath(), 5, 100, 1);
+    CompareServer server = null;
+    try {
+      String system = new String(Files.readAllBytes(files.get(1)), StandardCharsets.UTF_8);
+
+      CompareServer.Options options = new CompareServer.Options();
+      options.port = 0;
+      options.refEvalOptions = TestCorpora.evaluatorOptions();
+      options.gold.add("corpus=" + files.get(0));
+      options.goldRoot = folder.getRoot().toString();
+      server = new CompareServer(options);
+      server.start();
+      int port = server.getPort();
+
+      // metrics are the same as those of the command line tools
+      Map<String, Object> score = new ObjectMapper().readValue(request(port, "POST", "/score/corpus", system, 200), Map.class);
+      List<TaggedText> gold = TaggedTextFormats.open(files.get(0)).asList(), cmp = TaggedTextFormats.open(files.get(1)).asList();
+      ComparisonResult expected = new CoreferenceScorer().compare(gold, cmp);
+      Map<String, Object> documents = (Map<String, Object>) score.get("documents");
+      assertEquals(gold.size(), documents.size());
+      Map<String, Object> muc = (Map<String, Object>) ((Map<String, Object>) documents.get(gold.get(2).id)).get(CoreferenceScorer.MUC);
+      assertEquals(expected.docidToMetricToResult.get(gold.get(2).id).get(CoreferenceScorer.MUC).getF1(), ((Number) muc.get("f1")).doubleValue(), 1e-6);
+      assertTrue(server.getGoldStandards().isLoaded("corpus"));
+
+      // rendering of one article
+      String article = request(port, "POST", "/render/corpus?article=" + gold.get(1).id, system, 200);
+      assertTrue(article.startsWith("  <article id='" + gold.get(1).id + "'>"));
+      assertEquals(1, article.split("<article ").length - 1);
+
+      // errors and registration
+      request(port, "POST", "/score/unknown", system, 404);
+      request(port, "POST", "/render/corpus?article=missing", system, 404);
+      request(port, "POST", "/gold/copy", "{\"path\": \"" + files.get(0).getFileName() + "\"}", 200);
+      assertTrue(request(port, "GET", "/gold", null, 200).contains("\"copy\""));
+      assertFalse(server.getGoldStandards().isLoaded("copy"));
+      request(port, "POST", "/gold/absolute", "{\"path\": \"" + files.get(0) + "\"}", 200);
+      // only files below --gold-root
+      request(port, "POST", "/gold/outside", "{\"path\": \"../" + folder.getRoot().getName() + "/" + files.get(0).getFileName() + "\"}", 200);
+      request(port, "POST", "/gold/outside", "{\"path\": \"../outside.xml\"}", 403);
+      request(port, "POST", "/gold/outside", "{\"path\": \"/etc/hosts\"}", 403);
+      Files.createSymbolicLink(folder.getRoot().toPath().resolve("link.xml"), Paths.get("/etc/hosts"));
+      request(port, "POST", "/gold/outside", "{\"path\": \"link.xml\"}", 403);
+      assertFalse(request(port, "GET", "/gold", null, 200).contains("hosts"));
+
+      // least recently used gold standards are removed if they need too much memory
+      GoldStandardCache cache = new GoldStandardCache(1, file -> TaggedTextFormats.open(file).asList());
+      cache.register("a", files.get(0));
+      cache.register("b", files.get(1));
+      assertEquals(gold.size(), cache.get("a").articles.size());
+      cache.get("b");
+      assertFalse(cache.isLoaded("a"));
+      assertTrue(cache.isLoaded("b"));
+    } finally {
+      if (server != null) {
+        server.stop();
+      }
+    }
+  }
+
+  @Test
+  public void testRegistrationDisabled() throws IOException {
+    List<Path> files = TestCorpora.write(folder.getRoot().toPath(), 1, 100, 1);
+    CompareServer.Options options = new CompareServer.Options();
+    options.port = 0;
+    CompareServer server = new CompareServer(options);
+    server.start();
+    try {
+      request(server.getPort(), "POST", "/gold/copy", "{\"path\": \"" + files.get(0) + "\"}", 403);
+      assertEquals("{}", request(server.getPort(), "GET", "/gold", null, 200));
+    } finally {
+      server.stop();
+    }
+  }
+
+  /**
+   * Concurrent requests of a gold standard load its file only once
+   */
+  @Test
+  public void testSingleLoad() throws Exception {
+    List<Path> files = TestCorpora.write(folder.getRoot().toPath(), 3, 100, 1);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch waiting = new CountDownLatch(1);
+    GoldStandardCache cache = new GoldStandardCache(1 << 20, file -> {
+      loads.incrementAndGet();
+      try {
+        waiting.await();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+      return TaggedTextFormats.open(file).asList();
+    });
+    cache.register("a", files.get(0));
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<GoldStandardCache.GoldStandard>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> cache.get("a")));
+      }
+      Thread.sleep(200);
+      waiting.countDown();
+      for (Future<GoldStandardCache.GoldStandard> future : futures) {
+        assertSame(futures.get(0).get(), future.get());
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static tpt.dbweb.cat.TestCorpora.assertSameArticle;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.TaggedTextXMLReader;
+
+public class CorpusGeneratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testDeterministicRoundTrip() throws IOException {
+    CorpusGenerator.Options options = new CorpusGenerator.Options();
+    options.documents = 20;
+    options.words = 200;
+    options.nesting = 3;
+    Path dir1 = folder.newFolder().toPath(), dir2 = folder.newFolder().toPath();
+    List<Path> files1 = new CorpusGenerator(options).write(dir1);
+    List<Path> files2 = new CorpusGenerator(options).write(dir2);
+    assertEquals(options.annotators + 1, files1.size());
+    for (int i = 0; i < files1.size(); i++) {
+      assertArrayEquals(Files.readAllBytes(files1.get(i)), Files.readAllBytes(files2.get(i)));
+      assertTrue(Files.exists(new CorpusGenerator(options).getPath(dir1, i, ".conll")));
+    }
+
+    // the files contain what has been generated
+    List<List<TaggedText>> corpus = new CorpusGenerator(options).generate();
+    for (int i = 0; i < files1.size(); i++) {
+      List<TaggedText> read = new TaggedTextXMLReader().getTaggedText(files1.get(i));
+      assertEquals(options.documents, read.size());
+      for (int doc = 0; doc < options.documents; doc++) {
+        assertSameArticle(corpus.get(i).get(doc), read.get(doc));
+      }
+    }
+  }
+}
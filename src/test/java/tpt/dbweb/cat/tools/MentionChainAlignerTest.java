@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package tpt.dbweb.cat.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import tpt.dbweb.cat.datatypes.TaggedText;
+import tpt.dbweb.cat.io.TaggedTextXMLReader;
+
+public class MentionChainAlignerTest {
+
+  @Test
+  public void testOptimal() {
+    TaggedText tt0 = new TaggedTextXMLReader().getFirstTaggedTextFromString("<mark entity='A'>012345</mark><mark entity='B'>6789</mark>");
+    TaggedText tt1 = new TaggedTextXMLReader().getFirstTaggedTextFromString(
+        "<mark entity='X'>0</mark><mark entity='X'>1</mark><mark entity='X'>2</mark><mark entity='Y'>3</mark><mark entity='Y'>4</mark>5"
+            + "<mark entity='X'>6</mark><mark entity='X'>7</mark>89");
+
+    // A overlaps 3 times with X and 2 times with Y, B 2 times with X
+    Map<String, String> expected = new HashMap<>();
+    expected.put("A", "X");
+    expected.put("B", "X");
+    assertEquals(expected, new MentionChainAligner().guessEntityMap(MentionChainAligner.Alignment.GREEDY, tt0, tt1));
+
+    expected.put("A", "Y");
+    assertEquals(expected, new MentionChainAligner().guessEntityMap(MentionChainAligner.Alignment.OPTIMAL, tt0, tt1));
+  }
+
+  @Test
+  public void testOneToOne() {
+    CorpusGenerator.Options options = new CorpusGenerator.Options();
+    options.documents = 1;
+    options.words = 3000;
+    options.annotators = 1;
+    options.disagreement = 0.5;
+    List<List<TaggedText>> corpora = new CorpusGenerator(options).generate();
+    TaggedText tt0 = corpora.get(0).get(0), tt1 = corpora.get(1).get(0);
+
+    Map<String, String> map = new MentionChainAligner().guessEntityMapOptimal(tt0, tt1);
+    assertFalse(map.isEmpty());
+    assertEquals(map.size(), map.values().stream().distinct().count());
+  }
+}